@@ -0,0 +1,128 @@
+package com.olszewski.michal.benchmark;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+import com.olszewski.michal.domain.FileEntry;
+import com.olszewski.michal.domain.SearchResult;
+import com.olszewski.michal.domain.search.SearchProperties;
+import com.olszewski.michal.index.ContentIndexService;
+import com.olszewski.michal.metrics.LogViewerMetrics;
+import com.olszewski.michal.service.BlockCache;
+import com.olszewski.michal.service.DirectoryListingCache;
+import com.olszewski.michal.service.FileService;
+import com.olszewski.michal.service.FileTreeWalker;
+import com.olszewski.michal.service.SearchExecutor;
+import com.olszewski.michal.service.TimestampParser;
+import org.apache.commons.io.FileUtils;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Throughput of the main {@link FileService} operations on a generated {@link LogCorpus}. Run
+ * with {@code -prof gc} (the profile's default) to also get the allocation rate per operation.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class FileServiceBenchmark {
+
+	@Param({"2000"})
+	public int smallFiles;
+
+	@Param({"64"})
+	public int hugeFileMb;
+
+	@Param({"8"})
+	public int treeDepth;
+
+	@Param({"0", "60000"})
+	public long listingTtl;
+
+	@Param({"0", "134217728"})
+	public long blockCacheSize;
+
+	private Path corpus;
+	private SearchExecutor searchExecutor;
+	private DirectoryListingCache directoryListingCache;
+	private FileTreeWalker fileTreeWalker;
+	private FileService fileService;
+	private SearchProperties treeSearch;
+
+	@Setup(Level.Trial)
+	public void setUp() throws IOException {
+		corpus = LogCorpus.create(Files.createTempDirectory("logviewer-jmh"), smallFiles, hugeFileMb, treeDepth);
+		searchExecutor = new SearchExecutor(0, 256 * 1024 * 1024);
+		directoryListingCache = new DirectoryListingCache(listingTtl);
+		fileTreeWalker = new FileTreeWalker(0, 32);
+		fileService = new FileService(searchExecutor, new ContentIndexService(false, corpus.resolve("index").toString()),
+				directoryListingCache, fileTreeWalker, new TimestampParser("yyyy-MM-dd HH:mm:ss,SSS"), new LogViewerMetrics(),
+				new BlockCache(blockCacheSize));
+		treeSearch = new SearchProperties();
+		treeSearch.setRecursive(true);
+		treeSearch.setFileContent("NullPointerException");
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() throws IOException {
+		searchExecutor.shutdown();
+		fileTreeWalker.shutdown();
+		directoryListingCache.shutdown();
+		FileUtils.deleteDirectory(corpus.toFile());
+	}
+
+	@Benchmark
+	public List<FileEntry> listDirectory() {
+		return fileService.getFilesEntryFromPath(corpus.resolve(LogCorpus.SMALL));
+	}
+
+	@Benchmark
+	public List<FileEntry> listZip() {
+		return fileService.getFilesEntryFromPath(corpus.resolve(LogCorpus.ARCHIVES).resolve(LogCorpus.ZIP));
+	}
+
+	@Benchmark
+	public List<FileEntry> listSevenZ() {
+		return fileService.getFilesEntryFromPath(corpus.resolve(LogCorpus.ARCHIVES).resolve(LogCorpus.SEVEN_Z));
+	}
+
+	@Benchmark
+	public List<String> tail() throws IOException {
+		return fileService.tailContent(corpus.resolve(LogCorpus.HUGE), LogCorpus.HUGE_FILE, Optional.empty(), 500);
+	}
+
+	@Benchmark
+	@OutputTimeUnit(TimeUnit.MINUTES)
+	public List<String> viewWithTerm() throws IOException {
+		return fileService.getFileContent(corpus.resolve(LogCorpus.HUGE), LogCorpus.HUGE_FILE, Optional.of("NullPointerException"));
+	}
+
+	@Benchmark
+	public List<String> viewZipEntry() throws IOException {
+		return fileService.getFileContent(corpus.resolve(LogCorpus.ARCHIVES).resolve(LogCorpus.ZIP), "archived-25.log", Optional.empty());
+	}
+
+	@Benchmark
+	@OutputTimeUnit(TimeUnit.MINUTES)
+	public List<SearchResult> searchTree() throws IOException {
+		return fileService.getLinesFromFiles(corpus.resolve(LogCorpus.TREE), treeSearch);
+	}
+}
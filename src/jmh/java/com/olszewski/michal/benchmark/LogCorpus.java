@@ -0,0 +1,156 @@
+package com.olszewski.michal.benchmark;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.Date;
+import java.util.Random;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import org.apache.commons.compress.archivers.sevenz.SevenZArchiveEntry;
+import org.apache.commons.compress.archivers.sevenz.SevenZOutputFile;
+
+/**
+ * Generates a reproducible synthetic log corpus:
+ * <ul>
+ * <li>{@code small/} - many small files in one directory</li>
+ * <li>{@code huge/huge.log} - one large file</li>
+ * <li>{@code tree/} - a binary directory tree with a few files on every level</li>
+ * <li>{@code archives/logs.zip} and {@code archives/logs.7z} - archives with many entries</li>
+ * </ul>
+ * Roughly one line in a thousand is an ERROR with a NullPointerException and a short stack trace.
+ */
+class LogCorpus {
+
+	static final String SMALL = "small";
+	static final String HUGE = "huge";
+	static final String HUGE_FILE = "huge.log";
+	static final String TREE = "tree";
+	static final String ARCHIVES = "archives";
+	static final String ZIP = "logs.zip";
+	static final String SEVEN_Z = "logs.7z";
+
+	private static final DateTimeFormatter TIMESTAMP = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss,SSS");
+	private static final String[] LEVELS = {"INFO", "INFO", "INFO", "DEBUG", "WARN"};
+	private static final int ARCHIVE_ENTRIES = 50;
+	private static final int LINES_PER_SMALL_FILE = 200;
+	private static final int FILES_PER_TREE_LEVEL = 3;
+
+	private final Random random = new Random(42);
+	private LocalDateTime clock = LocalDateTime.of(2017, 3, 25, 0, 0);
+	private long lineCounter;
+
+	static Path create(Path root, int smallFiles, int hugeFileMb, int treeDepth) throws IOException {
+		LogCorpus corpus = new LogCorpus();
+		Path small = Files.createDirectories(root.resolve(SMALL));
+		for (int i = 0; i < smallFiles; i++) {
+			corpus.writeLines(small.resolve("app-" + i + ".log"), LINES_PER_SMALL_FILE);
+		}
+		Path huge = Files.createDirectories(root.resolve(HUGE));
+		corpus.writeBytes(huge.resolve(HUGE_FILE), hugeFileMb * 1024L * 1024L);
+		corpus.writeTree(root.resolve(TREE), treeDepth);
+		Path archives = Files.createDirectories(root.resolve(ARCHIVES));
+		corpus.writeZip(archives.resolve(ZIP));
+		corpus.writeSevenZ(archives.resolve(SEVEN_Z));
+		return root;
+	}
+
+	private void writeTree(Path directory, int depth) throws IOException {
+		Files.createDirectories(directory);
+		for (int i = 0; i < FILES_PER_TREE_LEVEL; i++) {
+			writeLines(directory.resolve("service-" + i + ".log"), LINES_PER_SMALL_FILE);
+		}
+		if (depth > 0) {
+			writeTree(directory.resolve("a"), depth - 1);
+			writeTree(directory.resolve("b"), depth - 1);
+		}
+	}
+
+	private void writeLines(Path file, int lines) throws IOException {
+		try (BufferedWriter writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+			for (int i = 0; i < lines; i++) {
+				writeLine(writer);
+			}
+		}
+	}
+
+	private void writeBytes(Path file, long bytes) throws IOException {
+		try (OutputStream output = Files.newOutputStream(file)) {
+			CountingWriter writer = new CountingWriter(output);
+			while (writer.written < bytes) {
+				writeLine(writer);
+			}
+			writer.flush();
+		}
+	}
+
+	private void writeZip(Path file) throws IOException {
+		try (ZipOutputStream zip = new ZipOutputStream(Files.newOutputStream(file))) {
+			for (int i = 0; i < ARCHIVE_ENTRIES; i++) {
+				zip.putNextEntry(new ZipEntry("archived-" + i + ".log"));
+				zip.write(lines(LINES_PER_SMALL_FILE));
+				zip.closeEntry();
+			}
+		}
+	}
+
+	private void writeSevenZ(Path file) throws IOException {
+		try (SevenZOutputFile sevenZ = new SevenZOutputFile(file.toFile())) {
+			for (int i = 0; i < ARCHIVE_ENTRIES; i++) {
+				SevenZArchiveEntry entry = new SevenZArchiveEntry();
+				entry.setName("archived-" + i + ".log");
+				entry.setLastModifiedDate(new Date());
+				sevenZ.putArchiveEntry(entry);
+				sevenZ.write(lines(LINES_PER_SMALL_FILE));
+				sevenZ.closeArchiveEntry();
+			}
+		}
+	}
+
+	private byte[] lines(int count) throws IOException {
+		StringBuilder builder = new StringBuilder();
+		for (int i = 0; i < count; i++) {
+			builder.append(nextLine());
+		}
+		return builder.toString().getBytes(StandardCharsets.UTF_8);
+	}
+
+	private void writeLine(Writer writer) throws IOException {
+		writer.write(nextLine());
+	}
+
+	private String nextLine() {
+		clock = clock.plusNanos(random.nextInt(50) * 1_000_000L);
+		String timestamp = clock.format(TIMESTAMP);
+		if (++lineCounter % 1000 == 0) {
+			return timestamp + " ERROR [main] c.e.OrderService - Blad przetwarzania zamowienia " + lineCounter + "\n"
+					+ "java.lang.NullPointerException: null\n"
+					+ "\tat com.example.OrderService.process(OrderService.java:42)\n"
+					+ "\tat com.example.OrderController.submit(OrderController.java:17)\n";
+		}
+		return timestamp + " " + LEVELS[random.nextInt(LEVELS.length)] + " [http-nio-8080-exec-" + random.nextInt(10)
+				+ "] c.e.OrderService - Przetworzono zamowienie " + lineCounter + " w " + random.nextInt(500) + " ms\n";
+	}
+
+	private static class CountingWriter extends OutputStreamWriter {
+		private long written;
+
+		CountingWriter(OutputStream output) {
+			super(output, StandardCharsets.UTF_8);
+		}
+
+		@Override
+		public void write(String text) throws IOException {
+			super.write(text);
+			written += text.length();
+		}
+	}
+}
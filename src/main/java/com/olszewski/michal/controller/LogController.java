@@ -1,14 +1,14 @@
 package com.olszewski.michal.controller;
 
 import java.nio.file.Path;
-import java.nio.file.Paths;
 
+import com.olszewski.michal.domain.FileType;
 import com.olszewski.michal.domain.SortMethod;
 import com.olszewski.michal.domain.search.SearchProperties;
 import com.olszewski.michal.service.FileService;
+import com.olszewski.michal.service.LogPathResolver;
 import lombok.extern.slf4j.Slf4j;
 
-import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Controller;
 import org.springframework.ui.Model;
 import org.springframework.web.bind.annotation.GetMapping;
@@ -21,30 +21,29 @@ import org.springframework.web.bind.annotation.RequestParam;
 public class LogController {
 
 	private final FileService fileService;
+	private final LogPathResolver logPathResolver;
 
-	@Value("${logging.path}")
-	public String loggingPath;
-
-	public LogController(FileService fileService) {
+	public LogController(FileService fileService, LogPathResolver logPathResolver) {
 		this.fileService = fileService;
+		this.logPathResolver = logPathResolver;
 	}
 
 	@GetMapping()
 	public String folderViewPage(
 			@RequestParam(required = false, defaultValue = "FILENAME") SortMethod sortBy,
 			@RequestParam(required = false, defaultValue = "false") Boolean desc,
-			@RequestParam(required = false) String file,
+			@RequestParam(required = false) String path,
 			Model model) {
-		log.info(sortBy.toString() + " " + desc + " " + file + " " + loggingPath);
-		if (file != null && !"null".equalsIgnoreCase(file))
-			fileService.setFileNameInSession(file);
-		String path = fileService.getFileNameFromSession(loggingPath);
-		model.addAttribute("files", fileService.sortFileEntry(fileService.getFilesEntryFromPath(Paths.get(path)), sortBy, desc));
-		model.addAttribute("currentFolder", path);
+		log.info(sortBy.toString() + " " + desc + " " + path);
+		Path location = logPathResolver.resolve(path);
+		String currentPath = logPathResolver.relativize(location);
+		model.addAttribute("files", fileService.sortFileEntry(fileService.getFilesEntryFromPath(location), sortBy, desc));
+		model.addAttribute("currentFolder", "/" + currentPath);
+		model.addAttribute("currentPath", currentPath);
+		model.addAttribute("archive", FileService.getFileType(location).equals(FileType.ARCHIVE));
 		model.addAttribute("searchProperties", new SearchProperties());
-		Path parentPath = fileService.getParentPath(Paths.get(path));
-		if (parentPath != null)
-			model.addAttribute("parent", parentPath.toString().replaceAll("\\\\", "%5c"));
+		if (!location.equals(logPathResolver.getRoot()))
+			model.addAttribute("parent", logPathResolver.relativize(location.getParent()));
 		return "index";
 	}
 
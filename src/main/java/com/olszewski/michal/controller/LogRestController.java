@@ -1,15 +1,27 @@
 package com.olszewski.michal.controller;
 
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
 import java.io.IOException;
-import java.nio.file.Paths;
+import java.io.OutputStream;
+import java.nio.file.Path;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Optional;
 
+import com.olszewski.michal.domain.FilePage;
 import com.olszewski.michal.domain.SearchResult;
+import com.olszewski.michal.domain.SearchSummary;
+import com.olszewski.michal.domain.SignatureReport;
 import com.olszewski.michal.domain.search.SearchProperties;
 import com.olszewski.michal.exceptions.FileNotFoundException;
 import com.olszewski.michal.service.FileService;
+import com.olszewski.michal.service.LiveTailService;
+import com.olszewski.michal.service.LogPathResolver;
+import com.olszewski.michal.service.RawContentService;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.io.output.CountingOutputStream;
 
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.web.bind.annotation.RequestMapping;
@@ -17,42 +29,148 @@ import org.springframework.web.bind.annotation.RequestMethod;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.ResponseBody;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.context.request.WebRequest;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
 @RestController
 @RequestMapping("/rest/log")
 @Slf4j
 public class LogRestController {
 
-	@Value("${logging.path}")
-	public String loggingPath;
+	private static final int MAX_PAGE_SIZE = 10000;
+	private static final String NDJSON = "application/x-ndjson";
+
+	@Value("${logviewer.search.max-matches:100000}")
+	private long maxMatches;
+
+	@Value("${logviewer.search.max-response-bytes:67108864}")
+	private long maxResponseBytes;
 
 	private final FileService fileService;
+	private final LiveTailService liveTailService;
+	private final ObjectMapper objectMapper;
+	private final RawContentService rawContentService;
+	private final LogPathResolver logPathResolver;
 
 
-	public LogRestController(FileService fileService) {
+	public LogRestController(FileService fileService, LiveTailService liveTailService, ObjectMapper objectMapper,
+							 RawContentService rawContentService, LogPathResolver logPathResolver) {
 		this.fileService = fileService;
+		this.liveTailService = liveTailService;
+		this.objectMapper = objectMapper;
+		this.rawContentService = rawContentService;
+		this.logPathResolver = logPathResolver;
 	}
 
 	@RequestMapping(method = RequestMethod.POST)
 	@ResponseBody
-	public List<SearchResult> searchFiles(SearchProperties properties) throws IOException {
-		String path = fileService.getFileNameFromSession(loggingPath);
-		return fileService.getLinesFromFiles(Paths.get(path), properties);
+	public List<SearchResult> searchFiles(SearchProperties properties, @RequestParam(required = false) String path,
+										  HttpServletResponse response) throws IOException {
+		List<SearchResult> results = new ArrayList<>();
+		SearchSummary summary = fileService.streamLinesFromFiles(logPathResolver.resolve(path), properties, Long.MAX_VALUE, results::add);
+		response.setHeader("X-Search-Files", String.valueOf(summary.getFilesSearched()));
+		response.setHeader("X-Search-Bytes-Read", String.valueOf(summary.getBytesRead()));
+		response.setHeader("X-Search-Lines-Tested", String.valueOf(summary.getLinesTested()));
+		response.setHeader("X-Search-Matches", String.valueOf(summary.getMatches()));
+		response.setHeader("X-Search-Elapsed-Ms", String.valueOf(summary.getElapsedMs()));
+		return results;
+	}
+
+	/**
+	 * Streams results as NDJSON, one {@link SearchResult} per line as soon as its file is searched,
+	 * followed by a {@link SearchSummary} line. The search stops at {@code logviewer.search.max-matches}
+	 * lines or {@code logviewer.search.max-response-bytes} bytes, and when the client disconnects.
+	 */
+	@RequestMapping(method = RequestMethod.POST, value = "/stream", produces = NDJSON)
+	public StreamingResponseBody streamSearchFiles(SearchProperties properties, @RequestParam(required = false) String path) {
+		Path location = logPathResolver.resolve(path);
+		return output -> {
+			CountingOutputStream counting = new CountingOutputStream(output);
+			SearchSummary summary = fileService.streamLinesFromFiles(location, properties, maxMatches, result -> {
+				writeLine(counting, result);
+				return counting.getByteCount() < maxResponseBytes;
+			});
+			writeLine(counting, summary);
+		};
+	}
+
+	/**
+	 * Returns the most frequent signatures of the matching lines instead of the lines themselves.
+	 */
+	@RequestMapping(method = RequestMethod.POST, value = "/signatures")
+	@ResponseBody
+	public SignatureReport clusterSearchFiles(SearchProperties properties, @RequestParam(required = false) String path,
+											  @RequestParam(defaultValue = "50") int top) throws IOException {
+		return fileService.clusterLinesFromFiles(logPathResolver.resolve(path), properties, top);
+	}
+
+	private void writeLine(OutputStream output, Object value) throws IOException {
+		output.write(objectMapper.writeValueAsBytes(value));
+		output.write('\n');
+		output.flush();
 	}
 
 	@RequestMapping(method = RequestMethod.GET, value = "/view")
 	@ResponseBody
-	public List<String> fileContentViewPage(@RequestParam String file, @RequestParam(required = false) Integer tailLines, @RequestParam(required = false) Optional<String> term) {
-		log.info(file + " " + tailLines);
+	public List<String> fileContentViewPage(@RequestParam(required = false) String path, @RequestParam String file,
+											@RequestParam(required = false) Integer tailLines, @RequestParam(required = false) Optional<String> term,
+											WebRequest webRequest) {
+		log.info(path + " " + file + " " + tailLines);
 		try {
-			String path = fileService.getFileNameFromSession(loggingPath);
+			Path location = logPathResolver.resolve(path, file);
+			if (webRequest.checkNotModified(fileService.getEntityTag(location, file)))
+				return null;
 			if (tailLines != null)
-				return fileService.tailContent(Paths.get(path), file, term, tailLines);
+				return fileService.tailContent(location, file, term, tailLines);
 			else
-				return fileService.getFileContent(Paths.get(path), file, term);
+				return fileService.getFileContent(location, file, term);
 		}
 		catch (IOException e) {
 			throw new FileNotFoundException("Blad podczas wyswietlania podgladu pliku " + e);
 		}
 	}
+
+	@RequestMapping(method = RequestMethod.GET, value = "/view/page")
+	@ResponseBody
+	public FilePage filePageViewPage(@RequestParam(required = false) String path, @RequestParam String file,
+									 @RequestParam(required = false, defaultValue = "1") Long fromLine,
+									 @RequestParam(required = false, defaultValue = "500") Integer pageSize, WebRequest webRequest) {
+		log.info(path + " " + file + " " + fromLine + " " + pageSize);
+		try {
+			Path location = logPathResolver.resolve(path, file);
+			if (webRequest.checkNotModified(fileService.getEntityTag(location, file)))
+				return null;
+			return fileService.getFilePage(location, file, fromLine, Math.min(pageSize, MAX_PAGE_SIZE));
+		}
+		catch (IOException e) {
+			throw new FileNotFoundException("Blad podczas wyswietlania strony pliku " + e);
+		}
+	}
+
+	/**
+	 * Sends the file's bytes as they are stored, honouring a single {@code Range}; with
+	 * {@code download=true} the browser saves it instead of showing it.
+	 */
+	@RequestMapping(method = RequestMethod.GET, value = "/raw")
+	public void rawContent(@RequestParam(required = false) String path, @RequestParam String file,
+						   @RequestParam(required = false, defaultValue = "false") boolean download,
+						   HttpServletRequest request, HttpServletResponse response) throws IOException {
+		log.info(path + " " + file + " raw");
+		rawContentService.send(logPathResolver.resolve(path, file), file, download, request, response);
+	}
+
+	@RequestMapping(method = RequestMethod.GET, value = "/tail")
+	public SseEmitter liveTail(@RequestParam(required = false) String path, @RequestParam String file,
+							   @RequestParam(required = false) Optional<String> term) {
+		log.info(path + " " + file + " live tail");
+		Path plainFile = FileService.resolvePlainFile(logPathResolver.resolve(path, file), file)
+				.orElseThrow(() -> new FileNotFoundException("Nie mozna sledzic pliku skompresowanego ani pliku z archiwum"));
+		try {
+			return liveTailService.subscribe(plainFile, term);
+		}
+		catch (IOException e) {
+			throw new FileNotFoundException("Blad podczas sledzenia pliku " + e);
+		}
+	}
 }
@@ -0,0 +1,58 @@
+package com.olszewski.michal.controller;
+
+import com.olszewski.michal.domain.SearchJobPage;
+import com.olszewski.michal.domain.SearchJobStatus;
+import com.olszewski.michal.domain.search.SearchProperties;
+import com.olszewski.michal.service.LogPathResolver;
+import com.olszewski.michal.service.SearchJobService;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestMethod;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.ResponseBody;
+import org.springframework.web.bind.annotation.ResponseStatus;
+import org.springframework.web.bind.annotation.RestController;
+
+/**
+ * Background searches: submit one, poll its progress, fetch its results page by page, cancel it.
+ */
+@RestController
+@RequestMapping("/rest/log/jobs")
+public class SearchJobController {
+
+	private final LogPathResolver logPathResolver;
+	private final SearchJobService searchJobService;
+
+	public SearchJobController(LogPathResolver logPathResolver, SearchJobService searchJobService) {
+		this.logPathResolver = logPathResolver;
+		this.searchJobService = searchJobService;
+	}
+
+	@RequestMapping(method = RequestMethod.POST)
+	@ResponseStatus(HttpStatus.ACCEPTED)
+	@ResponseBody
+	public SearchJobStatus submit(SearchProperties properties, @RequestParam(required = false) String path) {
+		return searchJobService.submit(logPathResolver.resolve(path), properties);
+	}
+
+	@RequestMapping(method = RequestMethod.GET, value = "/{id}")
+	@ResponseBody
+	public SearchJobStatus status(@PathVariable String id) {
+		return searchJobService.getStatus(id);
+	}
+
+	@RequestMapping(method = RequestMethod.GET, value = "/{id}/results")
+	@ResponseBody
+	public SearchJobPage results(@PathVariable String id, @RequestParam(defaultValue = "0") int from,
+								 @RequestParam(defaultValue = "100") int size) {
+		return searchJobService.getPage(id, from, size);
+	}
+
+	@RequestMapping(method = RequestMethod.DELETE, value = "/{id}")
+	@ResponseBody
+	public SearchJobStatus cancel(@PathVariable String id) {
+		return searchJobService.cancel(id);
+	}
+}
@@ -0,0 +1,21 @@
+package com.olszewski.michal.domain;
+
+import java.time.LocalDateTime;
+
+import lombok.Data;
+
+/**
+ * A group of log lines sharing the same template. The count may be overestimated by at most
+ * {@code maxOverestimate} when the signature took the slot of an evicted one.
+ */
+@Data
+public class ErrorSignature {
+	private String template;
+	private long count;
+	private long maxOverestimate;
+	private LocalDateTime firstSeen;
+	private LocalDateTime lastSeen;
+	private String sample;
+	private String sampleFile;
+	private long sampleLine;
+}
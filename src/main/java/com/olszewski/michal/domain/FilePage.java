@@ -0,0 +1,14 @@
+package com.olszewski.michal.domain;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import lombok.Data;
+
+@Data
+public class FilePage {
+	private long firstLine;
+	private long nextLine;
+	private boolean last;
+	private List<String> lines = new ArrayList<>();
+}
@@ -1,5 +1,5 @@
 package com.olszewski.michal.domain;
 
 public enum FileType {
-    FILE, DIRECTORY, ARCHIVE
+    FILE, DIRECTORY, ARCHIVE, COMPRESSED
 }
@@ -0,0 +1,20 @@
+package com.olszewski.michal.domain;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import lombok.Data;
+
+/**
+ * A log event matching the query: its first line, the continuation lines folded into it (stack
+ * trace, {@code Caused by:}), and the requested context lines before and after it.
+ */
+@Data
+public class SearchHit {
+	private final long lineNumber;
+	private final long offset;
+	private final String line;
+	private List<SearchLine> continuation = new ArrayList<>();
+	private List<SearchLine> before = new ArrayList<>();
+	private List<SearchLine> after = new ArrayList<>();
+}
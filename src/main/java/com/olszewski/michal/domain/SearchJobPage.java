@@ -0,0 +1,16 @@
+package com.olszewski.michal.domain;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import lombok.Data;
+
+@Data
+public class SearchJobPage {
+	private String id;
+	private SearchJobState state;
+	private int from;
+	private int next;
+	private boolean last;
+	private List<SearchResult> results = new ArrayList<>();
+}
@@ -0,0 +1,5 @@
+package com.olszewski.michal.domain;
+
+public enum SearchJobState {
+	QUEUED, RUNNING, DONE, CANCELLED, FAILED
+}
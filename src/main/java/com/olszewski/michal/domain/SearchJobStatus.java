@@ -0,0 +1,19 @@
+package com.olszewski.michal.domain;
+
+import lombok.Data;
+
+@Data
+public class SearchJobStatus {
+	private String id;
+	private SearchJobState state;
+	private boolean cached;
+	private long filesTotal;
+	private long filesSearched;
+	private long bytesTotal;
+	private long bytesRead;
+	private long results;
+	private long matches;
+	private boolean truncated;
+	private long elapsedMs;
+	private String error;
+}
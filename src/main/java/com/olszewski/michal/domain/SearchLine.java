@@ -0,0 +1,13 @@
+package com.olszewski.michal.domain;
+
+import lombok.Data;
+
+/**
+ * A line of a searched file with its number (counted from 1) and the byte offset of its start.
+ */
+@Data
+public class SearchLine {
+	private final long lineNumber;
+	private final long offset;
+	private final String line;
+}
@@ -8,5 +8,5 @@ import lombok.Data;
 @Data
 public class SearchResult {
 	private FileEntry entry;
-	private List<String> result = new ArrayList<>();
+	private List<SearchHit> hits = new ArrayList<>();
 }
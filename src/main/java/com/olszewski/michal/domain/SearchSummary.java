@@ -0,0 +1,14 @@
+package com.olszewski.michal.domain;
+
+import lombok.Data;
+
+@Data
+public class SearchSummary {
+	private long files;
+	private long matches;
+	private boolean truncated;
+	private long filesSearched;
+	private long bytesRead;
+	private long linesTested;
+	private long elapsedMs;
+}
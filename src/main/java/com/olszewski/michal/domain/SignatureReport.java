@@ -0,0 +1,14 @@
+package com.olszewski.michal.domain;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import lombok.Data;
+
+@Data
+public class SignatureReport {
+	private long matches;
+	private long filesSearched;
+	private boolean approximate;
+	private List<ErrorSignature> signatures = new ArrayList<>();
+}
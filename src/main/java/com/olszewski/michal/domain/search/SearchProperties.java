@@ -6,7 +6,11 @@ import lombok.Data;
 public class SearchProperties {
 	private SearchModifiedDate searchModifiedDate;
 	private SearchFileName searchFileName;
+	private SearchTimeRange searchTimeRange;
 	private String fileContent;
+	private Boolean ignoreCase = false;
 	private Boolean recursive = false;
+	private Integer linesBefore = 0;
+	private Integer linesAfter = 0;
 
 }
@@ -0,0 +1,28 @@
+package com.olszewski.michal.domain.search;
+
+import java.time.LocalDateTime;
+import java.util.Optional;
+
+import lombok.Data;
+
+import org.springframework.format.annotation.DateTimeFormat;
+
+@Data
+public class SearchTimeRange {
+	@DateTimeFormat(pattern = "yyyy-MM-dd'T'HH:mm")
+	private Optional<LocalDateTime> timeFrom = Optional.empty();
+	@DateTimeFormat(pattern = "yyyy-MM-dd'T'HH:mm")
+	private Optional<LocalDateTime> timeTo = Optional.empty();
+
+	public boolean isPresent() {
+		return timeFrom.isPresent() || timeTo.isPresent();
+	}
+
+	public LocalDateTime getLocalTimeFrom() {
+		return timeFrom.orElse(LocalDateTime.MIN);
+	}
+
+	public LocalDateTime getLocalTimeTo() {
+		return timeTo.orElse(LocalDateTime.MAX);
+	}
+}
@@ -1,17 +1,23 @@
 package com.olszewski.michal.events;
 
+import java.util.Collections;
+import java.util.List;
+
 import org.springframework.context.ApplicationEvent;
 
 public class ErrorLogEvent extends ApplicationEvent {
 
-	private String message;
+	private final List<String> messages;
 
-	public ErrorLogEvent(Object source, String message) {
+	public ErrorLogEvent(Object source, List<String> messages) {
 		super(source);
-		this.message = message;
+		this.messages = Collections.unmodifiableList(messages);
 	}
 
-	public String getMessage() {
-		return message;
+	/**
+	 * Errors in the order they were found; a message spans several lines when it carries a stack trace.
+	 */
+	public List<String> getMessages() {
+		return messages;
 	}
 }
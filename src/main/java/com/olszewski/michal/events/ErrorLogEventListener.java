@@ -10,6 +10,7 @@ import org.springframework.stereotype.Component;
 public class ErrorLogEventListener implements ApplicationListener<ErrorLogEvent> {
 	@Override
 	public void onApplicationEvent(ErrorLogEvent errorLogEvent) {
-		log.info(errorLogEvent.getMessage());
+		log.info("Znaleziono {} bledow w logach", errorLogEvent.getMessages().size());
+		errorLogEvent.getMessages().forEach(log::info);
 	}
 }
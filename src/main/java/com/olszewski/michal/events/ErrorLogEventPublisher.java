@@ -1,22 +1,150 @@
 package com.olszewski.michal.events;
 
+import javax.annotation.PreDestroy;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
 import lombok.extern.slf4j.Slf4j;
 
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.stereotype.Component;
 
+/**
+ * Queues error messages and delivers them to listeners in batches on a separate thread, so
+ * listeners never slow down the scanning thread. A batch is sent when it holds
+ * {@code logviewer.events.batch-size} messages or when {@code logviewer.events.batch-delay} ms
+ * have passed since its first message. When the queue is full, the scanner either waits
+ * ({@code BLOCK}) or the message is dropped and counted ({@code DROP}).
+ */
 @Slf4j
 @Component
 public class ErrorLogEventPublisher {
 
+	public enum OverflowPolicy {
+		BLOCK, DROP
+	}
+
 	private final ApplicationEventPublisher eventPublisher;
+	private final BlockingQueue<String> queue;
+	private final int batchSize;
+	private final long batchDelay;
+	private final OverflowPolicy overflowPolicy;
+	private final AtomicLong published = new AtomicLong();
+	private final AtomicLong dropped = new AtomicLong();
+	private final AtomicLong batches = new AtomicLong();
+	private Thread dispatcher;
+	private volatile boolean running = true;
 
-	public ErrorLogEventPublisher(ApplicationEventPublisher eventPublisher) {
+	public ErrorLogEventPublisher(ApplicationEventPublisher eventPublisher,
+								  @Value("${logviewer.events.buffer-size:10000}") int bufferSize,
+								  @Value("${logviewer.events.batch-size:500}") int batchSize,
+								  @Value("${logviewer.events.batch-delay:1000}") long batchDelay,
+								  @Value("${logviewer.events.overflow:DROP}") OverflowPolicy overflowPolicy) {
 		this.eventPublisher = eventPublisher;
+		this.queue = new ArrayBlockingQueue<>(bufferSize);
+		this.batchSize = batchSize;
+		this.batchDelay = batchDelay;
+		this.overflowPolicy = overflowPolicy;
 	}
 
 	public void doStuffAndPublish(final String message) {
-		ErrorLogEvent errorLogEvent = new ErrorLogEvent(this, message);
-		eventPublisher.publishEvent(errorLogEvent);
+		if (!running) {
+			dropped.incrementAndGet();
+			return;
+		}
+		startDispatcher();
+		if (overflowPolicy == OverflowPolicy.BLOCK) {
+			try {
+				queue.put(message);
+			}
+			catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				dropped.incrementAndGet();
+				return;
+			}
+		}
+		else if (!queue.offer(message)) {
+			dropped.incrementAndGet();
+			log.debug("Kolejka bledow pelna, pominieto: {}", message);
+			return;
+		}
+		published.incrementAndGet();
+	}
+
+	private synchronized void startDispatcher() {
+		if (dispatcher != null || !running)
+			return;
+		dispatcher = new Thread(this::run, "error-log-events");
+		dispatcher.setDaemon(true);
+		dispatcher.start();
+	}
+
+	private void run() {
+		try {
+			while (running || !queue.isEmpty()) {
+				String first = queue.poll(batchDelay, TimeUnit.MILLISECONDS);
+				if (first == null)
+					continue;
+				List<String> batch = new ArrayList<>(batchSize);
+				batch.add(first);
+				long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(batchDelay);
+				while (batch.size() < batchSize && running) {
+					String next = queue.poll(deadline - System.nanoTime(), TimeUnit.NANOSECONDS);
+					if (next == null)
+						break;
+					batch.add(next);
+				}
+				queue.drainTo(batch, batchSize - batch.size());
+				deliver(batch);
+			}
+		}
+		catch (InterruptedException e) {
+			log.debug("Wysylanie zdarzen zatrzymane");
+		}
+	}
+
+	private void deliver(List<String> batch) {
+		batches.incrementAndGet();
+		try {
+			eventPublisher.publishEvent(new ErrorLogEvent(this, batch));
+		}
+		catch (RuntimeException e) {
+			log.warn("Blad podczas obslugi zdarzen o bledach w logach", e);
+		}
+	}
+
+	/**
+	 * Stops accepting messages and waits for the queued ones to be delivered.
+	 */
+	@PreDestroy
+	public void shutdown() throws InterruptedException {
+		Thread toJoin;
+		synchronized (this) {
+			running = false;
+			toJoin = dispatcher;
+		}
+		if (toJoin != null)
+			toJoin.join(TimeUnit.SECONDS.toMillis(10));
+	}
+
+	public long getPublished() {
+		return published.get();
+	}
+
+	public long getDropped() {
+		return dropped.get();
+	}
+
+	public long getBatches() {
+		return batches.get();
+	}
+
+	public int getQueued() {
+		return queue.size();
 	}
 }
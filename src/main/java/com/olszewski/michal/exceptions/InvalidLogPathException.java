@@ -0,0 +1,15 @@
+package com.olszewski.michal.exceptions;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.ResponseStatus;
+
+@ResponseStatus(HttpStatus.BAD_REQUEST)
+public class InvalidLogPathException extends RuntimeException {
+	public InvalidLogPathException(String message) {
+		super(message);
+	}
+
+	public InvalidLogPathException(String message, Throwable cause) {
+		super(message, cause);
+	}
+}
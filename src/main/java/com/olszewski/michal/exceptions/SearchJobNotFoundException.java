@@ -0,0 +1,11 @@
+package com.olszewski.michal.exceptions;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.ResponseStatus;
+
+@ResponseStatus(HttpStatus.NOT_FOUND)
+public class SearchJobNotFoundException extends RuntimeException {
+	public SearchJobNotFoundException(String message) {
+		super(message);
+	}
+}
@@ -0,0 +1,11 @@
+package com.olszewski.michal.exceptions;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.ResponseStatus;
+
+@ResponseStatus(HttpStatus.TOO_MANY_REQUESTS)
+public class SearchJobRejectedException extends RuntimeException {
+	public SearchJobRejectedException(String message) {
+		super(message);
+	}
+}
@@ -0,0 +1,325 @@
+package com.olszewski.michal.index;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+import com.olszewski.michal.domain.FileType;
+import com.olszewski.michal.service.FileService;
+import com.olszewski.michal.service.LineScanner;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.input.BoundedInputStream;
+import org.apache.commons.io.input.CloseShieldInputStream;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+/**
+ * Optional on-disk inverted index of plain log files under {@code logging.path}.
+ * <p>
+ * Every file gets its own directory with a manifest and immutable segments of posting lists.
+ * Log files are assumed to be append-only: a file that grew is indexed from where the previous
+ * run stopped, a file that shrank or whose first bytes changed (rotation) is indexed from scratch.
+ * Lines appended after the last run are scanned directly, so search results stay complete.
+ */
+@Component
+@Slf4j
+public class ContentIndexService {
+
+	private static final long SEGMENT_SIZE = 16L * 1024 * 1024;
+	private static final String MANIFEST = "manifest";
+	private static final int CACHED_SEGMENTS = 64;
+
+	private final boolean enabled;
+	private final Path indexDirectory;
+	private final Charset charset = Charset.defaultCharset();
+	private final LineScanner lineScanner = new LineScanner(charset);
+	private final Map<Path, FileIndex> manifests = new ConcurrentHashMap<>();
+	private final Map<Path, IndexSegment> segments = Collections.synchronizedMap(new LinkedHashMap<Path, IndexSegment>(16, 0.75f, true) {
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<Path, IndexSegment> eldest) {
+			return size() > CACHED_SEGMENTS;
+		}
+	});
+
+	@Value("${logging.path}")
+	public String loggingPath;
+
+	public ContentIndexService(@Value("${logviewer.index.enabled:false}") boolean enabled,
+							   @Value("${logviewer.index.directory:${java.io.tmpdir}/logviewer-index}") String indexDirectory) {
+		this.enabled = enabled;
+		this.indexDirectory = Paths.get(indexDirectory);
+	}
+
+	public boolean isEnabled() {
+		return enabled;
+	}
+
+	@Scheduled(fixedDelayString = "${logviewer.index.interval:300000}")
+	public void updateIndex() throws IOException {
+		if (!enabled || loggingPath == null)
+			return;
+		Files.createDirectories(indexDirectory);
+		List<Path> files = new ArrayList<>();
+		Files.walkFileTree(Paths.get(loggingPath), new SimpleFileVisitor<Path>() {
+			@Override
+			public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+				if (attrs.isRegularFile() && FileService.getFileType(file) == FileType.FILE)
+					files.add(file);
+				return FileVisitResult.CONTINUE;
+			}
+
+			@Override
+			public FileVisitResult visitFileFailed(Path file, IOException exc) {
+				return FileVisitResult.CONTINUE;
+			}
+		});
+		for (Path file : files) {
+			try {
+				update(file);
+			}
+			catch (IOException e) {
+				log.warn("Nie udalo sie zaindeksowac pliku " + file, e);
+			}
+		}
+		removeOrphans();
+		log.info("Zaindeksowano {} plikow", files.size());
+	}
+
+	public void update(Path file) throws IOException {
+		file = file.toAbsolutePath().normalize();
+		Path directory = directoryFor(file);
+		long size = Files.size(file);
+		long lastModified = Files.getLastModifiedTime(file).toMillis();
+		FileIndex index = readManifest(file);
+		if (index != null && !index.isValidFor(file, size)) {
+			delete(file);
+			index = null;
+		}
+		if (index == null) {
+			Files.createDirectories(directory);
+			index = new FileIndex();
+			index.setPath(file.toString());
+			index.setHeadLength((int) Math.min(FileIndex.HEAD_LENGTH, size));
+			index.setHeadChecksum(FileIndex.checksum(file, index.getHeadLength()));
+		}
+		else if (index.getFileSize() == size && index.getLastModified() == lastModified) {
+			return;
+		}
+		long end = lastLineEnd(file, index.getIndexedSize(), size);
+		if (end > index.getIndexedSize()) {
+			indexRange(file, directory, index, end);
+		}
+		index.setFileSize(size);
+		index.setLastModified(lastModified);
+		index.write(directory.resolve(MANIFEST));
+		manifests.put(file, index);
+	}
+
+	private void indexRange(Path file, Path directory, FileIndex index, long end) throws IOException {
+		SegmentBuilder builder = new SegmentBuilder(directory, index);
+		try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+			channel.position(index.getIndexedSize());
+			InputStream input = new BoundedInputStream(Channels.newInputStream(channel), end - index.getIndexedSize());
+			lineScanner.scan(input, index.getLineCount() + 1, index.getIndexedSize(), builder::add);
+		}
+		builder.flush(end);
+		index.setIndexedSize(end);
+	}
+
+	/**
+	 * Answers a case-sensitive substring query for one file from the index.
+	 *
+	 * @return false when the file is not indexed, the index is stale or the term has no indexable
+	 * letters; the caller has to scan the file instead
+	 */
+	public boolean search(Path file, String term, LineScanner.LineHandler handler) throws IOException {
+		if (!enabled)
+			return false;
+		file = file.toAbsolutePath().normalize();
+		List<Tokenizer.Piece> pieces = Tokenizer.queryPieces(term);
+		FileIndex index = manifest(file);
+		if (pieces.isEmpty() || index == null)
+			return false;
+		long size = Files.size(file);
+		if (!index.isValidFor(file, size))
+			return false;
+		List<IndexSegment> loaded = new ArrayList<>();
+		try {
+			for (FileIndex.Segment segment : index.getSegments()) {
+				loaded.add(segment(directoryFor(file).resolve(segment.getName())));
+			}
+		}
+		catch (NoSuchFileException e) {
+			return false;
+		}
+		try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+			ByteBuffer buffer = ByteBuffer.allocate(LineScanner.DEFAULT_MAX_LINE_LENGTH);
+			for (IndexSegment segment : loaded) {
+				for (Map.Entry<Long, Long> candidate : segment.candidates(pieces).entrySet()) {
+					String line = readLine(channel, candidate.getKey(), buffer);
+					if (line.contains(term) && !handler.onLine(candidate.getValue(), candidate.getKey(), line))
+						return true;
+				}
+			}
+			if (size > index.getIndexedSize()) {
+				channel.position(index.getIndexedSize());
+				InputStream input = new BoundedInputStream(new CloseShieldInputStream(Channels.newInputStream(channel)), size - index.getIndexedSize());
+				lineScanner.scan(input, index.getLineCount() + 1, index.getIndexedSize(),
+						(lineNumber, offset, line) -> !line.contains(term) || handler.onLine(lineNumber, offset, line));
+			}
+		}
+		return true;
+	}
+
+	private String readLine(FileChannel channel, long offset, ByteBuffer buffer) throws IOException {
+		buffer.clear();
+		while (buffer.hasRemaining() && channel.read(buffer, offset + buffer.position()) > 0) {
+			if (indexOf(buffer, (byte) '\n') >= 0)
+				break;
+		}
+		int end = indexOf(buffer, (byte) '\n');
+		if (end < 0)
+			end = buffer.position();
+		if (end > 0 && buffer.get(end - 1) == '\r')
+			end--;
+		return new String(buffer.array(), 0, end, charset);
+	}
+
+	private static int indexOf(ByteBuffer buffer, byte value) {
+		for (int i = 0; i < buffer.position(); i++) {
+			if (buffer.get(i) == value)
+				return i;
+		}
+		return -1;
+	}
+
+	/**
+	 * Cached manifest used by searches. Updates always work on a fresh copy read from disk and
+	 * replace the cached instance once the new manifest is written.
+	 */
+	private FileIndex manifest(Path file) {
+		return manifests.computeIfAbsent(file, this::readManifest);
+	}
+
+	private FileIndex readManifest(Path file) {
+		Path manifest = directoryFor(file).resolve(MANIFEST);
+		if (!Files.exists(manifest))
+			return null;
+		try {
+			return FileIndex.read(manifest);
+		}
+		catch (IOException e) {
+			log.warn("Uszkodzony manifest indeksu " + manifest, e);
+			return null;
+		}
+	}
+
+	private IndexSegment segment(Path path) throws IOException {
+		IndexSegment segment = segments.get(path);
+		if (segment == null) {
+			segment = IndexSegment.read(path);
+			segments.put(path, segment);
+		}
+		return segment;
+	}
+
+	private void delete(Path file) throws IOException {
+		manifests.remove(file);
+		FileUtils.deleteDirectory(directoryFor(file).toFile());
+	}
+
+	private void removeOrphans() throws IOException {
+		try (DirectoryStream<Path> directories = Files.newDirectoryStream(indexDirectory)) {
+			for (Path directory : directories) {
+				Path manifest = directory.resolve(MANIFEST);
+				if (!Files.exists(manifest))
+					continue;
+				Path file = Paths.get(FileIndex.read(manifest).getPath());
+				if (!Files.exists(file))
+					delete(file);
+			}
+		}
+	}
+
+	private Path directoryFor(Path file) {
+		return indexDirectory.resolve(UUID.nameUUIDFromBytes(file.toString().getBytes(StandardCharsets.UTF_8)).toString());
+	}
+
+	/**
+	 * Returns the position right after the last complete line in [from, size), so that a line
+	 * still being written is never indexed.
+	 */
+	private static long lastLineEnd(Path file, long from, long size) throws IOException {
+		ByteBuffer buffer = ByteBuffer.allocate(8192);
+		try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+			long end = size;
+			while (end > from) {
+				long start = Math.max(from, end - buffer.capacity());
+				buffer.clear();
+				buffer.limit((int) (end - start));
+				while (buffer.hasRemaining() && channel.read(buffer, start + buffer.position()) > 0) {
+				}
+				for (int i = buffer.position() - 1; i >= 0; i--) {
+					if (buffer.get(i) == '\n')
+						return start + i + 1;
+				}
+				end = start;
+			}
+		}
+		return from;
+	}
+
+	private static class SegmentBuilder {
+		private final Path directory;
+		private final FileIndex index;
+		private IndexSegment.Writer writer = new IndexSegment.Writer();
+		private long segmentStart;
+
+		SegmentBuilder(Path directory, FileIndex index) {
+			this.directory = directory;
+			this.index = index;
+			this.segmentStart = index.getIndexedSize();
+		}
+
+		boolean add(long lineNumber, long offset, String line) throws IOException {
+			if (offset - segmentStart >= SEGMENT_SIZE)
+				flush(offset);
+			writer.add(lineNumber, offset, line);
+			index.setLineCount(lineNumber);
+			return true;
+		}
+
+		void flush(long end) throws IOException {
+			if (!writer.isEmpty()) {
+				String name = "segment-" + segmentStart + "-" + System.nanoTime() + ".idx";
+				writer.write(directory.resolve(name));
+				index.getSegments().add(new FileIndex.Segment(name, segmentStart, end));
+			}
+			writer = new IndexSegment.Writer();
+			segmentStart = end;
+		}
+	}
+}
@@ -0,0 +1,105 @@
+package com.olszewski.michal.index;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.CRC32;
+
+import lombok.Data;
+
+/**
+ * Manifest of the index of one log file: which prefix of the file is indexed, how to recognise
+ * that the file was rotated or rewritten, and the segments covering the indexed lines.
+ */
+@Data
+class FileIndex {
+
+	static final int HEAD_LENGTH = 4096;
+	private static final int MAGIC = 0x4C56494D;
+
+	private String path;
+	private long fileSize;
+	private long lastModified;
+	private int headLength;
+	private long headChecksum;
+	private long indexedSize;
+	private long lineCount;
+	private List<Segment> segments = new ArrayList<>();
+
+	@Data
+	static class Segment {
+		private final String name;
+		private final long startOffset;
+		private final long endOffset;
+	}
+
+	/**
+	 * The index is usable as long as the file only grew since it was indexed.
+	 */
+	boolean isValidFor(Path file, long currentSize) throws IOException {
+		return currentSize >= indexedSize && headChecksum == checksum(file, headLength);
+	}
+
+	static long checksum(Path file, int length) throws IOException {
+		CRC32 crc = new CRC32();
+		byte[] buffer = new byte[length];
+		try (InputStream input = Files.newInputStream(file)) {
+			int read = 0;
+			int n;
+			while (read < length && (n = input.read(buffer, read, length - read)) > 0) {
+				read += n;
+			}
+			crc.update(buffer, 0, read);
+		}
+		return crc.getValue();
+	}
+
+	static FileIndex read(Path manifest) throws IOException {
+		try (DataInputStream input = new DataInputStream(new BufferedInputStream(Files.newInputStream(manifest)))) {
+			if (input.readInt() != MAGIC)
+				throw new IOException("Niepoprawny manifest indeksu " + manifest);
+			FileIndex index = new FileIndex();
+			index.setPath(input.readUTF());
+			index.setFileSize(input.readLong());
+			index.setLastModified(input.readLong());
+			index.setHeadLength(input.readInt());
+			index.setHeadChecksum(input.readLong());
+			index.setIndexedSize(input.readLong());
+			index.setLineCount(input.readLong());
+			int segmentCount = input.readInt();
+			for (int i = 0; i < segmentCount; i++) {
+				index.getSegments().add(new Segment(input.readUTF(), input.readLong(), input.readLong()));
+			}
+			return index;
+		}
+	}
+
+	void write(Path manifest) throws IOException {
+		Path temp = manifest.resolveSibling(manifest.getFileName() + ".tmp");
+		try (DataOutputStream output = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temp)))) {
+			output.writeInt(MAGIC);
+			output.writeUTF(path);
+			output.writeLong(fileSize);
+			output.writeLong(lastModified);
+			output.writeInt(headLength);
+			output.writeLong(headChecksum);
+			output.writeLong(indexedSize);
+			output.writeLong(lineCount);
+			output.writeInt(segments.size());
+			for (Segment segment : segments) {
+				output.writeUTF(segment.getName());
+				output.writeLong(segment.getStartOffset());
+				output.writeLong(segment.getEndOffset());
+			}
+		}
+		Files.move(temp, manifest, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+	}
+}
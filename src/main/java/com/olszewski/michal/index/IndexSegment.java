@@ -0,0 +1,263 @@
+package com.olszewski.michal.index;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.function.IntUnaryOperator;
+import java.util.stream.IntStream;
+
+import org.apache.commons.io.input.CountingInputStream;
+
+/**
+ * Immutable on-disk posting lists for one contiguous range of lines of a log file.
+ * <p>
+ * Layout: magic, token count, then for every token (sorted) its text, posting count and the
+ * position of its postings, followed by the postings themselves as varint deltas of
+ * (line number, byte offset) pairs.
+ * <p>
+ * The tokens are kept sorted in memory, and also ordered by their reversed text, so that whole
+ * tokens, prefixes and suffixes are found by binary search. Only a piece that may lie anywhere
+ * inside a token needs a pass over all of them.
+ */
+class IndexSegment {
+
+	private static final int MAGIC = 0x4C564958;
+
+	private final Path file;
+	private final String[] tokens;
+	private final int[] counts;
+	private final long[] positions;
+	private final long postingsStart;
+	private final int[] bySuffix;
+
+	private IndexSegment(Path file, String[] tokens, int[] counts, long[] positions, long postingsStart) {
+		this.file = file;
+		this.tokens = tokens;
+		this.counts = counts;
+		this.positions = positions;
+		this.postingsStart = postingsStart;
+		this.bySuffix = IntStream.range(0, tokens.length).boxed()
+				.sorted((a, b) -> compareReversed(tokens[a], tokens[b]))
+				.mapToInt(Integer::intValue)
+				.toArray();
+	}
+
+	static IndexSegment read(Path file) throws IOException {
+		try (CountingInputStream counting = new CountingInputStream(new BufferedInputStream(Files.newInputStream(file)));
+			 DataInputStream input = new DataInputStream(counting)) {
+			if (input.readInt() != MAGIC)
+				throw new IOException("Niepoprawny plik indeksu " + file);
+			int tokenCount = input.readInt();
+			String[] tokens = new String[tokenCount];
+			int[] counts = new int[tokenCount];
+			long[] positions = new long[tokenCount];
+			for (int i = 0; i < tokenCount; i++) {
+				tokens[i] = input.readUTF();
+				counts[i] = input.readInt();
+				positions[i] = input.readLong();
+			}
+			return new IndexSegment(file, tokens, counts, positions, counting.getByteCount());
+		}
+	}
+
+	/**
+	 * Returns candidate lines (byte offset to line number) for the query pieces: for every piece,
+	 * the union of postings of all tokens it can be part of, intersected across pieces.
+	 */
+	TreeMap<Long, Long> candidates(Iterable<Tokenizer.Piece> pieces) throws IOException {
+		TreeMap<Long, Long> result = null;
+		try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+			for (Tokenizer.Piece piece : pieces) {
+				TreeMap<Long, Long> lines = new TreeMap<>();
+				for (int token : matchingTokens(piece)) {
+					readPostings(channel, token, lines);
+				}
+				if (result == null)
+					result = lines;
+				else
+					result.keySet().retainAll(lines.keySet());
+				if (result.isEmpty())
+					break;
+			}
+		}
+		return result == null ? new TreeMap<>() : result;
+	}
+
+	/**
+	 * Indexes of the tokens the piece can be part of: the equal token when the piece is a whole
+	 * token, the tokens starting or ending with it when it is bounded on one side only, and all
+	 * tokens containing it otherwise.
+	 */
+	int[] matchingTokens(Tokenizer.Piece piece) {
+		String text = piece.getText();
+		if (piece.isTokenStart() && piece.isTokenEnd()) {
+			int found = Arrays.binarySearch(tokens, text);
+			return found >= 0 ? new int[]{found} : new int[0];
+		}
+		if (piece.isTokenStart()) {
+			int from = lowerBound(tokens.length, i -> tokens[i].compareTo(text));
+			int to = from;
+			while (to < tokens.length && tokens[to].startsWith(text)) {
+				to++;
+			}
+			return IntStream.range(from, to).toArray();
+		}
+		if (piece.isTokenEnd()) {
+			int from = lowerBound(bySuffix.length, i -> compareReversed(tokens[bySuffix[i]], text));
+			int to = from;
+			while (to < bySuffix.length && tokens[bySuffix[to]].endsWith(text)) {
+				to++;
+			}
+			return Arrays.copyOfRange(bySuffix, from, to);
+		}
+		return IntStream.range(0, tokens.length).filter(i -> tokens[i].contains(text)).toArray();
+	}
+
+	/**
+	 * @return the first index at which the comparison is not negative
+	 */
+	private static int lowerBound(int length, IntUnaryOperator comparison) {
+		int low = 0;
+		int high = length;
+		while (low < high) {
+			int middle = (low + high) >>> 1;
+			if (comparison.applyAsInt(middle) < 0)
+				low = middle + 1;
+			else
+				high = middle;
+		}
+		return low;
+	}
+
+	/**
+	 * Compares the texts as if both were written backwards.
+	 */
+	private static int compareReversed(String a, String b) {
+		int i = a.length() - 1;
+		int j = b.length() - 1;
+		for (; i >= 0 && j >= 0; i--, j--) {
+			if (a.charAt(i) != b.charAt(j))
+				return a.charAt(i) - b.charAt(j);
+		}
+		return (i + 1) - (j + 1);
+	}
+
+	private void readPostings(FileChannel channel, int token, Map<Long, Long> lines) throws IOException {
+		channel.position(postingsStart + positions[token]);
+		InputStream input = new BufferedInputStream(Channels.newInputStream(channel));
+		long lineNumber = 0;
+		long offset = 0;
+		for (int i = 0; i < counts[token]; i++) {
+			lineNumber += readVarLong(input);
+			offset += readVarLong(input);
+			lines.put(offset, lineNumber);
+		}
+	}
+
+	static class Writer {
+		private final Map<String, long[]> postings = new HashMap<>();
+		private final Map<String, Integer> sizes = new HashMap<>();
+		private long lastLineNumber = -1;
+
+		void add(long lineNumber, long offset, String line) {
+			Tokenizer.tokens(line, token -> {
+				long[] list = postings.get(token);
+				int size = sizes.getOrDefault(token, 0);
+				if (list == null) {
+					list = new long[4];
+					postings.put(token, list);
+				}
+				else if (list[size - 2] == lineNumber) {
+					return;
+				}
+				else if (size + 2 > list.length) {
+					list = Arrays.copyOf(list, list.length * 2);
+					postings.put(token, list);
+				}
+				list[size] = lineNumber;
+				list[size + 1] = offset;
+				sizes.put(token, size + 2);
+			});
+			lastLineNumber = lineNumber;
+		}
+
+		boolean isEmpty() {
+			return lastLineNumber < 0;
+		}
+
+		void write(Path file) throws IOException {
+			String[] tokens = postings.keySet().toArray(new String[0]);
+			Arrays.sort(tokens);
+			ByteArrayOutputStream encoded = new ByteArrayOutputStream();
+			long[] positions = new long[tokens.length];
+			int[] counts = new int[tokens.length];
+			for (int i = 0; i < tokens.length; i++) {
+				long[] list = postings.get(tokens[i]);
+				int size = sizes.get(tokens[i]);
+				positions[i] = encoded.size();
+				counts[i] = size / 2;
+				long lineNumber = 0;
+				long offset = 0;
+				for (int j = 0; j < size; j += 2) {
+					writeVarLong(encoded, list[j] - lineNumber);
+					writeVarLong(encoded, list[j + 1] - offset);
+					lineNumber = list[j];
+					offset = list[j + 1];
+				}
+			}
+			try (DataOutputStream output = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(file)))) {
+				output.writeInt(MAGIC);
+				output.writeInt(tokens.length);
+				for (int i = 0; i < tokens.length; i++) {
+					output.writeUTF(tokens[i]);
+					output.writeInt(counts[i]);
+					output.writeLong(positions[i]);
+				}
+				encoded.writeTo(output);
+			}
+		}
+	}
+
+	private static void writeVarLong(OutputStream output, long value) {
+		try {
+			while ((value & ~0x7FL) != 0) {
+				output.write((int) ((value & 0x7F) | 0x80));
+				value >>>= 7;
+			}
+			output.write((int) value);
+		}
+		catch (IOException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	private static long readVarLong(InputStream input) throws IOException {
+		long value = 0;
+		int shift = 0;
+		int b;
+		do {
+			b = input.read();
+			if (b < 0)
+				throw new EOFException();
+			value |= (long) (b & 0x7F) << shift;
+			shift += 7;
+		}
+		while ((b & 0x80) != 0);
+		return value;
+	}
+}
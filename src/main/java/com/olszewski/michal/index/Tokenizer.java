@@ -0,0 +1,69 @@
+package com.olszewski.michal.index;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.function.Consumer;
+
+import lombok.Data;
+
+/**
+ * Splits text into lower-cased runs of letters. Digits and other characters act as separators
+ * and runs shorter than {@link #MIN_TOKEN_LENGTH} are skipped.
+ * <p>
+ * Every letter run of a search term lies inside a letter run of any line containing the term,
+ * so a line matches the term only if, for every query piece, one of its tokens contains that
+ * piece. This keeps index lookups free of false negatives for plain substring search.
+ */
+final class Tokenizer {
+
+	static final int MIN_TOKEN_LENGTH = 2;
+
+	private Tokenizer() {
+	}
+
+	static void tokens(String text, Consumer<String> consumer) {
+		int start = -1;
+		for (int i = 0; i <= text.length(); i++) {
+			boolean letter = i < text.length() && Character.isLetter(text.charAt(i));
+			if (letter && start < 0) {
+				start = i;
+			}
+			else if (!letter && start >= 0) {
+				if (i - start >= MIN_TOKEN_LENGTH)
+					consumer.accept(text.substring(start, i).toLowerCase(Locale.ROOT));
+				start = -1;
+			}
+		}
+	}
+
+	/**
+	 * Splits a search term into the pieces its matching lines' tokens must contain. A piece with a
+	 * separator before it in the term starts a token of every matching line, and one with a
+	 * separator after it ends one, so such pieces are looked up by prefix, suffix or as a whole
+	 * token instead of by containment.
+	 */
+	static List<Piece> queryPieces(String term) {
+		List<Piece> pieces = new ArrayList<>();
+		int start = -1;
+		for (int i = 0; i <= term.length(); i++) {
+			boolean letter = i < term.length() && Character.isLetter(term.charAt(i));
+			if (letter && start < 0) {
+				start = i;
+			}
+			else if (!letter && start >= 0) {
+				if (i - start >= MIN_TOKEN_LENGTH)
+					pieces.add(new Piece(term.substring(start, i).toLowerCase(Locale.ROOT), start > 0, i < term.length()));
+				start = -1;
+			}
+		}
+		return pieces;
+	}
+
+	@Data
+	static class Piece {
+		private final String text;
+		private final boolean tokenStart;
+		private final boolean tokenEnd;
+	}
+}
@@ -0,0 +1,68 @@
+package com.olszewski.michal.metrics;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.springframework.stereotype.Component;
+
+/**
+ * Timers and counters of the log viewer's hot paths. Timers count calls and keep the total and
+ * maximum duration; counters are plain sums. Both are cheap enough to be updated per file.
+ */
+@Component
+public class LogViewerMetrics {
+
+	@FunctionalInterface
+	public interface Timed<T> {
+		T call() throws IOException;
+	}
+
+	private final Map<String, Timer> timers = new ConcurrentHashMap<>();
+	private final Map<String, LongAdder> counters = new ConcurrentHashMap<>();
+
+	public <T> T time(String name, Timed<T> action) throws IOException {
+		long start = System.nanoTime();
+		try {
+			return action.call();
+		}
+		finally {
+			timers.computeIfAbsent(name, key -> new Timer()).record(System.nanoTime() - start);
+		}
+	}
+
+	public void increment(String name, long delta) {
+		counters.computeIfAbsent(name, key -> new LongAdder()).add(delta);
+	}
+
+	/**
+	 * All values by name: counters as they are, timers as {@code .count}, {@code .total-ms} and
+	 * {@code .max-ms}.
+	 */
+	public Map<String, Long> snapshot() {
+		Map<String, Long> values = new TreeMap<>();
+		counters.forEach((name, counter) -> values.put(name, counter.sum()));
+		timers.forEach((name, timer) -> {
+			values.put(name + ".count", timer.count.sum());
+			values.put(name + ".total-ms", TimeUnit.NANOSECONDS.toMillis(timer.totalNanos.sum()));
+			values.put(name + ".max-ms", TimeUnit.NANOSECONDS.toMillis(timer.maxNanos.get()));
+		});
+		return values;
+	}
+
+	private static class Timer {
+		private final LongAdder count = new LongAdder();
+		private final LongAdder totalNanos = new LongAdder();
+		private final LongAccumulator maxNanos = new LongAccumulator(Math::max, 0);
+
+		void record(long nanos) {
+			count.increment();
+			totalNanos.add(nanos);
+			maxNanos.accumulate(nanos);
+		}
+	}
+}
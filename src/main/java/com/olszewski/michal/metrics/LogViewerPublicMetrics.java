@@ -0,0 +1,56 @@
+package com.olszewski.michal.metrics;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+import com.olszewski.michal.events.ErrorLogEventPublisher;
+import com.olszewski.michal.service.BlockCache;
+import com.olszewski.michal.service.DirectoryListingCache;
+
+import org.springframework.boot.actuate.endpoint.PublicMetrics;
+import org.springframework.boot.actuate.metrics.Metric;
+import org.springframework.stereotype.Component;
+
+/**
+ * Publishes the log viewer's timers, counters and cache statistics on the actuator
+ * {@code /metrics} endpoint, prefixed with {@code logviewer.}.
+ */
+@Component
+public class LogViewerPublicMetrics implements PublicMetrics {
+
+	private static final String PREFIX = "logviewer.";
+
+	private final LogViewerMetrics metrics;
+	private final DirectoryListingCache directoryListingCache;
+	private final ErrorLogEventPublisher errorLogEventPublisher;
+	private final BlockCache blockCache;
+
+	public LogViewerPublicMetrics(LogViewerMetrics metrics, DirectoryListingCache directoryListingCache,
+								  ErrorLogEventPublisher errorLogEventPublisher, BlockCache blockCache) {
+		this.metrics = metrics;
+		this.directoryListingCache = directoryListingCache;
+		this.errorLogEventPublisher = errorLogEventPublisher;
+		this.blockCache = blockCache;
+	}
+
+	@Override
+	public Collection<Metric<?>> metrics() {
+		List<Metric<?>> result = new ArrayList<>();
+		metrics.snapshot().forEach((name, value) -> result.add(new Metric<>(PREFIX + name, value)));
+		result.add(new Metric<>(PREFIX + "listing.cache-hits", directoryListingCache.getHits()));
+		result.add(new Metric<>(PREFIX + "listing.cache-misses", directoryListingCache.getMisses()));
+		result.add(new Metric<>(PREFIX + "events.published", errorLogEventPublisher.getPublished()));
+		result.add(new Metric<>(PREFIX + "events.dropped", errorLogEventPublisher.getDropped()));
+		result.add(new Metric<>(PREFIX + "events.batches", errorLogEventPublisher.getBatches()));
+		result.add(new Metric<>(PREFIX + "events.queued", errorLogEventPublisher.getQueued()));
+		long blockHits = blockCache.getHits();
+		long blockReads = blockHits + blockCache.getMisses();
+		result.add(new Metric<>(PREFIX + "block-cache.hits", blockHits));
+		result.add(new Metric<>(PREFIX + "block-cache.misses", blockCache.getMisses()));
+		result.add(new Metric<>(PREFIX + "block-cache.evictions", blockCache.getEvictions()));
+		result.add(new Metric<>(PREFIX + "block-cache.blocks", blockCache.getBlocks()));
+		result.add(new Metric<>(PREFIX + "block-cache.hit-ratio", blockReads == 0 ? 0.0 : (double) blockHits / blockReads));
+		return result;
+	}
+}
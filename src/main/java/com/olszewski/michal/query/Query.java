@@ -0,0 +1,45 @@
+package com.olszewski.michal.query;
+
+import java.util.Locale;
+import java.util.Optional;
+
+/**
+ * Content query compiled once per search into a tree of matchers. Words and "quoted phrases"
+ * are substring matches, /slashes/ delimit regular expressions, and terms can be combined with
+ * AND (also implied between terms), OR, NOT and parentheses. Regular expressions are only run
+ * on lines which contain their literal part. Text without any of the operators that is not a
+ * single phrase or regular expression is searched for as it is, as one substring.
+ */
+public final class Query {
+
+	private final QueryNode root;
+	private final boolean ignoreCase;
+
+	private Query(QueryNode root, boolean ignoreCase) {
+		this.root = root;
+		this.ignoreCase = ignoreCase;
+	}
+
+	/**
+	 * @throws com.olszewski.michal.exceptions.InvalidQueryException when the query cannot be parsed
+	 */
+	public static Query compile(String text, boolean ignoreCase) {
+		return new Query(new QueryParser(text == null ? "" : text, ignoreCase).parse(), ignoreCase);
+	}
+
+	public boolean matches(String line) {
+		return root.matches(ignoreCase ? line.toLowerCase(Locale.ROOT) : line);
+	}
+
+	/**
+	 * A substring which every matching line contains, lower case when the query ignores case.
+	 * Empty when no such substring is known, e.g. for OR and NOT queries.
+	 */
+	public Optional<String> getRequiredLiteral() {
+		return root.requiredLiteral();
+	}
+
+	public boolean isIgnoreCase() {
+		return ignoreCase;
+	}
+}
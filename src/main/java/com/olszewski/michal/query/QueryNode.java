@@ -0,0 +1,160 @@
+package com.olszewski.michal.query;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Optional;
+import java.util.regex.Pattern;
+
+/**
+ * Node of a compiled query. Every node can name a literal which each matching line has to
+ * contain; callers use it to skip lines (or whole files) with a plain substring search before
+ * the node itself is evaluated.
+ */
+abstract class QueryNode {
+
+	abstract boolean matches(String line);
+
+	Optional<String> requiredLiteral() {
+		return Optional.empty();
+	}
+
+	/**
+	 * Relative cost of {@link #matches}, used to evaluate cheap children of AND and OR first.
+	 */
+	int cost() {
+		return 1;
+	}
+
+	static class All extends QueryNode {
+		@Override
+		boolean matches(String line) {
+			return true;
+		}
+
+		@Override
+		int cost() {
+			return 0;
+		}
+	}
+
+	static class Literal extends QueryNode {
+		private final String text;
+
+		Literal(String text) {
+			this.text = text;
+		}
+
+		@Override
+		boolean matches(String line) {
+			return line.contains(text);
+		}
+
+		@Override
+		Optional<String> requiredLiteral() {
+			return text.isEmpty() ? Optional.empty() : Optional.of(text);
+		}
+	}
+
+	static class Regex extends QueryNode {
+		private final Pattern pattern;
+		private final Optional<String> literal;
+
+		Regex(Pattern pattern, Optional<String> literal) {
+			this.pattern = pattern;
+			this.literal = literal;
+		}
+
+		@Override
+		boolean matches(String line) {
+			return (!literal.isPresent() || line.contains(literal.get())) && pattern.matcher(line).find();
+		}
+
+		@Override
+		Optional<String> requiredLiteral() {
+			return literal;
+		}
+
+		@Override
+		int cost() {
+			return 10;
+		}
+	}
+
+	static class Not extends QueryNode {
+		private final QueryNode child;
+
+		Not(QueryNode child) {
+			this.child = child;
+		}
+
+		@Override
+		boolean matches(String line) {
+			return !child.matches(line);
+		}
+
+		@Override
+		int cost() {
+			return child.cost();
+		}
+	}
+
+	static class And extends QueryNode {
+		private final List<QueryNode> children;
+
+		And(List<QueryNode> children) {
+			this.children = byCost(children);
+		}
+
+		@Override
+		boolean matches(String line) {
+			for (QueryNode child : children) {
+				if (!child.matches(line))
+					return false;
+			}
+			return true;
+		}
+
+		@Override
+		Optional<String> requiredLiteral() {
+			return children.stream()
+					.map(QueryNode::requiredLiteral)
+					.filter(Optional::isPresent)
+					.map(Optional::get)
+					.max(Comparator.comparingInt(String::length));
+		}
+
+		@Override
+		int cost() {
+			return children.stream().mapToInt(QueryNode::cost).sum();
+		}
+	}
+
+	static class Or extends QueryNode {
+		private final List<QueryNode> children;
+
+		Or(List<QueryNode> children) {
+			this.children = byCost(children);
+		}
+
+		@Override
+		boolean matches(String line) {
+			for (QueryNode child : children) {
+				if (child.matches(line))
+					return true;
+			}
+			return false;
+		}
+
+		@Override
+		int cost() {
+			return children.stream().mapToInt(QueryNode::cost).sum();
+		}
+	}
+
+	private static List<QueryNode> byCost(List<QueryNode> children) {
+		List<QueryNode> sorted = new ArrayList<>(children);
+		sorted.sort(Comparator.comparingInt(QueryNode::cost));
+		return sorted;
+	}
+}
@@ -0,0 +1,288 @@
+package com.olszewski.michal.query;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Optional;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+import com.olszewski.michal.exceptions.InvalidQueryException;
+
+/**
+ * Recursive descent parser of the query language:
+ * <pre>
+ * query   := and ("OR" and)*
+ * and     := unary (["AND"] unary)*
+ * unary   := "NOT" unary | primary
+ * primary := "(" query ")" | "\"phrase\"" | "/regex/" | word
+ * </pre>
+ * Operators have to be written in upper case, so lower case "and", "or" and "not" are ordinary
+ * words. A backslash escapes the closing quote or slash.
+ * <p>
+ * The language is only used when the query asks for it: when one of the operators stands as a
+ * separate word, or when the whole query is a single "phrase" or /regex/. Any other text is
+ * searched for as one substring, spaces, parentheses and slashes included, as it always was, so
+ * {@code connection reset} does not become {@code connection AND reset}, {@code foo(bar} is not
+ * rejected and {@code /var/log} is not a regular expression.
+ */
+class QueryParser {
+
+	private final String text;
+	private final boolean ignoreCase;
+	private int position;
+
+	QueryParser(String text, boolean ignoreCase) {
+		this.text = text;
+		this.ignoreCase = ignoreCase;
+	}
+
+	QueryNode parse() {
+		if (text.isEmpty())
+			return new QueryNode.All();
+		if (!usesSyntax(text))
+			return new QueryNode.Literal(fold(text));
+		skipWhitespace();
+		if (position == text.length())
+			return new QueryNode.All();
+		QueryNode node = parseOr();
+		skipWhitespace();
+		if (position < text.length())
+			throw new InvalidQueryException("Nieoczekiwany znak '" + text.charAt(position) + "' na pozycji " + position);
+		return node;
+	}
+
+	private static boolean usesSyntax(String text) {
+		String trimmed = text.trim();
+		if (trimmed.length() > 1 && (trimmed.charAt(0) == '"' || trimmed.charAt(0) == '/')
+				&& trimmed.charAt(trimmed.length() - 1) == trimmed.charAt(0))
+			return true;
+		for (String word : trimmed.split("[\\s()]+")) {
+			if (word.equals("AND") || word.equals("OR") || word.equals("NOT"))
+				return true;
+		}
+		return false;
+	}
+
+	private QueryNode parseOr() {
+		List<QueryNode> children = new ArrayList<>();
+		children.add(parseAnd());
+		while (acceptKeyword("OR")) {
+			children.add(parseAnd());
+		}
+		return children.size() == 1 ? children.get(0) : new QueryNode.Or(children);
+	}
+
+	private QueryNode parseAnd() {
+		List<QueryNode> children = new ArrayList<>();
+		children.add(parseUnary());
+		while (true) {
+			skipWhitespace();
+			if (position == text.length() || text.charAt(position) == ')' || peekKeyword("OR"))
+				break;
+			acceptKeyword("AND");
+			children.add(parseUnary());
+		}
+		return children.size() == 1 ? children.get(0) : new QueryNode.And(children);
+	}
+
+	private QueryNode parseUnary() {
+		if (acceptKeyword("NOT"))
+			return new QueryNode.Not(parseUnary());
+		return parsePrimary();
+	}
+
+	private QueryNode parsePrimary() {
+		skipWhitespace();
+		if (position == text.length())
+			throw new InvalidQueryException("Niekompletne zapytanie: " + text);
+		char c = text.charAt(position);
+		if (c == '(') {
+			position++;
+			QueryNode node = parseOr();
+			skipWhitespace();
+			if (position == text.length() || text.charAt(position) != ')')
+				throw new InvalidQueryException("Brak nawiasu zamykajacego w zapytaniu: " + text);
+			position++;
+			return node;
+		}
+		if (c == ')')
+			throw new InvalidQueryException("Nieoczekiwany nawias zamykajacy na pozycji " + position);
+		if (c == '"')
+			return new QueryNode.Literal(fold(readDelimited('"')));
+		if (c == '/')
+			return regex(readDelimited('/'));
+		return new QueryNode.Literal(fold(readWord()));
+	}
+
+	private QueryNode regex(String expression) {
+		try {
+			int flags = ignoreCase ? Pattern.CASE_INSENSITIVE | Pattern.UNICODE_CASE : 0;
+			return new QueryNode.Regex(Pattern.compile(expression, flags), requiredLiteral(expression).map(this::fold));
+		}
+		catch (PatternSyntaxException e) {
+			throw new InvalidQueryException("Niepoprawne wyrazenie regularne: " + expression, e);
+		}
+	}
+
+	/**
+	 * Longest run of literal characters which every match of the expression has to contain. Only
+	 * the top level is examined; alternation and inline flags give up, since they can make any
+	 * literal optional or change how it is compared.
+	 */
+	static Optional<String> requiredLiteral(String expression) {
+		if (expression.indexOf('|') >= 0 || expression.contains("(?"))
+			return Optional.empty();
+		String longest = "";
+		StringBuilder run = new StringBuilder();
+		int depth = 0;
+		for (int i = 0; i < expression.length(); i++) {
+			char c = expression.charAt(i);
+			if (c == '\\' && i + 1 < expression.length()) {
+				char escaped = expression.charAt(++i);
+				if (depth == 0 && !Character.isLetterOrDigit(escaped)) {
+					run.append(escaped);
+					continue;
+				}
+				if (escaped == 'Q' || escaped == 'E')
+					return Optional.empty();
+				i = skipEscapeOperands(expression, i, escaped);
+			}
+			else if (c == '[') {
+				i = skipCharacterClass(expression, i);
+			}
+			else if (c == '(') {
+				depth++;
+			}
+			else if (c == ')') {
+				depth--;
+			}
+			else if (c == '*' || c == '?' || c == '{') {
+				if (run.length() > 0)
+					run.setLength(run.length() - 1);
+				if (c == '{')
+					i = Math.max(i, expression.indexOf('}', i));
+			}
+			else if (depth == 0 && c != '.' && c != '^' && c != '$' && c != '+') {
+				run.append(c);
+				continue;
+			}
+			if (run.length() > longest.length())
+				longest = run.toString();
+			run.setLength(0);
+		}
+		if (run.length() > longest.length())
+			longest = run.toString();
+		return longest.isEmpty() ? Optional.empty() : Optional.of(longest);
+	}
+
+	/**
+	 * Skips what follows the letter or digit of an escape as part of it: the hex digits of
+	 * {@code x} and {@code u} escapes, the octal digits of {@code 0}, the control letter of
+	 * {@code c}, the group name of {@code k<name>}, the property of {@code p} and {@code P} and the
+	 * digits of a back reference.
+	 *
+	 * @return position of the last character of the escape
+	 */
+	private static int skipEscapeOperands(String expression, int position, char escaped) {
+		int next = position + 1;
+		switch (escaped) {
+			case 'x':
+				if (next < expression.length() && expression.charAt(next) == '{')
+					return closing(expression, next, '}');
+				return skipWhile(expression, next, 2, "0123456789abcdefABCDEF");
+			case 'u':
+				return skipWhile(expression, next, 4, "0123456789abcdefABCDEF");
+			case '0':
+				return skipWhile(expression, next, 3, "01234567");
+			case 'c':
+				return Math.min(next, expression.length() - 1);
+			case 'k':
+				return closing(expression, next, '>');
+			case 'p':
+			case 'P':
+				if (next < expression.length() && expression.charAt(next) == '{')
+					return closing(expression, next, '}');
+				return Math.min(next, expression.length() - 1);
+			default:
+				if (Character.isDigit(escaped))
+					return skipWhile(expression, next, Integer.MAX_VALUE, "0123456789");
+				return position;
+		}
+	}
+
+	private static int skipWhile(String expression, int start, int max, String characters) {
+		int i = start;
+		while (i < expression.length() && i - start < max && characters.indexOf(expression.charAt(i)) >= 0) {
+			i++;
+		}
+		return i - 1;
+	}
+
+	private static int closing(String expression, int start, char closing) {
+		int end = expression.indexOf(closing, start);
+		return end < 0 ? expression.length() - 1 : end;
+	}
+
+	private static int skipCharacterClass(String expression, int start) {
+		int i = start + 1;
+		if (i < expression.length() && expression.charAt(i) == '^')
+			i++;
+		if (i < expression.length() && expression.charAt(i) == ']')
+			i++;
+		while (i < expression.length() && expression.charAt(i) != ']') {
+			if (expression.charAt(i) == '\\')
+				i++;
+			i++;
+		}
+		return i;
+	}
+
+	private String readDelimited(char delimiter) {
+		int start = position;
+		StringBuilder value = new StringBuilder();
+		position++;
+		while (position < text.length()) {
+			char c = text.charAt(position++);
+			if (c == delimiter)
+				return value.toString();
+			if (c == '\\' && position < text.length() && text.charAt(position) == delimiter)
+				c = text.charAt(position++);
+			value.append(c);
+		}
+		throw new InvalidQueryException("Niezamkniety znak " + delimiter + " na pozycji " + start);
+	}
+
+	private String readWord() {
+		int start = position;
+		while (position < text.length() && !Character.isWhitespace(text.charAt(position))
+				&& text.charAt(position) != '(' && text.charAt(position) != ')') {
+			position++;
+		}
+		return text.substring(start, position);
+	}
+
+	private boolean peekKeyword(String keyword) {
+		skipWhitespace();
+		int end = position + keyword.length();
+		return text.startsWith(keyword, position)
+				&& (end == text.length() || Character.isWhitespace(text.charAt(end)) || text.charAt(end) == '(');
+	}
+
+	private boolean acceptKeyword(String keyword) {
+		if (!peekKeyword(keyword))
+			return false;
+		position += keyword.length();
+		return true;
+	}
+
+	private void skipWhitespace() {
+		while (position < text.length() && Character.isWhitespace(text.charAt(position))) {
+			position++;
+		}
+	}
+
+	private String fold(String value) {
+		return ignoreCase ? value.toLowerCase(Locale.ROOT) : value;
+	}
+}
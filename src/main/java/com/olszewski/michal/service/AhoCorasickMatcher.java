@@ -0,0 +1,96 @@
+package com.olszewski.michal.service;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * Finds any of a set of patterns in a text in a single pass (Aho-Corasick automaton), so the
+ * cost per line does not grow with the number of patterns.
+ */
+public class AhoCorasickMatcher {
+
+	private static final int ROOT = 0;
+
+	private final List<String> patterns = new ArrayList<>();
+	private final boolean ignoreCase;
+	private final List<Map<Character, Integer>> transitions = new ArrayList<>();
+	private int[] fail;
+	private int[] output;
+
+	public AhoCorasickMatcher(Collection<String> patterns, boolean ignoreCase) {
+		this.ignoreCase = ignoreCase;
+		transitions.add(new HashMap<>());
+		List<Integer> terminals = new ArrayList<>();
+		for (String pattern : patterns) {
+			if (pattern.isEmpty())
+				continue;
+			int state = ROOT;
+			for (int i = 0; i < pattern.length(); i++) {
+				char c = fold(pattern.charAt(i));
+				Integer next = transitions.get(state).get(c);
+				if (next == null) {
+					next = transitions.size();
+					transitions.add(new HashMap<>());
+					transitions.get(state).put(c, next);
+				}
+				state = next;
+			}
+			this.patterns.add(pattern);
+			terminals.add(state);
+		}
+		output = new int[transitions.size()];
+		Arrays.fill(output, -1);
+		for (int i = terminals.size() - 1; i >= 0; i--) {
+			output[terminals.get(i)] = i;
+		}
+		buildFailureLinks();
+	}
+
+	private void buildFailureLinks() {
+		fail = new int[transitions.size()];
+		Deque<Integer> queue = new ArrayDeque<>(transitions.get(ROOT).values());
+		while (!queue.isEmpty()) {
+			int state = queue.poll();
+			for (Map.Entry<Character, Integer> transition : transitions.get(state).entrySet()) {
+				int child = transition.getValue();
+				int candidate = fail[state];
+				while (candidate != ROOT && !transitions.get(candidate).containsKey(transition.getKey())) {
+					candidate = fail[candidate];
+				}
+				Integer target = transitions.get(candidate).get(transition.getKey());
+				fail[child] = target != null && target != child ? target : ROOT;
+				if (output[child] < 0)
+					output[child] = output[fail[child]];
+				queue.add(child);
+			}
+		}
+	}
+
+	/**
+	 * @return the pattern whose occurrence ends first in the text
+	 */
+	public Optional<String> find(CharSequence text) {
+		int state = ROOT;
+		for (int i = 0; i < text.length(); i++) {
+			char c = fold(text.charAt(i));
+			while (state != ROOT && !transitions.get(state).containsKey(c)) {
+				state = fail[state];
+			}
+			state = transitions.get(state).getOrDefault(c, ROOT);
+			if (output[state] >= 0)
+				return Optional.of(patterns.get(output[state]));
+		}
+		return Optional.empty();
+	}
+
+	private char fold(char c) {
+		return ignoreCase ? Character.toLowerCase(c) : c;
+	}
+}
@@ -0,0 +1,262 @@
+package com.olszewski.michal.service;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import com.olszewski.michal.domain.FileEntry;
+import com.olszewski.michal.domain.FileType;
+import com.olszewski.michal.metrics.LogViewerMetrics;
+import lombok.Data;
+import org.apache.commons.compress.archivers.ArchiveEntry;
+import org.apache.commons.compress.archivers.sevenz.SevenZArchiveEntry;
+import org.apache.commons.compress.archivers.sevenz.SevenZFile;
+import org.apache.commons.compress.archivers.zip.ZipArchiveEntry;
+import org.apache.commons.compress.archivers.zip.ZipFile;
+import org.apache.commons.io.input.ClosedInputStream;
+import org.apache.commons.io.input.ProxyInputStream;
+
+/**
+ * Keeps the parsed entry tables of recently used zip and 7z archives, keyed by path, size and
+ * modification time. Zip archives stay open, so listing them or opening an entry goes straight
+ * through the central directory instead of scanning the archive from its beginning.
+ */
+class ArchiveCatalog {
+
+	private static final int MAX_ARCHIVES = 64;
+
+	private final LogViewerMetrics metrics;
+
+	private final Map<ArchiveKey, Archive> archives = new LinkedHashMap<ArchiveKey, Archive>(16, 0.75f, true) {
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<ArchiveKey, Archive> eldest) {
+			if (size() > MAX_ARCHIVES) {
+				eldest.getValue().evict();
+				return true;
+			}
+			return false;
+		}
+	};
+
+	ArchiveCatalog(LogViewerMetrics metrics) {
+		this.metrics = metrics;
+	}
+
+	List<FileEntry> listEntries(Path path) throws IOException {
+		return Collections.unmodifiableList(archive(path).entries);
+	}
+
+	/**
+	 * Opens the entry with the given name (compared case-insensitively) or returns an empty stream
+	 * when the archive has no such entry. 7z archives have no random access in commons-compress,
+	 * so their entries are reached by skipping the preceding ones and then streamed.
+	 */
+	InputStream openEntry(Path path, String name) throws IOException {
+		Archive archive = archive(path);
+		String entryName = archive.names.get(name.toLowerCase(Locale.ROOT));
+		if (entryName == null)
+			return new ClosedInputStream();
+		try {
+			return archive.open(entryName);
+		}
+		catch (ArchiveClosedException e) {
+			return archive(path).open(entryName);
+		}
+	}
+
+	/**
+	 * Returns the cached archive, parsing it outside the lock when missing. A rewritten archive
+	 * replaces the entries cached for its older versions, which are closed once no stream reads
+	 * them any more, so they neither leak handles nor keep the old file locked.
+	 */
+	private Archive archive(Path path) throws IOException {
+		BasicFileAttributes attributes = Files.readAttributes(path, BasicFileAttributes.class);
+		ArchiveKey key = new ArchiveKey(path.toAbsolutePath().normalize(), attributes.size(), attributes.lastModifiedTime().toMillis());
+		synchronized (archives) {
+			Archive archive = archives.get(key);
+			if (archive != null) {
+				metrics.increment("archive.cache-hits", 1);
+				return archive;
+			}
+		}
+		metrics.increment("archive.cache-misses", 1);
+		Archive loaded = path.getFileName().toString().endsWith(".7z") ? new SevenZArchive(path) : new ZipArchive(path);
+		synchronized (archives) {
+			Archive archive = archives.get(key);
+			if (archive != null) {
+				loaded.evict();
+				return archive;
+			}
+			Iterator<Map.Entry<ArchiveKey, Archive>> cached = archives.entrySet().iterator();
+			while (cached.hasNext()) {
+				Map.Entry<ArchiveKey, Archive> entry = cached.next();
+				if (entry.getKey().getPath().equals(key.getPath())) {
+					entry.getValue().evict();
+					cached.remove();
+				}
+			}
+			archives.put(key, loaded);
+			return loaded;
+		}
+	}
+
+	static FileEntry createFileEntry(ArchiveEntry entry, Path path) {
+		FileEntry fileEntry = new FileEntry();
+		fileEntry.setFilename(entry.getName());
+		fileEntry.setFilePath(Paths.get(path.toString()));
+		fileEntry.setSize(entry.getSize());
+		fileEntry.setModified(entry.getLastModifiedDate().toInstant());
+		fileEntry.setFileType(entry.isDirectory() ? FileType.DIRECTORY : FileService.getFileType(Paths.get(path.toString(), entry.getName())));
+		return fileEntry;
+	}
+
+	private static class ArchiveClosedException extends IOException {
+		ArchiveClosedException() {
+			super("Archiwum zostalo zamkniete");
+		}
+	}
+
+	@Data
+	private static class ArchiveKey {
+		private final Path path;
+		private final long size;
+		private final long lastModified;
+	}
+
+	private abstract static class Archive {
+		final List<FileEntry> entries = new ArrayList<>();
+		final Map<String, String> names = new HashMap<>();
+
+		void add(ArchiveEntry entry, Path path) {
+			entries.add(createFileEntry(entry, path));
+			names.putIfAbsent(entry.getName().toLowerCase(Locale.ROOT), entry.getName());
+		}
+
+		abstract InputStream open(String entryName) throws IOException;
+
+		void evict() {
+		}
+	}
+
+	private static class ZipArchive extends Archive {
+		private final ZipFile zipFile;
+		private int leases;
+		private boolean evicted;
+
+		ZipArchive(Path path) throws IOException {
+			zipFile = new ZipFile(path.toFile());
+			try {
+				for (ZipArchiveEntry entry : Collections.list(zipFile.getEntries())) {
+					add(entry, path);
+				}
+			}
+			catch (RuntimeException e) {
+				ZipFile.closeQuietly(zipFile);
+				throw e;
+			}
+		}
+
+		@Override
+		synchronized InputStream open(String entryName) throws IOException {
+			if (evicted)
+				throw new ArchiveClosedException();
+			InputStream input = zipFile.getInputStream(zipFile.getEntry(entryName));
+			leases++;
+			AtomicBoolean closed = new AtomicBoolean();
+			return new ProxyInputStream(input) {
+				@Override
+				public void close() throws IOException {
+					if (closed.compareAndSet(false, true)) {
+						super.close();
+						release();
+					}
+				}
+			};
+		}
+
+		private synchronized void release() {
+			leases--;
+			if (evicted && leases == 0)
+				ZipFile.closeQuietly(zipFile);
+		}
+
+		@Override
+		synchronized void evict() {
+			evicted = true;
+			if (leases == 0)
+				ZipFile.closeQuietly(zipFile);
+		}
+	}
+
+	private static class SevenZArchive extends Archive {
+		private final Path path;
+
+		SevenZArchive(Path path) throws IOException {
+			this.path = path;
+			try (SevenZFile sevenZFile = new SevenZFile(path.toFile())) {
+				for (SevenZArchiveEntry entry : sevenZFile.getEntries()) {
+					add(entry, path);
+				}
+			}
+		}
+
+		@Override
+		InputStream open(String entryName) throws IOException {
+			SevenZFile sevenZFile = new SevenZFile(path.toFile());
+			try {
+				SevenZArchiveEntry entry;
+				while ((entry = sevenZFile.getNextEntry()) != null) {
+					if (entry.getName().equals(entryName))
+						return new SevenZEntryInputStream(sevenZFile);
+				}
+			}
+			catch (IOException | RuntimeException e) {
+				sevenZFile.close();
+				throw e;
+			}
+			sevenZFile.close();
+			return new ClosedInputStream();
+		}
+	}
+
+	/**
+	 * Streams the current entry of a {@link SevenZFile} through the caller's buffers and closes the
+	 * archive together with the stream.
+	 */
+	private static class SevenZEntryInputStream extends InputStream {
+		private final SevenZFile sevenZFile;
+
+		SevenZEntryInputStream(SevenZFile sevenZFile) {
+			this.sevenZFile = sevenZFile;
+		}
+
+		@Override
+		public int read() throws IOException {
+			return sevenZFile.read();
+		}
+
+		@Override
+		public int read(byte[] buffer, int offset, int length) throws IOException {
+			if (length == 0)
+				return 0;
+			return sevenZFile.read(buffer, offset, length);
+		}
+
+		@Override
+		public void close() throws IOException {
+			sevenZFile.close();
+		}
+	}
+}
@@ -0,0 +1,89 @@
+package com.olszewski.michal.service;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+
+/**
+ * Reads the lines of a plain file backwards in blocks with positional reads, newest first. Used
+ * to tail files and to find where the event around a hit starts.
+ */
+class BackwardLineReader {
+
+	private static final int BLOCK_SIZE = LineScanner.DEFAULT_BUFFER_SIZE;
+
+	@FunctionalInterface
+	interface LineHandler {
+		/**
+		 * @return false to stop reading
+		 */
+		boolean onLine(long offset, String line);
+	}
+
+	private final Charset charset;
+	private final ThreadLocal<ByteBuffer> blocks = ThreadLocal.withInitial(() -> ByteBuffer.allocate(BLOCK_SIZE));
+
+	BackwardLineReader(Charset charset) {
+		this.charset = charset;
+	}
+
+	/**
+	 * Passes the lines ending before {@code from} to the handler, newest first, until it returns
+	 * false or {@code maxBytes} have been read. {@code from} is either the end of the file or the
+	 * start of a line.
+	 *
+	 * @return the number of bytes read
+	 */
+	long read(FileChannel channel, long from, long maxBytes, LineHandler handler) throws IOException {
+		ByteBuffer block = blocks.get();
+		byte[] bytes = block.array();
+		byte[] pending = new byte[0];
+		boolean first = true;
+		long position = from;
+		long read = 0;
+		while (position > 0 && read < maxBytes) {
+			int length = (int) Math.min(BLOCK_SIZE, position);
+			position -= length;
+			block.clear().limit(length);
+			while (block.hasRemaining() && channel.read(block, position + block.position()) > 0) {
+			}
+			read += length;
+			int lineEnd = length;
+			for (int i = length - 1; i >= 0; i--) {
+				if (bytes[i] != '\n')
+					continue;
+				byte[] line = join(bytes, i + 1, lineEnd, pending);
+				pending = new byte[0];
+				lineEnd = i;
+				if (!(first && line.length == 0) && !handler.onLine(position + i + 1, decode(line)))
+					return read;
+				first = false;
+			}
+			pending = join(bytes, 0, lineEnd, pending);
+		}
+		if (position == 0 && !(first && pending.length == 0))
+			handler.onLine(0, decode(pending));
+		return read;
+	}
+
+	/**
+	 * Puts {@code bytes[from, to)} in front of the part of a line already read from later blocks,
+	 * keeping only the first {@link LineScanner#DEFAULT_MAX_LINE_LENGTH} bytes, like {@link LineScanner}.
+	 */
+	private static byte[] join(byte[] bytes, int from, int to, byte[] pending) {
+		int length = Math.min(to - from + pending.length, LineScanner.DEFAULT_MAX_LINE_LENGTH);
+		byte[] line = Arrays.copyOfRange(bytes, from, from + length);
+		if (length > to - from)
+			System.arraycopy(pending, 0, line, to - from, length - (to - from));
+		return line;
+	}
+
+	private String decode(byte[] line) {
+		int length = line.length;
+		if (length > 0 && line[length - 1] == '\r')
+			length--;
+		return new String(line, 0, length, charset);
+	}
+}
@@ -0,0 +1,266 @@
+package com.olszewski.michal.service;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.StampedLock;
+
+import lombok.Data;
+import org.apache.commons.io.IOUtils;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+/**
+ * Keeps recently read blocks of file content, shared by all viewers and searches. Blocks hold the
+ * content after decompression and are keyed by file, archive entry, modification time, size and
+ * offset, so a modified file is simply read again, even when it grew within the same tick of the
+ * modification time. At most {@code logviewer.block-cache.size} bytes are
+ * kept; least recently used blocks are evicted and their arrays reused for new blocks.
+ */
+@Component
+public class BlockCache {
+
+	/**
+	 * Opens the content at the given offset; used only for blocks missing from the cache.
+	 */
+	@FunctionalInterface
+	public interface Source {
+		InputStream open(long offset) throws IOException;
+	}
+
+	static final int BLOCK_SIZE = LineScanner.DEFAULT_BUFFER_SIZE;
+	private static final byte[] EMPTY = new byte[0];
+
+	private final int maxBlocks;
+	private final Map<BlockKey, Block> blocks = new LinkedHashMap<>(16, 0.75f, true);
+	private final Deque<byte[]> pool = new ArrayDeque<>();
+	private final AtomicLong hits = new AtomicLong();
+	private final AtomicLong misses = new AtomicLong();
+	private final AtomicLong evictions = new AtomicLong();
+
+	public BlockCache(@Value("${logviewer.block-cache.size:67108864}") long size) {
+		this.maxBlocks = (int) Math.min(Integer.MAX_VALUE, size / BLOCK_SIZE);
+	}
+
+	/**
+	 * Returns a stream over the content which reads cached blocks first and falls back to the
+	 * source, starting at {@code offset}. {@code entry} is the archive entry name or an empty
+	 * string for plain files; {@code lastModified} and {@code size} are those of the file on disk.
+	 */
+	public InputStream open(Path file, String entry, long lastModified, long size, long offset, Source source) throws IOException {
+		if (maxBlocks == 0)
+			return source.open(offset);
+		return new CachedInputStream(new BlockKey(file.toAbsolutePath().normalize(), entry, lastModified, size, 0), offset, source);
+	}
+
+	public long getHits() {
+		return hits.get();
+	}
+
+	public long getMisses() {
+		return misses.get();
+	}
+
+	public long getEvictions() {
+		return evictions.get();
+	}
+
+	public int getBlocks() {
+		synchronized (blocks) {
+			return blocks.size();
+		}
+	}
+
+	private Block get(BlockKey key) {
+		synchronized (blocks) {
+			return blocks.get(key);
+		}
+	}
+
+	private byte[] allocate() {
+		synchronized (blocks) {
+			byte[] data = pool.pollFirst();
+			return data != null ? data : new byte[BLOCK_SIZE];
+		}
+	}
+
+	private void recycle(byte[] data) {
+		synchronized (blocks) {
+			if (pool.size() < maxBlocks)
+				pool.addFirst(data);
+		}
+	}
+
+	private void put(BlockKey key, Block block) {
+		synchronized (blocks) {
+			Block previous = blocks.put(key, block);
+			if (previous != null)
+				release(previous);
+			Iterator<Block> eldest = blocks.values().iterator();
+			while (blocks.size() > maxBlocks) {
+				release(eldest.next());
+				eldest.remove();
+				evictions.incrementAndGet();
+			}
+		}
+	}
+
+	private void release(Block block) {
+		long stamp = block.lock.writeLock();
+		block.released = true;
+		block.lock.unlockWrite(stamp);
+		if (block.data.length == BLOCK_SIZE)
+			recycle(block.data);
+	}
+
+	@Data
+	private static class BlockKey {
+		private final Path file;
+		private final String entry;
+		private final long lastModified;
+		private final long size;
+		private final long offset;
+
+		BlockKey at(long blockOffset) {
+			return new BlockKey(file, entry, lastModified, size, blockOffset);
+		}
+	}
+
+	/**
+	 * The array may be handed to another block after eviction, so readers copy from it under an
+	 * optimistic read of {@code lock}. Eviction marks the block released under the write lock, which
+	 * fails copies started before it; copies started after it see the flag.
+	 */
+	private static class Block {
+		private final byte[] data;
+		private final int length;
+		private final StampedLock lock = new StampedLock();
+		private boolean released;
+
+		Block(byte[] data, int length) {
+			this.data = data;
+			this.length = length;
+		}
+
+		/**
+		 * @return bytes copied, or -1 when the block was evicted meanwhile
+		 */
+		int copy(int from, byte[] target, int offset, int count) {
+			long stamp = lock.tryOptimisticRead();
+			if (stamp == 0 || released)
+				return -1;
+			int copied = Math.min(count, length - from);
+			System.arraycopy(data, from, target, offset, copied);
+			return lock.validate(stamp) ? copied : -1;
+		}
+	}
+
+	private class CachedInputStream extends InputStream {
+		private final BlockKey content;
+		private final Source source;
+		private InputStream sourceInput;
+		private long sourcePosition;
+		private long position;
+		private Block current;
+		private long currentOffset;
+
+		CachedInputStream(BlockKey content, long offset, Source source) {
+			this.content = content;
+			this.position = offset;
+			this.source = source;
+		}
+
+		@Override
+		public int read() throws IOException {
+			byte[] single = new byte[1];
+			return read(single, 0, 1) == -1 ? -1 : single[0] & 0xff;
+		}
+
+		@Override
+		public int read(byte[] buffer, int offset, int length) throws IOException {
+			if (length == 0)
+				return 0;
+			long blockOffset = position - position % BLOCK_SIZE;
+			int from = (int) (position - blockOffset);
+			Block block = current != null && currentOffset == blockOffset ? current : null;
+			if (block == null) {
+				block = get(content.at(blockOffset));
+				if (block != null) {
+					hits.incrementAndGet();
+					current = block;
+					currentOffset = blockOffset;
+				}
+			}
+			int copied = -1;
+			if (block != null) {
+				if (from >= block.length)
+					return -1;
+				copied = block.copy(from, buffer, offset, length);
+				if (copied == -1)
+					current = null;
+			}
+			if (copied == -1)
+				copied = load(content.at(blockOffset), from, buffer, offset, length);
+			if (copied == -1)
+				return -1;
+			position += copied;
+			return copied;
+		}
+
+		/**
+		 * Reads the block from the source and copies from it before it is published, as it may be
+		 * evicted right after. A source already open before the block is skipped forward, since
+		 * opening compressed content again means decompressing it from the start.
+		 */
+		private int load(BlockKey key, int from, byte[] buffer, int offset, int length) throws IOException {
+			misses.incrementAndGet();
+			if (sourceInput != null && sourcePosition < key.getOffset()) {
+				long skipped = IOUtils.skip(sourceInput, key.getOffset() - sourcePosition);
+				sourcePosition += skipped;
+			}
+			if (sourceInput == null || sourcePosition != key.getOffset()) {
+				IOUtils.closeQuietly(sourceInput);
+				sourceInput = source.open(key.getOffset());
+				sourcePosition = key.getOffset();
+			}
+			byte[] data = allocate();
+			int read = IOUtils.read(sourceInput, data);
+			sourcePosition += read;
+			int copied = from < read ? Math.min(length, read - from) : -1;
+			if (copied > 0)
+				System.arraycopy(data, from, buffer, offset, copied);
+			Block block;
+			if (read > 0) {
+				block = new Block(data, read);
+			}
+			else {
+				recycle(data);
+				block = new Block(EMPTY, 0);
+			}
+			put(key, block);
+			current = block;
+			currentOffset = key.getOffset();
+			return copied;
+		}
+
+		@Override
+		public long skip(long n) {
+			long skipped = Math.max(0, n);
+			position += skipped;
+			return skipped;
+		}
+
+		@Override
+		public void close() throws IOException {
+			if (sourceInput != null)
+				sourceInput.close();
+		}
+	}
+}
@@ -0,0 +1,78 @@
+package com.olszewski.michal.service;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Optional;
+
+/**
+ * Boyer-Moore-Horspool substring search working directly on encoded bytes. Case-insensitive
+ * matching folds ASCII letters through a lookup table, so no bytes are copied or decoded.
+ */
+public class ByteMatcher {
+
+	private static final byte[] IDENTITY = new byte[256];
+	private static final byte[] ASCII_LOWER = new byte[256];
+
+	static {
+		for (int i = 0; i < 256; i++) {
+			IDENTITY[i] = (byte) i;
+			ASCII_LOWER[i] = (byte) (i >= 'A' && i <= 'Z' ? i + ('a' - 'A') : i);
+		}
+	}
+
+	private final byte[] pattern;
+	private final byte[] fold;
+	private final int[] shift = new int[256];
+
+	private ByteMatcher(byte[] pattern, boolean ignoreCase) {
+		this.fold = ignoreCase ? ASCII_LOWER : IDENTITY;
+		this.pattern = new byte[pattern.length];
+		for (int i = 0; i < pattern.length; i++) {
+			this.pattern[i] = fold[pattern[i] & 0xFF];
+		}
+		Arrays.fill(shift, Math.max(1, pattern.length));
+		for (int i = 0; i < pattern.length - 1; i++) {
+			shift[this.pattern[i] & 0xFF] = pattern.length - 1 - i;
+		}
+	}
+
+	/**
+	 * Returns a matcher for the term, or empty when the term cannot be matched byte by byte: the
+	 * charset is not ASCII compatible, the term spans lines, or case-insensitive search was
+	 * requested for non-ASCII text.
+	 */
+	public static Optional<ByteMatcher> forTerm(String term, Charset charset, boolean ignoreCase) {
+		if (!isAsciiCompatible(charset) || term.indexOf('\n') >= 0 || term.indexOf('\r') >= 0)
+			return Optional.empty();
+		if (ignoreCase && !StandardCharsets.US_ASCII.newEncoder().canEncode(term))
+			return Optional.empty();
+		return Optional.of(new ByteMatcher(term.getBytes(charset), ignoreCase));
+	}
+
+	static boolean isAsciiCompatible(Charset charset) {
+		return Arrays.equals("a\n".getBytes(charset), new byte[]{'a', '\n'});
+	}
+
+	public int indexOf(ByteBuffer buffer, int from, int to) {
+		int last = pattern.length - 1;
+		if (last < 0)
+			return from <= to ? from : -1;
+		int i = from;
+		while (i + last < to) {
+			int j = last;
+			while (fold[buffer.get(i + j) & 0xFF] == pattern[j]) {
+				if (j == 0)
+					return i;
+				j--;
+			}
+			i += shift[fold[buffer.get(i + last) & 0xFF] & 0xFF];
+		}
+		return -1;
+	}
+
+	public int indexOf(byte[] bytes, int from, int to) {
+		return indexOf(ByteBuffer.wrap(bytes), from, to);
+	}
+}
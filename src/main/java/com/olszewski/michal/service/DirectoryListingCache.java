@@ -0,0 +1,275 @@
+package com.olszewski.michal.service;
+
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.olszewski.michal.domain.FileEntry;
+import lombok.extern.slf4j.Slf4j;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+/**
+ * Keeps directory listings in memory. A listing is dropped as soon as the {@link WatchService}
+ * reports a file created or deleted in its directory, and in any case after
+ * {@code logviewer.listing.ttl} milliseconds, which covers filesystems (e.g. NFS) that do not
+ * report changes. A modified file, which is what an active log produces all the time, does not
+ * drop the listing: only the size and modification time of that file are read again the next
+ * time the listing is served. Invalidations are tracked per directory, so changes in one
+ * directory never keep listings of the others out of the cache.
+ */
+@Component
+@Slf4j
+public class DirectoryListingCache {
+
+	@FunctionalInterface
+	public interface Loader {
+		List<FileEntry> load(Path directory) throws IOException;
+	}
+
+	private static final int MAX_DIRECTORIES = 1000;
+
+	private final long ttl;
+	private final Map<Path, Listing> listings = new LinkedHashMap<Path, Listing>(16, 0.75f, true) {
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<Path, Listing> eldest) {
+			if (size() > MAX_DIRECTORIES) {
+				eldest.getValue().cancel();
+				return true;
+			}
+			return false;
+		}
+	};
+	private final Map<Path, Object> loading = new HashMap<>();
+	private final AtomicLong hits = new AtomicLong();
+	private final AtomicLong misses = new AtomicLong();
+	private WatchService watchService;
+	private Thread watcher;
+
+	public DirectoryListingCache(@Value("${logviewer.listing.ttl:60000}") long ttl) {
+		this.ttl = ttl;
+	}
+
+	/**
+	 * Returns a copy of the cached listing, loading it when missing, invalidated or expired.
+	 */
+	public List<FileEntry> list(Path directory, Loader loader) throws IOException {
+		Path key = directory.toAbsolutePath().normalize();
+		Optional<List<FileEntry>> cached = cached(key);
+		if (cached.isPresent())
+			return cached.get();
+		Object load = new Object();
+		synchronized (listings) {
+			loading.put(key, load);
+		}
+		WatchKey watchKey = watch(key);
+		List<FileEntry> entries = loader.load(directory);
+		synchronized (listings) {
+			if (!loading.remove(key, load))
+				return new ArrayList<>(entries);
+			Listing previous = listings.put(key, new Listing(entries, watchKey));
+			if (previous != null && previous.watchKey != watchKey)
+				previous.cancel();
+		}
+		return new ArrayList<>(entries);
+	}
+
+	/**
+	 * Returns a copy of the listing only if it is cached and still valid. Only the files reported
+	 * as modified since the listing was served last are read again.
+	 */
+	public Optional<List<FileEntry>> getIfPresent(Path directory) {
+		return cached(directory.toAbsolutePath().normalize());
+	}
+
+	/**
+	 * Drops the listing of the directory and makes a listing being loaded for it right now not
+	 * enter the cache. Other directories are not affected.
+	 */
+	public void invalidate(Path directory) {
+		Path key = directory.toAbsolutePath().normalize();
+		synchronized (listings) {
+			loading.remove(key);
+			Listing listing = listings.remove(key);
+			if (listing != null)
+				listing.cancel();
+		}
+	}
+
+	/**
+	 * Marks the file as modified, so that its size and modification time are read again before
+	 * the listing of its directory is served. A file the listing does not know drops the listing.
+	 */
+	void modified(Path directory, Path file) {
+		Path key = directory.toAbsolutePath().normalize();
+		synchronized (listings) {
+			Listing listing = listings.get(key);
+			if (listing != null && listing.contains(file)) {
+				listing.stale.add(file);
+				return;
+			}
+		}
+		invalidate(key);
+	}
+
+	public long getHits() {
+		return hits.get();
+	}
+
+	public long getMisses() {
+		return misses.get();
+	}
+
+	private Optional<List<FileEntry>> cached(Path key) {
+		Listing listing;
+		synchronized (listings) {
+			listing = listings.get(key);
+		}
+		if (listing == null || System.currentTimeMillis() - listing.loadedAt >= ttl) {
+			misses.incrementAndGet();
+			return Optional.empty();
+		}
+		synchronized (listing) {
+			Set<Path> stale;
+			synchronized (listings) {
+				stale = new HashSet<>(listing.stale);
+				listing.stale.clear();
+			}
+			try {
+				listing.refresh(stale);
+			}
+			catch (IOException e) {
+				log.debug("Nie udalo sie odswiezyc atrybutow plikow w katalogu " + key, e);
+				synchronized (listings) {
+					if (listings.get(key) == listing)
+						invalidate(key);
+				}
+				misses.incrementAndGet();
+				return Optional.empty();
+			}
+			hits.incrementAndGet();
+			return Optional.of(new ArrayList<>(listing.entries));
+		}
+	}
+
+	private synchronized WatchKey watch(Path directory) {
+		if (ttl <= 0)
+			return null;
+		try {
+			if (watchService == null) {
+				watchService = FileSystems.getDefault().newWatchService();
+				watcher = new Thread(this::run, "listing-watcher");
+				watcher.setDaemon(true);
+				watcher.start();
+			}
+			return directory.register(watchService, StandardWatchEventKinds.ENTRY_CREATE,
+					StandardWatchEventKinds.ENTRY_DELETE, StandardWatchEventKinds.ENTRY_MODIFY);
+		}
+		catch (IOException | UnsupportedOperationException e) {
+			log.debug("Brak powiadomien o zmianach w katalogu " + directory, e);
+			return null;
+		}
+	}
+
+	private void run() {
+		try {
+			while (!Thread.currentThread().isInterrupted()) {
+				WatchKey key = watchService.take();
+				Path directory = (Path) key.watchable();
+				for (WatchEvent<?> event : key.pollEvents()) {
+					if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+						synchronized (listings) {
+							loading.clear();
+							listings.values().forEach(Listing::cancel);
+							listings.clear();
+						}
+					}
+					else if (event.kind() == StandardWatchEventKinds.ENTRY_MODIFY) {
+						modified(directory, directory.resolve((Path) event.context()));
+					}
+					else {
+						invalidate(directory);
+					}
+				}
+				key.reset();
+			}
+		}
+		catch (InterruptedException | ClosedWatchServiceException e) {
+			log.debug("Obserwowanie katalogow zatrzymane");
+		}
+	}
+
+	@PreDestroy
+	public synchronized void shutdown() throws IOException {
+		if (watcher != null) {
+			watcher.interrupt();
+			watchService.close();
+		}
+	}
+
+	private static class Listing {
+		private final List<FileEntry> entries;
+		private final Set<Path> paths = new HashSet<>();
+		private final WatchKey watchKey;
+		private final long loadedAt = System.currentTimeMillis();
+		// guarded by listings
+		private final Set<Path> stale = new HashSet<>();
+
+		Listing(List<FileEntry> entries, WatchKey watchKey) {
+			this.entries = new ArrayList<>(entries);
+			this.watchKey = watchKey;
+			entries.forEach(entry -> paths.add(key(entry)));
+		}
+
+		boolean contains(Path file) {
+			return paths.contains(file);
+		}
+
+		private static Path key(FileEntry entry) {
+			return entry.getPath() != null ? entry.getPath().toAbsolutePath().normalize() : null;
+		}
+
+		/**
+		 * Replaces the entries of the given files with ones carrying their current size and
+		 * modification time. Called with the listing locked.
+		 */
+		void refresh(Set<Path> files) throws IOException {
+			for (int i = 0; i < entries.size() && !files.isEmpty(); i++) {
+				FileEntry entry = entries.get(i);
+				if (!files.remove(key(entry)))
+					continue;
+				BasicFileAttributes attributes = Files.readAttributes(entry.getPath(), BasicFileAttributes.class);
+				FileEntry refreshed = new FileEntry();
+				refreshed.setFilename(entry.getFilename());
+				refreshed.setFilePath(entry.getPath());
+				refreshed.setFileType(entry.getFileType());
+				refreshed.setModified(attributes.lastModifiedTime().toInstant());
+				refreshed.setSize(attributes.size());
+				entries.set(i, refreshed);
+			}
+		}
+
+		void cancel() {
+			if (watchKey != null)
+				watchKey.cancel();
+		}
+	}
+}
@@ -0,0 +1,54 @@
+package com.olszewski.michal.service;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.util.Objects;
+import java.util.zip.CRC32;
+
+/**
+ * Tells whether a path still names the same file that was cached earlier, so that a log rotated
+ * or rewritten under the same name is not taken for the old one that grew. The file key is
+ * compared where the file system has one; where it has none (Windows) the creation time is
+ * compared instead. In both cases the checksum of the first bytes of the file has to match, like
+ * for the content index.
+ */
+final class FileIdentity {
+
+	static final int HEAD_LENGTH = 4096;
+
+	private final Object fileKey;
+	private final FileTime creationTime;
+	private final int headLength;
+	private final long headChecksum;
+
+	private FileIdentity(Object fileKey, FileTime creationTime, int headLength, long headChecksum) {
+		this.fileKey = fileKey;
+		this.creationTime = creationTime;
+		this.headLength = headLength;
+		this.headChecksum = headChecksum;
+	}
+
+	static FileIdentity of(BasicFileAttributes attributes, FileChannel channel) throws IOException {
+		int headLength = (int) Math.min(HEAD_LENGTH, channel.size());
+		return new FileIdentity(attributes.fileKey(), attributes.fileKey() == null ? attributes.creationTime() : null,
+				headLength, checksum(channel, headLength));
+	}
+
+	boolean matches(BasicFileAttributes attributes, FileChannel channel) throws IOException {
+		if (fileKey != null ? !fileKey.equals(attributes.fileKey()) : !Objects.equals(creationTime, attributes.creationTime()))
+			return false;
+		return channel.size() >= headLength && headChecksum == checksum(channel, headLength);
+	}
+
+	private static long checksum(FileChannel channel, int length) throws IOException {
+		ByteBuffer head = ByteBuffer.allocate(length);
+		while (head.hasRemaining() && channel.read(head, head.position()) > 0) {
+		}
+		CRC32 crc = new CRC32();
+		crc.update(head.array(), 0, head.position());
+		return crc.getValue();
+	}
+}
@@ -2,40 +2,58 @@ package com.olszewski.michal.service;
 
 import static java.nio.file.Files.newDirectoryStream;
 import static java.util.Collections.singletonList;
-import static java.util.stream.Collectors.toList;
 
-import javax.servlet.http.HttpSession;
 import java.io.BufferedInputStream;
-import java.io.ByteArrayInputStream;
-import java.io.FileInputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
 import java.nio.charset.Charset;
 import java.nio.file.DirectoryStream;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.Comparator;
+import java.util.Deque;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
 import java.util.regex.Pattern;
 
 import com.olszewski.michal.domain.FileEntry;
+import com.olszewski.michal.domain.FilePage;
 import com.olszewski.michal.domain.FileType;
+import com.olszewski.michal.domain.SearchHit;
 import com.olszewski.michal.domain.SearchResult;
+import com.olszewski.michal.domain.SearchSummary;
+import com.olszewski.michal.domain.SignatureReport;
 import com.olszewski.michal.domain.SortMethod;
+import com.olszewski.michal.domain.search.SearchFileName;
+import com.olszewski.michal.domain.search.SearchModifiedDate;
 import com.olszewski.michal.domain.search.SearchProperties;
+import com.olszewski.michal.domain.search.SearchTimeRange;
 import com.olszewski.michal.exceptions.FileProcessingException;
+import com.olszewski.michal.index.ContentIndexService;
+import com.olszewski.michal.metrics.LogViewerMetrics;
+import com.olszewski.michal.query.Query;
 import lombok.extern.slf4j.Slf4j;
-import org.apache.commons.compress.archivers.ArchiveEntry;
-import org.apache.commons.compress.archivers.ArchiveException;
-import org.apache.commons.compress.archivers.ArchiveInputStream;
-import org.apache.commons.compress.archivers.ArchiveStreamFactory;
-import org.apache.commons.compress.archivers.sevenz.SevenZArchiveEntry;
-import org.apache.commons.compress.archivers.sevenz.SevenZFile;
+import org.apache.commons.compress.compressors.CompressorException;
+import org.apache.commons.compress.compressors.CompressorStreamFactory;
 import org.apache.commons.io.IOUtils;
-import org.apache.commons.io.input.ReversedLinesFileReader;
+import org.apache.commons.lang3.StringUtils;
 
 import org.springframework.stereotype.Service;
 
@@ -43,54 +61,65 @@ import org.springframework.stereotype.Service;
 @Slf4j
 public class FileService {
 
-	private static final String FILE_NAME = "fileName";
-	private final HttpSession httpSession;
-
-	public FileService(HttpSession httpSession) {
-		this.httpSession = httpSession;
+	private static final int MAX_LINE_OFFSET_INDEXES = 256;
+	private static final int MAX_CONTEXT_LINES = 100;
+	private static final List<String> COMPRESSED_EXTENSIONS = Arrays.asList(".gz", ".bz2", ".xz");
+	private final LineScanner lineScanner = new LineScanner(Charset.defaultCharset());
+	private final BackwardLineReader backwardLineReader = new BackwardLineReader(Charset.defaultCharset());
+	private final MappedFileSearcher mappedFileSearcher = new MappedFileSearcher(Charset.defaultCharset());
+	private final ArchiveCatalog archiveCatalog;
+	private final TailReader tailReader;
+	private final Map<Path, LineOffsetIndex> lineOffsetIndexes = Collections.synchronizedMap(new LinkedHashMap<Path, LineOffsetIndex>(16, 0.75f, true) {
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<Path, LineOffsetIndex> eldest) {
+			return size() > MAX_LINE_OFFSET_INDEXES;
+		}
+	});
+
+	private final SearchExecutor searchExecutor;
+	private final ContentIndexService contentIndexService;
+	private final DirectoryListingCache directoryListingCache;
+	private final FileTreeWalker fileTreeWalker;
+	private final TimestampParser timestampParser;
+	private final LogViewerMetrics metrics;
+	private final BlockCache blockCache;
+
+	public FileService(SearchExecutor searchExecutor, ContentIndexService contentIndexService,
+					   DirectoryListingCache directoryListingCache, FileTreeWalker fileTreeWalker, TimestampParser timestampParser,
+					   LogViewerMetrics metrics, BlockCache blockCache) {
+		this.searchExecutor = searchExecutor;
+		this.contentIndexService = contentIndexService;
+		this.directoryListingCache = directoryListingCache;
+		this.fileTreeWalker = fileTreeWalker;
+		this.timestampParser = timestampParser;
+		this.metrics = metrics;
+		this.blockCache = blockCache;
+		this.archiveCatalog = new ArchiveCatalog(metrics);
+		this.tailReader = new TailReader(Charset.defaultCharset(), TailReader.DEFAULT_MAX_BYTES, TailReader.DEFAULT_MAX_CACHED_CHARS, metrics);
 	}
 
 	public List<FileEntry> getFilesEntryFromPath(Path path) {
 		try {
-			final List<FileEntry> files = new ArrayList<>();
-			switch (getFileType(path)) {
-				case FILE:
-				case DIRECTORY:
-					DirectoryStream<Path> paths = newDirectoryStream(path);
-					paths.forEach(filepath -> files.add(createFileEntry(filepath)));
-					paths.close();
-					break;
-				case ARCHIVE:
-					getFilesFromArchive(path, files);
-					break;
-			}
-
-			return files;
+			return metrics.time("listing", () -> {
+				final List<FileEntry> files = new ArrayList<>();
+				switch (getFileType(path)) {
+					case FILE:
+					case DIRECTORY:
+						files.addAll(directoryListingCache.list(path, this::listDirectory));
+						break;
+					case ARCHIVE:
+						files.addAll(archiveCatalog.listEntries(path));
+						break;
+				}
+				metrics.increment("listing.entries", files.size());
+				return files;
+			});
 		}
-		catch (IOException | ArchiveException e) {
+		catch (IOException e) {
 			throw new FileProcessingException("Blad podczas pobierania getFilesEntryFromPath", e);
 		}
 	}
 
-	private void getFilesFromArchive(Path path, List<FileEntry> files) throws IOException, ArchiveException {
-		if (iz7z(path)) {
-			SevenZFile sevenZFile = new SevenZFile(path.toFile());
-			SevenZArchiveEntry entry;
-			while ((entry = sevenZFile.getNextEntry()) != null) {
-				files.add(createFileEntryFromTarEntry(entry, path));
-			}
-			sevenZFile.close();
-		}
-		else {
-			ArchiveInputStream input = new ArchiveStreamFactory()
-					.createArchiveInputStream(new BufferedInputStream(new FileInputStream(path.toFile())));
-			ArchiveEntry entry;
-			while ((entry = input.getNextEntry()) != null) {
-				files.add(createFileEntryFromTarEntry(entry, path));
-			}
-		}
-	}
-
 	public List<FileEntry> sortFileEntry(List<FileEntry> entries, SortMethod sortMethod, Boolean desc) {
 		if (desc)
 			entries.sort(getComparator(sortMethod));
@@ -112,44 +141,49 @@ public class FileService {
 		throw new IllegalArgumentException("Incorrect method type");
 	}
 
+	private List<FileEntry> listDirectory(Path path) throws IOException {
+		List<FileEntry> files = new ArrayList<>();
+		try (DirectoryStream<Path> paths = newDirectoryStream(path)) {
+			paths.forEach(filepath -> files.add(createFileEntry(filepath)));
+		}
+		return files;
+	}
+
 	public FileEntry createFileEntry(Path path) {
-		final FileEntry fileEntry = new FileEntry();
 		try {
-			fileEntry.setFilename(path.getFileName().toString());
-			fileEntry.setModified(Files.getLastModifiedTime(path).toInstant());
-			fileEntry.setSize(Files.size(path));
-			fileEntry.setFilePath(path);
+			return createFileEntry(path, Files.readAttributes(path, BasicFileAttributes.class));
 		}
 		catch (IOException e) {
 			throw new FileProcessingException("Unable to get file attribute", e);
 		}
-		fileEntry.setFileType(getFileType(path));
-		return fileEntry;
 	}
 
-	private static FileEntry createFileEntryFromTarEntry(ArchiveEntry entry, Path path) {
-		FileEntry fileEntry = new FileEntry();
-		fileEntry.setFilename(entry.getName());
-		fileEntry.setFilePath(Paths.get(path.toString()));
-		fileEntry.setSize(entry.getSize());
-		fileEntry.setFileType(entry.isDirectory() ? FileType.DIRECTORY : FileType.FILE);
-		fileEntry.setModified(entry.getLastModifiedDate().toInstant());
-		fileEntry.setFileType(getFileType(Paths.get(path.toString(), entry.getName())));
+	static FileEntry createFileEntry(Path path, BasicFileAttributes attributes) {
+		final FileEntry fileEntry = new FileEntry();
+		fileEntry.setFilename(path.getFileName().toString());
+		fileEntry.setModified(attributes.lastModifiedTime().toInstant());
+		fileEntry.setSize(attributes.size());
+		fileEntry.setFilePath(path);
+		fileEntry.setFileType(getFileType(path, attributes.isDirectory()));
 		return fileEntry;
 	}
 
-	public Path getParentPath(Path loggingPath) {
-		return loggingPath.getParent();
+	public static FileType getFileType(Path path) {
+		return getFileType(path, path.toFile().isDirectory());
 	}
 
-	private static FileType getFileType(Path path) {
+	static FileType getFileType(Path path, boolean directory) {
 		FileType fileType;
-		if (path.toFile().isDirectory()) {
+		String filename = path.getFileName().toString();
+		if (directory) {
 			fileType = FileType.DIRECTORY;
 		}
-		else if (isZip(path) || iz7z(path)) {
+		else if (filename.endsWith(".zip") || filename.endsWith(".7z")) {
 			fileType = FileType.ARCHIVE;
 		}
+		else if (isCompressedName(filename)) {
+			fileType = FileType.COMPRESSED;
+		}
 		else {
 			fileType = FileType.FILE;
 		}
@@ -165,138 +199,555 @@ public class FileService {
 		return !path.toFile().isDirectory() && path.getFileName().toString().endsWith(".7z");
 	}
 
-
-	public String getFileNameFromSession(String loggingPath) {
-		if (httpSession.getAttribute(FILE_NAME) == null) {
-			httpSession.setAttribute(FILE_NAME, loggingPath);
-		}
-		return (String) httpSession.getAttribute(FILE_NAME);
+	private static boolean isCompressed(Path path) {
+		return isCompressedName(path.getFileName().toString()) && !path.toFile().isDirectory();
 	}
 
-	public void setFileNameInSession(String file) {
-		httpSession.setAttribute(FILE_NAME, file);
+	static boolean isCompressedName(String filename) {
+		return COMPRESSED_EXTENSIONS.stream().anyMatch(filename.toLowerCase()::endsWith);
 	}
 
 
 	public List<String> tailContent(Path path, String filename, Optional<String> term, int lines) throws IOException {
+		return metrics.time("tail", () -> {
+			List<String> content = readTail(path, filename, term, lines);
+			metrics.increment("tail.lines", content.size());
+			return content;
+		});
+	}
+
+	private List<String> readTail(Path path, String filename, Optional<String> term, int lines) throws IOException {
 		if (isZip(path) || iz7z(path))
 			return singletonList("Nie mozna tailować pliku znajdującego się w archiwum");
-		List<String> content = new ArrayList<>();
+		if (isCompressed(Paths.get(path.toString(), filename)))
+			return tailCompressedContent(path, filename, term, lines);
+		return tailReader.tail(Paths.get(path.toString(), filename), lines, termFilter(term));
+	}
 
-		try (ReversedLinesFileReader reader = new ReversedLinesFileReader(Paths.get(path.toString(), filename).toFile(), Charset.defaultCharset())) {
-			int i = 0;
-			String line;
-			while ((line = reader.readLine()) != null && i++ < lines) {
-				content.add(line);
-			}
-			Collections.reverse(content);
-		}
-		term.ifPresent(v ->
-				content.removeIf(c -> !c.toLowerCase().contains(v.toLowerCase()))
-		);
-		return content;
+	private static Predicate<String> termFilter(Optional<String> term) {
+		return term.filter(StringUtils::isNotEmpty)
+				.<Predicate<String>>map(t -> line -> StringUtils.containsIgnoreCase(line, t))
+				.orElse(line -> true);
+	}
 
+	/**
+	 * Compressed streams cannot be read backwards, so the whole stream is decoded and only the last
+	 * matching lines are kept.
+	 */
+	private List<String> tailCompressedContent(Path path, String filename, Optional<String> term, int lines) throws IOException {
+		Deque<String> content = new ArrayDeque<>(lines);
+		Predicate<String> filter = termFilter(term);
+		try (InputStream input = openEntryStream(path, filename)) {
+			lineScanner.scan(input, (lineNumber, offset, line) -> {
+				if (lines <= 0 || !filter.test(line))
+					return true;
+				if (content.size() == lines)
+					content.removeFirst();
+				content.addLast(line);
+				return true;
+			});
+		}
+		return new ArrayList<>(content);
 	}
 
 	public List<String> getFileContent(Path file, String filename, Optional<String> term) throws IOException {
+		return metrics.time("view", () -> {
+			List<String> lines = readFileContent(file, filename, term);
+			metrics.increment("view.lines", lines.size());
+			return lines;
+		});
+	}
+
+	private List<String> readFileContent(Path file, String filename, Optional<String> term) throws IOException {
 		List<String> lines = new ArrayList<>();
-		if (iz7z(file)) {
-			readLinesFrom7zArchive(file, filename, lines);
-		}
-		else if (isZip(file)) {
-			readLinesFromZipArchive(file, filename, lines);
-		}
-		else if (getFileType(file).equals(FileType.DIRECTORY))
-			lines.addAll(IOUtils.readLines(new FileInputStream(Paths.get(file.toString(), filename).toFile()), Charset.defaultCharset()));
-		else
-			lines.addAll(IOUtils.readLines(new FileInputStream(file.toFile()), Charset.defaultCharset()));
-		return term.map(s -> lines.stream().filter(v -> v.toLowerCase().contains(s.toLowerCase())).collect(toList())).orElse(lines);
-	}
-
-	private void readLinesFrom7zArchive(Path file, String filename, List<String> lines) throws IOException {
-		SevenZFile sevenZFile = new SevenZFile(file.toFile());
-		SevenZArchiveEntry entry;
-		while ((entry = sevenZFile.getNextEntry()) != null) {
-			if (entry.getName().equalsIgnoreCase(filename)) {
-				byte[] content = new byte[(int) entry.getSize()];
-				sevenZFile.read(content, 0, content.length);
-				ByteArrayInputStream bais = new ByteArrayInputStream(content);
-				lines.addAll(IOUtils.readLines(bais, Charset.defaultCharset()));
-			}
+		Optional<Path> plainFile = resolvePlainFile(file, filename);
+		Optional<ByteMatcher> matcher = term.flatMap(t -> ByteMatcher.forTerm(t, Charset.defaultCharset(), true));
+		if (plainFile.isPresent() && matcher.isPresent()) {
+			mappedFileSearcher.search(plainFile.get(), matcher.get(), (lineNumber, offset, line) -> lines.add(line));
+			return lines;
 		}
-		sevenZFile.close();
+		Optional<String> lowerTerm = term.map(String::toLowerCase);
+		try (InputStream input = openEntryStream(file, filename)) {
+			lineScanner.scan(input, (lineNumber, offset, line) -> {
+				if (!lowerTerm.isPresent() || line.toLowerCase().contains(lowerTerm.get()))
+					lines.add(line);
+				return true;
+			});
+		}
+		return lines;
 	}
 
-	private void readLinesFromZipArchive(Path file, String filename, List<String> lines) throws IOException {
-		FileInputStream fileInputStream = new FileInputStream(file.toFile());
-		try (ArchiveInputStream input = new ArchiveStreamFactory()
-				.createArchiveInputStream(new BufferedInputStream(fileInputStream))) {
-			ArchiveEntry entry;
-			while ((entry = input.getNextEntry()) != null) {
-				if (entry.getName().equalsIgnoreCase(filename))
-					lines.addAll(IOUtils.readLines(input, Charset.defaultCharset()));
+	/**
+	 * Returns {@code pageSize} lines starting at line {@code fromLine} (counted from 1). Plain files
+	 * are positioned with a sparse line offset index, archive entries are read from the beginning.
+	 * Both are read through the {@link BlockCache}, so pages of hot logs come from memory.
+	 */
+	public FilePage getFilePage(Path file, String filename, long fromLine, int pageSize) throws IOException {
+		FilePage page = new FilePage();
+		page.setFirstLine(Math.max(1, fromLine));
+		page.setNextLine(page.getFirstLine());
+		page.setLast(true);
+		LineScanner.LineHandler collector = (lineNumber, offset, line) -> {
+			if (lineNumber < page.getFirstLine())
+				return true;
+			if (page.getLines().size() == pageSize) {
+				page.setLast(false);
+				return false;
+			}
+			page.getLines().add(line);
+			page.setNextLine(lineNumber + 1);
+			return true;
+		};
+		Optional<Path> plainFile = resolvePlainFile(file, filename);
+		if (plainFile.isPresent()) {
+			long[] start;
+			try (FileChannel channel = FileChannel.open(plainFile.get(), StandardOpenOption.READ)) {
+				start = lineOffsetIndex(plainFile.get(), channel).locate(page.getFirstLine());
+			}
+			try (InputStream input = openEntryStream(file, filename, start[1])) {
+				lineScanner.scan(input, start[0], start[1], collector);
 			}
 		}
-		catch (ArchiveException e) {
-			throw new FileProcessingException(e.getMessage());
+		else {
+			try (InputStream input = openEntryStream(file, filename)) {
+				lineScanner.scan(input, collector);
+			}
 		}
-		finally {
-			fileInputStream.close();
+		return page;
+	}
+
+	private LineOffsetIndex lineOffsetIndex(Path file, FileChannel channel) throws IOException {
+		BasicFileAttributes attributes = Files.readAttributes(file, BasicFileAttributes.class);
+		long size = channel.size();
+		LineOffsetIndex index = lineOffsetIndexes.get(file);
+		if (index == null || !index.isValidFor(attributes, channel, size)) {
+			index = new LineOffsetIndex(FileIdentity.of(attributes, channel));
+			lineOffsetIndexes.put(file, index);
 		}
+		index.update(channel, size, attributes.lastModifiedTime().toMillis());
+		return index;
 	}
 
-	public List<FileEntry> getAllFileEntries(Path path, SearchProperties searchProperties) throws IOException {
-		List<FileEntry> result = new ArrayList<>();
-		List<FileEntry> files = getFilesEntryFromPath(path);
-		Optional.ofNullable(searchProperties.getSearchModifiedDate()).
-				ifPresent(x ->
-						files.removeIf(
-								v -> v.getModified().isBefore(x.getInstantDateFrom()) ||
-										v.getModified().isAfter(x.getInstantDateTo())));
-		Optional.ofNullable(searchProperties.getSearchFileName()).ifPresent(x -> {
-			if (x.getUseRegex()) {
-				Pattern r = Pattern.compile(x.getContent());
-				files.removeIf(v -> !r.matcher(v.getFilename()).matches());
+	/**
+	 * Passes lines stamped within the range to the handler; lines without a timestamp (e.g. stack
+	 * traces) belong to the last stamped line above them. Plain files are read from the sample
+	 * found by binary search in their {@link TimestampIndex}, and reading stops at the first line
+	 * stamped after the range.
+	 *
+	 * @return the number of bytes read, up to the start of the last line read
+	 */
+	private long searchTimeRange(FileEntry entry, Optional<Path> plainFile, SearchTimeRange timeRange,
+								 LineScanner.LineHandler handler) throws IOException {
+		LocalDateTime from = timeRange.getLocalTimeFrom();
+		LocalDateTime to = timeRange.getLocalTimeTo();
+		LocalDateTime[] current = new LocalDateTime[1];
+		long[] span = {-1, 0};
+		LineScanner.LineHandler rangeHandler = (lineNumber, offset, line) -> {
+			if (span[0] < 0)
+				span[0] = offset;
+			span[1] = offset;
+			timestampParser.parse(line).ifPresent(timestamp -> current[0] = timestamp);
+			if (current[0] == null || current[0].isBefore(from))
+				return true;
+			return !current[0].isAfter(to) && handler.onLine(lineNumber, offset, line);
+		};
+		if (plainFile.isPresent()) {
+			try (FileChannel channel = FileChannel.open(plainFile.get(), StandardOpenOption.READ)) {
+				TimestampIndex timestamps = lineOffsetIndex(plainFile.get(), channel).timestamps();
+				timestamps.update(channel, timestampParser);
+				long[] start = timestamps.locate(from);
+				channel.position(start[1]);
+				lineScanner.scan(Channels.newInputStream(channel), start[0], start[1], rangeHandler);
 			}
-			else {
-				files.removeIf(v -> !v.getFilename().toLowerCase().contains(x.getContent().toLowerCase()));
+		}
+		else {
+			try (InputStream input = openEntryStream(entry.getPath(), entry.getFilename())) {
+				lineScanner.scan(input, rangeHandler);
 			}
+		}
+		return span[0] < 0 ? 0 : span[1] - span[0];
+	}
+
+	static boolean isArchive(Path path) {
+		return isZip(path) || iz7z(path);
+	}
+
+	/**
+	 * Finds an entry of a zip or 7z archive by its name, compared case-insensitively.
+	 */
+	Optional<FileEntry> findArchiveEntry(Path archive, String filename) throws IOException {
+		return archiveCatalog.listEntries(archive).stream()
+				.filter(entry -> entry.getFilename().equalsIgnoreCase(filename))
+				.findFirst();
+	}
+
+	/**
+	 * Opens the stored bytes of an archive entry straight from the archive: gzip, bzip2 and xz
+	 * content is not decompressed and nothing goes through the {@link BlockCache}.
+	 */
+	InputStream openArchiveEntry(Path archive, String filename) throws IOException {
+		return archiveCatalog.openEntry(archive, filename);
+	}
+
+	/**
+	 * Entity tag of everything served from the given file: it changes whenever the file, or the
+	 * archive holding it, changes size or modification time, so clients can revalidate cheaply.
+	 */
+	public String getEntityTag(Path file, String filename) throws IOException {
+		Path target = isArchive(file) || !getFileType(file).equals(FileType.DIRECTORY) ? file : file.resolve(filename);
+		BasicFileAttributes attributes = Files.readAttributes(target, BasicFileAttributes.class);
+		return entityTag(attributes.size(), attributes.lastModifiedTime().toMillis());
+	}
+
+	static String entityTag(long size, long lastModified) {
+		return "\"" + Long.toHexString(size) + "-" + Long.toHexString(lastModified) + "\"";
+	}
+
+	public static Optional<Path> resolvePlainFile(Path file, String filename) {
+		if (iz7z(file) || isZip(file))
+			return Optional.empty();
+		Path target = getFileType(file).equals(FileType.DIRECTORY) ? Paths.get(file.toString(), filename) : file;
+		return isCompressedName(target.getFileName().toString()) ? Optional.empty() : Optional.of(target);
+	}
+
+	/**
+	 * Opens the content of a plain file or of a single archive entry as a stream. Zip entries are
+	 * opened through the cached central directory. Gzip, bzip2 and xz content is decompressed on
+	 * the fly, with the format recognised by its magic bytes. Blocks of the (decompressed) content
+	 * are shared with other readers through the {@link BlockCache}.
+	 */
+	InputStream openEntryStream(Path file, String filename) throws IOException {
+		return openEntryStream(file, filename, 0);
+	}
+
+	private InputStream openEntryStream(Path file, String filename, long offset) throws IOException {
+		if (iz7z(file) || isZip(file)) {
+			BasicFileAttributes attributes = Files.readAttributes(file, BasicFileAttributes.class);
+			return blockCache.open(file, filename, attributes.lastModifiedTime().toMillis(), attributes.size(), offset, position -> {
+				InputStream input = archiveCatalog.openEntry(file, filename);
+				return skip(isCompressedName(filename) ? decompress(input) : input, position);
+			});
+		}
+		Path target = getFileType(file).equals(FileType.DIRECTORY) ? Paths.get(file.toString(), filename) : file;
+		BasicFileAttributes attributes = Files.readAttributes(target, BasicFileAttributes.class);
+		long lastModified = attributes.lastModifiedTime().toMillis();
+		if (isCompressedName(target.getFileName().toString()))
+			return blockCache.open(target, "", lastModified, attributes.size(), offset, position -> skip(decompress(Files.newInputStream(target)), position));
+		return blockCache.open(target, "", lastModified, attributes.size(), offset, position -> {
+			FileChannel channel = FileChannel.open(target, StandardOpenOption.READ);
+			channel.position(position);
+			return Channels.newInputStream(channel);
+		});
+	}
+
+	private static InputStream skip(InputStream input, long offset) throws IOException {
+		try {
+			IOUtils.skip(input, offset);
+			return input;
+		}
+		catch (IOException e) {
+			input.close();
+			throw e;
+		}
+	}
+
+	private static InputStream decompress(InputStream input) throws IOException {
+		try {
+			return new CompressorStreamFactory(true).createCompressorInputStream(new BufferedInputStream(input, LineScanner.DEFAULT_BUFFER_SIZE));
+		}
+		catch (CompressorException e) {
+			input.close();
+			throw new FileProcessingException("Nieobslugiwany format kompresji", e);
+		}
+	}
+
+	public List<FileEntry> getAllFileEntries(Path path, SearchProperties searchProperties) throws IOException {
+		return metrics.time("walk", () -> fileTreeWalker.walk(path, searchTree(searchProperties), searchProperties.getRecursive()));
+	}
 
+	/**
+	 * Streams matching entries to the consumer as the walk finds them, without collecting them.
+	 * The consumer is called concurrently and in no particular order.
+	 */
+	public void walkFileEntries(Path path, SearchProperties searchProperties, Consumer<FileEntry> consumer) throws IOException {
+		metrics.time("walk", () -> {
+			fileTreeWalker.walk(path, searchTree(searchProperties), searchProperties.getRecursive(), consumer);
+			return null;
 		});
+	}
+
+	private FileTreeWalker.Tree searchTree(SearchProperties searchProperties) {
+		Predicate<String> nameFilter = fileNameFilter(searchProperties.getSearchFileName());
+		Predicate<FileEntry> dateFilter = modifiedDateFilter(searchProperties.getSearchModifiedDate());
+		return new FileTreeWalker.Tree() {
+			@Override
+			public List<FileEntry> children(Path parent) throws IOException {
+				return listFiltered(parent, nameFilter, dateFilter);
+			}
+
+			@Override
+			public Optional<Path> subtree(Path parent, FileEntry child) {
+				boolean archiveEntry = parent.equals(child.getPath());
+				if (archiveEntry || child.getFileType() == FileType.FILE || child.getFileType() == FileType.COMPRESSED)
+					return Optional.empty();
+				return Optional.of(Paths.get(parent.toString(), child.getFilename()));
+			}
+		};
+	}
 
-		for (FileEntry entry : files) {
-			result.add(entry);
-			if (searchProperties.getRecursive() && !getFileType(Paths.get(path.toString(), entry.getFilename())).equals(FileType.FILE))
-				result.addAll(getAllFileEntries(Paths.get(path.toString(), entry.getFilename()), searchProperties));
+	/**
+	 * Lists a directory or an archive applying the search filters. The file name filter is checked
+	 * before an entry is stat'ed, so excluded files cost no filesystem calls beyond the listing.
+	 */
+	private List<FileEntry> listFiltered(Path parent, Predicate<String> nameFilter, Predicate<FileEntry> dateFilter) throws IOException {
+		List<FileEntry> result = new ArrayList<>();
+		if (getFileType(parent) == FileType.ARCHIVE) {
+			List<FileEntry> entries = archiveCatalog.listEntries(parent);
+			for (FileEntry entry : entries) {
+				if (nameFilter.test(entry.getFilename()) && dateFilter.test(entry))
+					result.add(entry);
+			}
+			metrics.increment("walk.archive-entries-skipped", entries.size() - result.size());
+			metrics.increment("walk.files-visited", result.size());
+			return result;
 		}
+		Optional<List<FileEntry>> cached = directoryListingCache.getIfPresent(parent);
+		if (cached.isPresent()) {
+			for (FileEntry entry : cached.get()) {
+				if (nameFilter.test(entry.getFilename()) && dateFilter.test(entry))
+					result.add(entry);
+			}
+			metrics.increment("walk.files-visited", result.size());
+			return result;
+		}
+		try (DirectoryStream<Path> paths = newDirectoryStream(parent)) {
+			for (Path filepath : paths) {
+				if (!nameFilter.test(filepath.getFileName().toString()))
+					continue;
+				FileEntry entry = createFileEntry(filepath, Files.readAttributes(filepath, BasicFileAttributes.class));
+				if (dateFilter.test(entry))
+					result.add(entry);
+			}
+		}
+		metrics.increment("walk.files-visited", result.size());
 		return result;
 	}
 
+	private static Predicate<String> fileNameFilter(SearchFileName searchFileName) {
+		if (searchFileName == null || searchFileName.getContent() == null)
+			return name -> true;
+		if (Boolean.TRUE.equals(searchFileName.getUseRegex())) {
+			Pattern pattern = Pattern.compile(searchFileName.getContent());
+			return name -> pattern.matcher(name).matches();
+		}
+		String content = searchFileName.getContent();
+		return name -> StringUtils.containsIgnoreCase(name, content);
+	}
+
+	private static Predicate<FileEntry> modifiedDateFilter(SearchModifiedDate searchModifiedDate) {
+		if (searchModifiedDate == null)
+			return entry -> true;
+		Instant from = searchModifiedDate.getInstantDateFrom();
+		Instant to = searchModifiedDate.getInstantDateTo();
+		return entry -> !entry.getModified().isBefore(from) && !entry.getModified().isAfter(to);
+	}
+
 	public List<SearchResult> getLinesFromFiles(Path path, SearchProperties searchProperties) throws IOException {
-		List<SearchResult> searchResults = new ArrayList<>();
-		for (FileEntry fileEntry : getAllFileEntries(path, searchProperties)) {
-			Optional<SearchResult> searchResult = searchContentInEntry(searchProperties.getFileContent(), fileEntry);
-			searchResult.ifPresent(searchResults::add);
+		Query query = compileQuery(searchProperties);
+		Optional<ByteMatcher> matcher = literalMatcher(query);
+		SearchProgress progress = new SearchProgress();
+		return metrics.time("search", () -> searchExecutor.searchInOrder(getAllFileEntries(path, searchProperties),
+				entry -> searchContentInEntry(query, matcher, searchProperties, entry, new HitBudget(Long.MAX_VALUE), progress)));
+	}
+
+	/**
+	 * Passes search results to the sink in file order, each as soon as its file is searched. At
+	 * most {@code maxMatches} hits are returned in total. The files searched in parallel draw from
+	 * one {@link HitBudget}, so no more hits than that are ever held, even for very common terms;
+	 * once a hit had to be dropped, files not started yet are skipped and the summary is marked
+	 * as truncated. The returned summary also carries the request's search statistics.
+	 */
+	public SearchSummary streamLinesFromFiles(Path path, SearchProperties searchProperties, long maxMatches,
+											  SearchExecutor.ResultSink<SearchResult> sink) throws IOException {
+		return streamLinesFromEntries(getAllFileEntries(path, searchProperties), searchProperties, maxMatches, sink, new SearchProgress());
+	}
+
+	/**
+	 * Like {@link #streamLinesFromFiles} for entries already listed by {@link #getAllFileEntries}.
+	 * The progress is updated as files are searched; once it is cancelled, the remaining files
+	 * are skipped and the summary is marked as truncated.
+	 */
+	public SearchSummary streamLinesFromEntries(List<FileEntry> entries, SearchProperties searchProperties, long maxMatches,
+												SearchExecutor.ResultSink<SearchResult> sink, SearchProgress progress) throws IOException {
+		Query query = compileQuery(searchProperties);
+		Optional<ByteMatcher> matcher = literalMatcher(query);
+		HitBudget budget = new HitBudget(maxMatches);
+		AtomicLong delivered = new AtomicLong();
+		SearchSummary summary = new SearchSummary();
+		long start = System.nanoTime();
+		progress.plan(entries);
+		metrics.time("search", () -> {
+			searchExecutor.searchInOrder(entries,
+				entry -> progress.isCancelled() || budget.isExhausted() ? Optional.empty()
+						: searchContentInEntry(query, matcher, searchProperties, entry, budget, progress),
+				result -> {
+					delivered.addAndGet(result.getHits().size());
+					summary.setFiles(summary.getFiles() + 1);
+					if (!sink.accept(result) || progress.isCancelled())
+						summary.setTruncated(true);
+					return !summary.isTruncated();
+				});
+			return null;
+		});
+		summary.setTruncated(summary.isTruncated() || progress.isCancelled() || budget.isExhausted());
+		summary.setMatches(delivered.get());
+		summary.setFilesSearched(progress.getFilesSearched());
+		summary.setBytesRead(progress.getBytesRead());
+		summary.setLinesTested(progress.getLinesTested());
+		summary.setElapsedMs(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+		return summary;
+	}
+
+	/**
+	 * Groups the matching lines into signatures (see {@link SignatureNormalizer}) instead of
+	 * returning them, and reports the {@code top} most frequent ones. Each file is counted on its
+	 * own and merged into the request's {@link SignatureCounter}, so memory does not depend on the
+	 * number of matches. The order of files does not matter here, so files are searched as the
+	 * walk finds them and the tree is never listed as a whole.
+	 */
+	public SignatureReport clusterLinesFromFiles(Path path, SearchProperties searchProperties, int top) throws IOException {
+		Query query = compileQuery(searchProperties);
+		Optional<ByteMatcher> matcher = literalMatcher(query);
+		SearchProgress progress = new SearchProgress();
+		SignatureCounter signatures = new SignatureCounter(SignatureCounter.DEFAULT_CAPACITY);
+		metrics.time("signatures", () -> {
+			searchExecutor.searchAsFound(consumer -> walkFileEntries(path, searchProperties, consumer), entry -> {
+				if (!entry.getFileType().equals(FileType.FILE) && !entry.getFileType().equals(FileType.COMPRESSED))
+					return;
+				SignatureCounter fileSignatures = new SignatureCounter(SignatureCounter.DEFAULT_CAPACITY);
+				String file = Paths.get(entry.getPath().toString(), entry.getFilename()).toString();
+				forEachMatchingLine(query, matcher, searchProperties.getSearchTimeRange(), entry, progress, (lineNumber, offset, line) -> {
+					fileSignatures.add(line, file, lineNumber, timestampParser.parse(line).orElse(null));
+					return true;
+				});
+				signatures.merge(fileSignatures);
+			});
+			return null;
+		});
+		SignatureReport report = new SignatureReport();
+		report.setMatches(signatures.getMatches());
+		report.setFilesSearched(progress.getFilesSearched());
+		report.setApproximate(signatures.isApproximate());
+		report.setSignatures(signatures.top(Math.max(0, Math.min(top, SignatureCounter.DEFAULT_CAPACITY))));
+		return report;
+	}
+
+	/**
+	 * Passes every line of the entry matching the query to the handler, using the same shortcuts
+	 * as the search when no context is needed.
+	 */
+	private void forEachMatchingLine(Query query, Optional<ByteMatcher> matcher, SearchTimeRange timeRange, FileEntry entry,
+									 SearchProgress progress, LineScanner.LineHandler handler) throws IOException {
+		long[] lines = new long[2];
+		LineScanner.LineHandler queryHandler = (lineNumber, offset, line) -> {
+			lines[0]++;
+			if (!query.matches(line))
+				return true;
+			lines[1]++;
+			return handler.onLine(lineNumber, offset, line);
+		};
+		Optional<Path> plainFile = resolvePlainFile(entry.getPath(), entry.getFilename());
+		Optional<String> indexedLiteral = query.isIgnoreCase() ? Optional.empty() : query.getRequiredLiteral();
+		long bytesRead = 0;
+		if (timeRange != null && timeRange.isPresent()) {
+			bytesRead = searchTimeRange(entry, plainFile, timeRange, queryHandler);
+		}
+		else if (plainFile.isPresent() && indexedLiteral.isPresent() && contentIndexService.search(plainFile.get(), indexedLiteral.get(), queryHandler)) {
+			log.debug("Plik {} przeszukany z uzyciem indeksu", plainFile.get());
+		}
+		else if (plainFile.isPresent() && matcher.isPresent()) {
+			mappedFileSearcher.search(plainFile.get(), matcher.get(), queryHandler);
+			bytesRead = entry.getSize();
+		}
+		else {
+			try (InputStream input = openEntryStream(entry.getPath(), entry.getFilename())) {
+				lineScanner.scan(input, queryHandler);
+			}
+			bytesRead = entry.getSize();
 		}
-		return searchResults;
+		progress.record(metrics, bytesRead, lines[0], lines[1]);
 	}
 
-	private Optional<SearchResult> searchContentInEntry(String term, FileEntry entry) throws IOException {
-		if (entry.getFileType().equals(FileType.FILE)) {
-			List<String> resultPerFile = new ArrayList<>();
-			List<String> fileContent = getFileContent(entry.getPath(), entry.getFilename(), Optional.empty());
-			for (int i = 0; i < fileContent.size(); i++) {
-				if (fileContent.get(i).contains(term)) {
-					resultPerFile.add(String.format("\tline %d: %s", i + 1, fileContent.get(i)));
+	private static Query compileQuery(SearchProperties searchProperties) {
+		return Query.compile(searchProperties.getFileContent(), Boolean.TRUE.equals(searchProperties.getIgnoreCase()));
+	}
+
+	private static Optional<ByteMatcher> literalMatcher(Query query) {
+		return query.getRequiredLiteral().flatMap(literal -> ByteMatcher.forTerm(literal, Charset.defaultCharset(), query.isIgnoreCase()));
+	}
+
+	/**
+	 * Plain files are searched through the index or the mapped file search on the query's required
+	 * literal when possible, and the {@link HitExpander} reads only the surroundings of the lines
+	 * they find to fold stack traces and add context lines. Other entries are scanned whole by the
+	 * {@link SearchHitCollector}. Either way a hit has the same shape.
+	 */
+	private Optional<SearchResult> searchContentInEntry(Query query, Optional<ByteMatcher> matcher, SearchProperties searchProperties,
+														FileEntry entry, HitBudget budget, SearchProgress progress) throws IOException {
+		if (entry.getFileType().equals(FileType.FILE) || entry.getFileType().equals(FileType.COMPRESSED))
+			return metrics.time("search.file", () -> searchLinesInEntry(query, matcher, searchProperties, entry, budget, progress));
+		return Optional.empty();
+	}
+
+	private Optional<SearchResult> searchLinesInEntry(Query query, Optional<ByteMatcher> matcher, SearchProperties searchProperties,
+													  FileEntry entry, HitBudget budget, SearchProgress progress) throws IOException {
+		int before = contextLines(searchProperties.getLinesBefore());
+		int after = contextLines(searchProperties.getLinesAfter());
+		SearchTimeRange timeRange = searchProperties.getSearchTimeRange();
+		Optional<Path> plainFile = resolvePlainFile(entry.getPath(), entry.getFilename());
+		Optional<String> indexedLiteral = query.isIgnoreCase() ? Optional.empty() : query.getRequiredLiteral();
+		long bytesRead;
+		List<SearchHit> hits;
+		if ((timeRange == null || !timeRange.isPresent()) && plainFile.isPresent() && (indexedLiteral.isPresent() || matcher.isPresent())) {
+			try (FileChannel channel = FileChannel.open(plainFile.get(), StandardOpenOption.READ)) {
+				HitExpander expander = new HitExpander(channel, query::matches, before, after, budget, lineScanner, backwardLineReader);
+				boolean indexed = indexedLiteral.isPresent() && contentIndexService.search(plainFile.get(), indexedLiteral.get(), expander);
+				if (indexed || matcher.isPresent()) {
+					if (indexed)
+						log.debug("Plik {} przeszukany z uzyciem indeksu", plainFile.get());
+					else
+						mappedFileSearcher.search(plainFile.get(), matcher.get(), expander);
+					hits = expander.finish();
+					progress.record(metrics, indexed ? expander.getBytesRead() : entry.getSize(), expander.getLinesTested(), hits.size());
+					return result(entry, hits);
 				}
 			}
-			if (!resultPerFile.isEmpty()) {
-				SearchResult searchResult = new SearchResult();
-				searchResult.setEntry(entry);
-				searchResult.setResult(resultPerFile);
-				return Optional.of(searchResult);
+		}
+		SearchHitCollector collector = new SearchHitCollector(query::matches, before, after, budget);
+		if (timeRange != null && timeRange.isPresent()) {
+			bytesRead = searchTimeRange(entry, plainFile, timeRange, collector);
+		}
+		else {
+			try (InputStream input = openEntryStream(entry.getPath(), entry.getFilename())) {
+				lineScanner.scan(input, collector);
 			}
+			bytesRead = entry.getSize();
 		}
-		return Optional.empty();
+		hits = collector.finish();
+		progress.record(metrics, bytesRead, collector.getLinesTested(), hits.size());
+		return result(entry, hits);
+	}
+
+	private static Optional<SearchResult> result(FileEntry entry, List<SearchHit> hits) {
+		if (hits.isEmpty())
+			return Optional.empty();
+		SearchResult searchResult = new SearchResult();
+		searchResult.setEntry(entry);
+		searchResult.setHits(hits);
+		return Optional.of(searchResult);
+	}
+
+	private static int contextLines(Integer lines) {
+		return lines == null ? 0 : Math.max(0, Math.min(lines, MAX_CONTEXT_LINES));
 	}
 }
@@ -0,0 +1,144 @@
+package com.olszewski.michal.service;
+
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.RecursiveTask;
+import java.util.function.Consumer;
+
+import com.olszewski.michal.domain.FileEntry;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+/**
+ * Walks a tree of directories and archives on a fork-join pool, one task per directory, down to
+ * {@code logviewer.walk.max-depth} levels. Filtering is left to the {@link Tree} implementation,
+ * so excluded entries and subtrees can be skipped before they are stat'ed.
+ */
+@Component
+public class FileTreeWalker {
+
+	public interface Tree {
+		/**
+		 * Entries of the directory or archive that pass the search filters.
+		 */
+		List<FileEntry> children(Path parent) throws IOException;
+
+		/**
+		 * Path to descend into for the given child, or empty when it is a leaf.
+		 */
+		Optional<Path> subtree(Path parent, FileEntry child);
+	}
+
+	private final ForkJoinPool pool;
+	private final int maxDepth;
+
+	public FileTreeWalker(@Value("${logviewer.walk.threads:0}") int threads,
+						  @Value("${logviewer.walk.max-depth:32}") int maxDepth) {
+		this.pool = new ForkJoinPool(threads > 0 ? threads : Runtime.getRuntime().availableProcessors());
+		this.maxDepth = maxDepth;
+	}
+
+	/**
+	 * Returns all entries in pre-order: every entry is followed by the entries of its subtree.
+	 */
+	public List<FileEntry> walk(Path root, Tree tree, boolean recursive) throws IOException {
+		try {
+			return pool.invoke(new OrderedWalk(root, tree, recursive ? maxDepth : 0));
+		}
+		catch (UncheckedIOException e) {
+			throw e.getCause();
+		}
+	}
+
+	/**
+	 * Passes entries to the consumer as soon as they are found, in no particular order. The
+	 * consumer is called from several threads at once.
+	 */
+	public void walk(Path root, Tree tree, boolean recursive, Consumer<FileEntry> consumer) throws IOException {
+		try {
+			pool.invoke(new StreamingWalk(root, tree, recursive ? maxDepth : 0, consumer));
+		}
+		catch (UncheckedIOException e) {
+			throw e.getCause();
+		}
+	}
+
+	@PreDestroy
+	public void shutdown() {
+		pool.shutdownNow();
+	}
+
+	private static List<FileEntry> children(Tree tree, Path parent) {
+		try {
+			return tree.children(parent);
+		}
+		catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	private static class OrderedWalk extends RecursiveTask<List<FileEntry>> {
+		private final Path directory;
+		private final Tree tree;
+		private final int depth;
+
+		OrderedWalk(Path directory, Tree tree, int depth) {
+			this.directory = directory;
+			this.tree = tree;
+			this.depth = depth;
+		}
+
+		@Override
+		protected List<FileEntry> compute() {
+			List<FileEntry> children = children(tree, directory);
+			List<OrderedWalk> subtrees = new ArrayList<>(children.size());
+			for (FileEntry child : children) {
+				Optional<Path> subtree = depth > 0 ? tree.subtree(directory, child) : Optional.empty();
+				OrderedWalk task = subtree.map(path -> new OrderedWalk(path, tree, depth - 1)).orElse(null);
+				if (task != null)
+					task.fork();
+				subtrees.add(task);
+			}
+			List<FileEntry> result = new ArrayList<>();
+			for (int i = 0; i < children.size(); i++) {
+				result.add(children.get(i));
+				if (subtrees.get(i) != null)
+					result.addAll(subtrees.get(i).join());
+			}
+			return result;
+		}
+	}
+
+	private static class StreamingWalk extends RecursiveAction {
+		private final Path directory;
+		private final Tree tree;
+		private final int depth;
+		private final Consumer<FileEntry> consumer;
+
+		StreamingWalk(Path directory, Tree tree, int depth, Consumer<FileEntry> consumer) {
+			this.directory = directory;
+			this.tree = tree;
+			this.depth = depth;
+			this.consumer = consumer;
+		}
+
+		@Override
+		protected void compute() {
+			List<StreamingWalk> subtrees = new ArrayList<>();
+			for (FileEntry child : children(tree, directory)) {
+				consumer.accept(child);
+				if (depth > 0)
+					tree.subtree(directory, child).ifPresent(path -> subtrees.add(new StreamingWalk(path, tree, depth - 1, consumer)));
+			}
+			invokeAll(subtrees);
+		}
+	}
+}
@@ -0,0 +1,38 @@
+package com.olszewski.michal.service;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Hits a search may still collect, shared by the tasks searching its files in parallel, so the
+ * hits held in memory never exceed the search's limit however many files are in flight. A hit
+ * refused for lack of budget marks the budget exhausted, which is how a search knows that its
+ * results are incomplete.
+ */
+class HitBudget {
+
+	private final AtomicLong remaining;
+	private volatile boolean exhausted;
+
+	HitBudget(long hits) {
+		this.remaining = new AtomicLong(hits);
+	}
+
+	/**
+	 * Takes one hit from the budget.
+	 *
+	 * @return false when none is left; the hit has to be dropped
+	 */
+	boolean take() {
+		if (remaining.getAndUpdate(left -> left > 0 ? left - 1 : left) > 0)
+			return true;
+		exhausted = true;
+		return false;
+	}
+
+	/**
+	 * True once a hit was dropped.
+	 */
+	boolean isExhausted() {
+		return exhausted;
+	}
+}
@@ -0,0 +1,160 @@
+package com.olszewski.michal.service;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Predicate;
+
+import com.olszewski.michal.domain.SearchHit;
+import org.apache.commons.io.input.CloseShieldInputStream;
+import org.apache.commons.io.input.CountingInputStream;
+
+/**
+ * Completes the matching lines that the content index or the mapped file search finds in a plain
+ * file into the hits a scan of the whole file with {@link SearchHitCollector} would give, reading
+ * only the surroundings of every hit. From a matching line it walks back over the continuation
+ * lines to the start of the event and over the requested context lines before it, then scans
+ * forward from there until the event and the context lines after it are complete. Matching lines
+ * inside a part already scanned are skipped, and hits close to each other are scanned in one go.
+ * <p>
+ * The lines must be passed in file order. Walking back stops after {@link #MAX_WALK_LINES}
+ * continuation lines, so in a file of nothing but indented lines an event may start later than
+ * in a full scan.
+ */
+class HitExpander implements LineScanner.LineHandler {
+
+	static final int MAX_WALK_LINES = 10 * SearchHitCollector.MAX_CONTINUATION_LINES;
+
+	private final FileChannel channel;
+	private final Predicate<String> query;
+	private final int before;
+	private final SearchHitCollector collector;
+	private final LineScanner lineScanner;
+	private final BackwardLineReader backwardLineReader;
+	private long scannedTo;
+	private long scannedLineNumber = 1;
+	private long bytesRead;
+	private long linesTested;
+	private boolean stopped;
+
+	HitExpander(FileChannel channel, Predicate<String> query, int before, int after, HitBudget budget,
+				LineScanner lineScanner, BackwardLineReader backwardLineReader) {
+		this.channel = channel;
+		this.query = query;
+		this.before = before;
+		this.collector = new SearchHitCollector(query, before, after, budget);
+		this.lineScanner = lineScanner;
+		this.backwardLineReader = backwardLineReader;
+	}
+
+	/**
+	 * Takes a line found by the fast path.
+	 */
+	@Override
+	public boolean onLine(long lineNumber, long offset, String line) throws IOException {
+		if (stopped)
+			return false;
+		if (offset < scannedTo)
+			return true;
+		linesTested++;
+		if (!query.test(line))
+			return true;
+		long[] start = start(lineNumber, offset, line);
+		if (start[1] > scannedTo)
+			collector.skip();
+		scan(start[0], start[1], offset);
+		return !stopped;
+	}
+
+	List<SearchHit> finish() {
+		return collector.finish();
+	}
+
+	long getBytesRead() {
+		return bytesRead;
+	}
+
+	long getLinesTested() {
+		return linesTested + collector.getLinesTested();
+	}
+
+	/**
+	 * Finds the line the scan for a hit has to start from, as {line number, offset}: the start of
+	 * its event, or of the part of a long event the collector would cut it into, minus the context
+	 * lines before it. Never earlier than the end of the part already scanned.
+	 */
+	private long[] start(long lineNumber, long offset, String line) throws IOException {
+		List<long[]> walked = new ArrayList<>();
+		walked.add(new long[]{lineNumber, offset});
+		long[] eventStart = {SearchHitCollector.isContinuation(line) ? -1 : lineNumber};
+		boolean[] reachedScanned = {offset <= scannedTo};
+		if (!reachedScanned[0] && (eventStart[0] < 0 || before > 0)) {
+			bytesRead += backwardLineReader.read(channel, offset, Long.MAX_VALUE, (lineOffset, previous) -> {
+				if (lineOffset < scannedTo) {
+					reachedScanned[0] = true;
+					return false;
+				}
+				long number = lineNumber - walked.size();
+				walked.add(new long[]{number, lineOffset});
+				reachedScanned[0] = lineOffset == scannedTo;
+				if (eventStart[0] < 0) {
+					if (SearchHitCollector.isContinuation(previous))
+						return walked.size() <= MAX_WALK_LINES && !reachedScanned[0];
+					eventStart[0] = number;
+				}
+				return eventStart[0] - number < before && !reachedScanned[0];
+			});
+		}
+		long[] earliest = walked.get(walked.size() - 1);
+		if (eventStart[0] < 0 && earliest[1] == 0)
+			eventStart[0] = earliest[0];
+		if (eventStart[0] < 0)
+			return reachedScanned[0] ? scanned() : earliest;
+		long part = SearchHitCollector.MAX_CONTINUATION_LINES + 1;
+		long partStart = eventStart[0] + (lineNumber - eventStart[0]) / part * part;
+		long from = Math.max(1, partStart > eventStart[0] ? partStart - part : partStart - before);
+		if (from < earliest[0])
+			return reachedScanned[0] ? scanned() : earliest;
+		long[] target = walked.get((int) (lineNumber - from));
+		return target[1] <= scannedTo ? scanned() : target;
+	}
+
+	private long[] scanned() {
+		return new long[]{scannedLineNumber, scannedTo};
+	}
+
+	/**
+	 * Feeds the collector from the given line until the line at {@code hitOffset} has been fed and
+	 * the collector is settled, or until the end of the file.
+	 */
+	private void scan(long lineNumber, long offset, long hitOffset) throws IOException {
+		long[] stop = {-1, -1};
+		channel.position(offset);
+		CountingInputStream input = new CountingInputStream(new CloseShieldInputStream(Channels.newInputStream(channel)));
+		try (InputStream closing = input) {
+			lineScanner.scan(closing, lineNumber, offset, (number, lineOffset, line) -> {
+				if (lineOffset > hitOffset && collector.isSettled()) {
+					stop[0] = number;
+					stop[1] = lineOffset;
+					return false;
+				}
+				if (!collector.onLine(number, lineOffset, line)) {
+					stopped = true;
+					return false;
+				}
+				return true;
+			});
+		}
+		bytesRead += input.getByteCount();
+		if (stop[1] >= 0) {
+			scannedLineNumber = stop[0];
+			scannedTo = stop[1];
+		}
+		else {
+			scannedTo = Long.MAX_VALUE;
+		}
+	}
+}
@@ -0,0 +1,100 @@
+package com.olszewski.michal.service;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Arrays;
+
+/**
+ * Sparse index of line start offsets in a plain file: the byte offset of every
+ * {@code sampleInterval}-th line is remembered, so any line can be reached with one seek and at
+ * most {@code sampleInterval} skipped lines. The index is extended when the file grows.
+ */
+class LineOffsetIndex {
+
+	static final int DEFAULT_SAMPLE_INTERVAL = 1000;
+
+	private final FileIdentity identity;
+	private final int sampleInterval;
+	private long[] samples = new long[16];
+	private int sampleCount = 1;
+	private long scannedSize;
+	private long lineCount;
+	private long lastModified;
+	private TimestampIndex timestamps;
+
+	LineOffsetIndex(FileIdentity identity) {
+		this(identity, DEFAULT_SAMPLE_INTERVAL);
+	}
+
+	LineOffsetIndex(FileIdentity identity, int sampleInterval) {
+		this.identity = identity;
+		this.sampleInterval = sampleInterval;
+	}
+
+	/**
+	 * @return false when the index cannot describe the file any more (replaced or truncated)
+	 */
+	boolean isValidFor(BasicFileAttributes attributes, FileChannel channel, long size) throws IOException {
+		return size >= scannedSize && identity.matches(attributes, channel);
+	}
+
+	synchronized void update(FileChannel channel, long size, long modified) throws IOException {
+		if (size == scannedSize && modified == lastModified)
+			return;
+		ByteBuffer buffer = ByteBuffer.allocate(LineScanner.DEFAULT_BUFFER_SIZE);
+		long position = scannedSize;
+		while (position < size) {
+			buffer.clear();
+			int read = channel.read(buffer, position);
+			if (read <= 0)
+				break;
+			for (int i = 0; i < read; i++) {
+				if (buffer.get(i) == '\n') {
+					lineCount++;
+					scannedSize = position + i + 1;
+					if (lineCount % sampleInterval == 0)
+						addSample(scannedSize);
+				}
+			}
+			position += read;
+		}
+		lastModified = modified;
+	}
+
+	private void addSample(long offset) {
+		if (sampleCount == samples.length)
+			samples = Arrays.copyOf(samples, samples.length * 2);
+		samples[sampleCount++] = offset;
+	}
+
+	/**
+	 * Returns the nearest indexed line at or before the requested one as {line number, offset}.
+	 */
+	synchronized long[] locate(long line) {
+		long sample = Math.max(0, Math.min((line - 1) / sampleInterval, sampleCount - 1));
+		return sample((int) sample);
+	}
+
+	/**
+	 * Returns the i-th indexed line as {line number, offset}.
+	 */
+	synchronized long[] sample(int i) {
+		return new long[]{(long) i * sampleInterval + 1, samples[i]};
+	}
+
+	synchronized int getSampleCount() {
+		return sampleCount;
+	}
+
+	synchronized TimestampIndex timestamps() {
+		if (timestamps == null)
+			timestamps = new TimestampIndex(this);
+		return timestamps;
+	}
+
+	synchronized long getLineCount() {
+		return lineCount;
+	}
+}
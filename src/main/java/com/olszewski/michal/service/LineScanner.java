@@ -0,0 +1,97 @@
+package com.olszewski.michal.service;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+
+/**
+ * Reads a stream line by line in a single pass using fixed-size byte buffers.
+ * Lines longer than {@code maxLineLength} bytes are truncated, so memory use does not depend
+ * on the size of the scanned file.
+ */
+public class LineScanner {
+
+	public static final int DEFAULT_BUFFER_SIZE = 64 * 1024;
+	public static final int DEFAULT_MAX_LINE_LENGTH = 64 * 1024;
+
+	@FunctionalInterface
+	public interface LineHandler {
+		/**
+		 * @return false to stop scanning
+		 */
+		boolean onLine(long lineNumber, long offset, String line) throws IOException;
+	}
+
+	private final Charset charset;
+	private final int bufferSize;
+	private final int maxLineLength;
+
+	public LineScanner(Charset charset) {
+		this(charset, DEFAULT_BUFFER_SIZE, DEFAULT_MAX_LINE_LENGTH);
+	}
+
+	public LineScanner(Charset charset, int bufferSize, int maxLineLength) {
+		this.charset = charset;
+		this.bufferSize = bufferSize;
+		this.maxLineLength = maxLineLength;
+	}
+
+	/**
+	 * Calls the handler for every line of the stream. Line numbers start at 1, offsets are byte
+	 * positions of the line start relative to the beginning of the stream.
+	 *
+	 * @return number of lines passed to the handler
+	 */
+	public long scan(InputStream input, LineHandler handler) throws IOException {
+		return scan(input, 1, 0, handler);
+	}
+
+	public long scan(InputStream input, long firstLineNumber, long firstOffset, LineHandler handler) throws IOException {
+		byte[] buffer = new byte[bufferSize];
+		byte[] line = new byte[Math.min(maxLineLength, 1024)];
+		int lineLength = 0;
+		long lineNumber = firstLineNumber;
+		long lineOffset = firstOffset;
+		long position = firstOffset;
+		int read;
+		while ((read = input.read(buffer)) != -1) {
+			int start = 0;
+			for (int i = 0; i < read; i++) {
+				if (buffer[i] == '\n') {
+					line = append(line, lineLength, buffer, start, i - start);
+					lineLength = Math.min(lineLength + i - start, maxLineLength);
+					if (!handler.onLine(lineNumber++, lineOffset, decode(line, lineLength))) {
+						return lineNumber - firstLineNumber;
+					}
+					lineLength = 0;
+					start = i + 1;
+					lineOffset = position + start;
+				}
+			}
+			line = append(line, lineLength, buffer, start, read - start);
+			lineLength = Math.min(lineLength + read - start, maxLineLength);
+			position += read;
+		}
+		if (position > lineOffset) {
+			handler.onLine(lineNumber++, lineOffset, decode(line, lineLength));
+		}
+		return lineNumber - firstLineNumber;
+	}
+
+	private byte[] append(byte[] line, int lineLength, byte[] source, int from, int length) {
+		int toCopy = Math.min(length, maxLineLength - lineLength);
+		if (toCopy <= 0)
+			return line;
+		if (lineLength + toCopy > line.length)
+			line = Arrays.copyOf(line, Math.min(maxLineLength, Math.max(line.length * 2, lineLength + toCopy)));
+		System.arraycopy(source, from, line, lineLength, toCopy);
+		return line;
+	}
+
+	private String decode(byte[] line, int length) {
+		if (length > 0 && line[length - 1] == '\r')
+			length--;
+		return new String(line, 0, length, charset);
+	}
+}
@@ -0,0 +1,290 @@
+package com.olszewski.michal.service;
+
+import javax.annotation.PreDestroy;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.Queue;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.lang3.StringUtils;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Component;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+/**
+ * Pushes lines appended to log files to Server-Sent Events subscribers. Every file is read by a
+ * single reader that remembers its position, so the cost does not grow with the number of
+ * viewers. A {@link WatchService} wakes the reader up as soon as a file changes; a periodic check
+ * covers filesystems which do not report changes. Truncated or replaced (rotated) files are read
+ * again from the beginning. Events are queued per subscriber and sent by a separate pool, so a
+ * slow client only delays itself; a client falling {@code MAX_PENDING_EVENTS} events behind is
+ * disconnected.
+ */
+@Component
+@Slf4j
+public class LiveTailService {
+
+	private static final long POLL_INTERVAL_MS = 1000;
+	static final int MAX_PENDING_EVENTS = 1000;
+
+	private final Charset charset = Charset.defaultCharset();
+	private final Map<Path, TailedFile> files = new ConcurrentHashMap<>();
+	private final Map<Path, WatchKey> directories = new ConcurrentHashMap<>();
+	private final long emitterTimeout;
+	private final ExecutorService sender = Executors.newCachedThreadPool(runnable -> {
+		Thread thread = new Thread(runnable, "live-tail-sender");
+		thread.setDaemon(true);
+		return thread;
+	});
+	private WatchService watchService;
+	private Thread worker;
+
+	public LiveTailService(@Value("${logviewer.tail.timeout:1800000}") long emitterTimeout) {
+		this.emitterTimeout = emitterTimeout;
+	}
+
+	public synchronized SseEmitter subscribe(Path file, Optional<String> term) throws IOException {
+		Path path = file.toAbsolutePath().normalize();
+		startWorker();
+		TailedFile tailedFile = files.get(path);
+		if (tailedFile == null) {
+			tailedFile = new TailedFile(path);
+			files.put(path, tailedFile);
+			Path directory = path.getParent();
+			if (!directories.containsKey(directory)) {
+				directories.put(directory, directory.register(watchService,
+						StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY, StandardWatchEventKinds.ENTRY_DELETE));
+			}
+		}
+		SseEmitter emitter = createEmitter(emitterTimeout);
+		Subscriber subscriber = new Subscriber(emitter, term.filter(StringUtils::isNotEmpty));
+		TailedFile target = tailedFile;
+		emitter.onCompletion(() -> unsubscribe(target, subscriber));
+		emitter.onTimeout(() -> unsubscribe(target, subscriber));
+		tailedFile.subscribers.add(subscriber);
+		return emitter;
+	}
+
+	SseEmitter createEmitter(long timeout) {
+		return new SseEmitter(timeout);
+	}
+
+	private synchronized void unsubscribe(TailedFile tailedFile, Subscriber subscriber) {
+		tailedFile.subscribers.remove(subscriber);
+		if (tailedFile.subscribers.isEmpty() && files.remove(tailedFile.path, tailedFile)) {
+			Path directory = tailedFile.path.getParent();
+			if (files.keySet().stream().noneMatch(p -> directory.equals(p.getParent()))) {
+				WatchKey key = directories.remove(directory);
+				if (key != null)
+					key.cancel();
+			}
+		}
+	}
+
+	private void startWorker() throws IOException {
+		if (worker != null && worker.isAlive())
+			return;
+		if (watchService == null)
+			watchService = FileSystems.getDefault().newWatchService();
+		worker = new Thread(this::run, "live-tail");
+		worker.setDaemon(true);
+		worker.start();
+	}
+
+	private void run() {
+		try {
+			while (!Thread.currentThread().isInterrupted()) {
+				WatchKey key = watchService.poll(POLL_INTERVAL_MS, TimeUnit.MILLISECONDS);
+				if (key != null) {
+					key.pollEvents();
+					key.reset();
+				}
+				files.values().forEach(TailedFile::poll);
+			}
+		}
+		catch (InterruptedException | ClosedWatchServiceException e) {
+			log.debug("Live tail zatrzymany");
+		}
+	}
+
+	@PreDestroy
+	public synchronized void shutdown() throws IOException {
+		if (worker != null) {
+			worker.interrupt();
+			watchService.close();
+		}
+		files.values().forEach(f -> f.subscribers.forEach(s -> s.emitter.complete()));
+		files.clear();
+		sender.shutdownNow();
+	}
+
+	private static class Subscriber {
+		private final SseEmitter emitter;
+		private final Optional<String> term;
+		private final Queue<SseEmitter.SseEventBuilder> pending = new ArrayBlockingQueue<>(MAX_PENDING_EVENTS);
+		private final AtomicBoolean draining = new AtomicBoolean();
+
+		Subscriber(SseEmitter emitter, Optional<String> term) {
+			this.emitter = emitter;
+			this.term = term;
+		}
+
+		boolean accepts(String line) {
+			return !term.isPresent() || StringUtils.containsIgnoreCase(line, term.get());
+		}
+	}
+
+	private class TailedFile {
+		private final Path path;
+		private final List<Subscriber> subscribers = new CopyOnWriteArrayList<>();
+		private final ByteArrayOutputStream partialLine = new ByteArrayOutputStream();
+		private final ByteBuffer buffer = ByteBuffer.allocate(LineScanner.DEFAULT_BUFFER_SIZE);
+		private Object fileKey;
+		private long position;
+
+		TailedFile(Path path) throws IOException {
+			this.path = path;
+			if (Files.exists(path)) {
+				BasicFileAttributes attributes = Files.readAttributes(path, BasicFileAttributes.class);
+				this.fileKey = attributes.fileKey();
+				this.position = attributes.size();
+			}
+		}
+
+		void poll() {
+			try {
+				if (!Files.exists(path))
+					return;
+				BasicFileAttributes attributes = Files.readAttributes(path, BasicFileAttributes.class);
+				if (!Objects.equals(fileKey, attributes.fileKey()) || attributes.size() < position) {
+					fileKey = attributes.fileKey();
+					position = 0;
+					partialLine.reset();
+					sendEvent("reset", "Plik zostal podmieniony lub obciety");
+				}
+				if (attributes.size() > position)
+					readAppended();
+			}
+			catch (IOException | RuntimeException e) {
+				log.warn("Blad podczas sledzenia pliku " + path, e);
+			}
+		}
+
+		private void readAppended() throws IOException {
+			try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+				int read;
+				buffer.clear();
+				while ((read = channel.read(buffer, position)) > 0) {
+					List<String> lines = new ArrayList<>();
+					int start = 0;
+					for (int i = 0; i < read; i++) {
+						if (buffer.get(i) == '\n') {
+							appendPartial(start, i - start);
+							lines.add(decodePartial());
+							start = i + 1;
+						}
+					}
+					appendPartial(start, read - start);
+					position += read;
+					buffer.clear();
+					publish(lines);
+				}
+			}
+		}
+
+		private void appendPartial(int from, int length) {
+			int toCopy = Math.min(length, LineScanner.DEFAULT_MAX_LINE_LENGTH - partialLine.size());
+			if (toCopy > 0)
+				partialLine.write(buffer.array(), from, toCopy);
+		}
+
+		private String decodePartial() {
+			String line = new String(partialLine.toByteArray(), charset);
+			partialLine.reset();
+			return StringUtils.removeEnd(line, "\r");
+		}
+
+		private void publish(List<String> lines) {
+			if (lines.isEmpty())
+				return;
+			for (Subscriber subscriber : subscribers) {
+				List<String> accepted = new ArrayList<>();
+				for (String line : lines) {
+					if (subscriber.accepts(line))
+						accepted.add(line);
+				}
+				if (!accepted.isEmpty())
+					send(subscriber, SseEmitter.event().name("lines").data(accepted, MediaType.APPLICATION_JSON));
+			}
+		}
+
+		private void sendEvent(String name, String data) {
+			subscribers.forEach(subscriber -> send(subscriber, SseEmitter.event().name(name).data(data)));
+		}
+
+		private void send(Subscriber subscriber, SseEmitter.SseEventBuilder event) {
+			if (!subscriber.pending.offer(event)) {
+				disconnect(subscriber, new IOException("Klient nie nadaza z odbiorem zdarzen"));
+				return;
+			}
+			if (subscriber.draining.compareAndSet(false, true))
+				sender.execute(() -> drain(subscriber));
+		}
+
+		/**
+		 * Sends the subscriber's queued events in order; at most one drain runs per subscriber.
+		 */
+		private void drain(Subscriber subscriber) {
+			SseEmitter.SseEventBuilder event;
+			while ((event = subscriber.pending.poll()) != null) {
+				try {
+					subscriber.emitter.send(event);
+				}
+				catch (IOException | RuntimeException e) {
+					disconnect(subscriber, e);
+					return;
+				}
+			}
+			subscriber.draining.set(false);
+			if (!subscriber.pending.isEmpty() && subscriber.draining.compareAndSet(false, true))
+				sender.execute(() -> drain(subscriber));
+		}
+
+		private void disconnect(Subscriber subscriber, Throwable cause) {
+			subscriber.pending.clear();
+			unsubscribe(this, subscriber);
+			try {
+				subscriber.emitter.completeWithError(cause);
+			}
+			catch (RuntimeException e) {
+				log.debug("Blad podczas zamykania subskrypcji " + path, e);
+			}
+		}
+	}
+}
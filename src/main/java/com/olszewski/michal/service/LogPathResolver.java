@@ -0,0 +1,88 @@
+package com.olszewski.michal.service;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.InvalidPathException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+import com.olszewski.michal.domain.FileType;
+import com.olszewski.michal.exceptions.InvalidLogPathException;
+import org.apache.commons.lang3.StringUtils;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+/**
+ * Turns the location carried by a request, relative to {@code logging.path}, into a filesystem
+ * path. Nothing about the current location is kept between requests, so any instance can serve
+ * any request. Paths that leave the root, either with {@code ..} or through a symbolic link, are
+ * rejected.
+ */
+@Component
+public class LogPathResolver {
+
+	private final Path root;
+
+	public LogPathResolver(@Value("${logging.path}") String loggingPath) {
+		this.root = Paths.get(loggingPath).toAbsolutePath().normalize();
+	}
+
+	public Path getRoot() {
+		return root;
+	}
+
+	/**
+	 * Resolves a directory, archive or file given relative to the root; an empty path is the root.
+	 */
+	public Path resolve(String relativePath) {
+		if (StringUtils.isBlank(relativePath))
+			return root;
+		try {
+			return confine(root.resolve(StringUtils.removeStart(relativePath.replace('\\', '/'), "/")));
+		}
+		catch (InvalidPathException e) {
+			throw new InvalidLogPathException("Niepoprawna sciezka " + relativePath, e);
+		}
+	}
+
+	/**
+	 * Resolves the location of a file viewed by name, as the services expect it: a directory or
+	 * archive, with the name checked not to lead out of the root when the location is a directory.
+	 */
+	public Path resolve(String relativePath, String filename) {
+		Path location = resolve(relativePath);
+		if (FileService.getFileType(location).equals(FileType.DIRECTORY)) {
+			try {
+				confine(location.resolve(filename));
+			}
+			catch (InvalidPathException e) {
+				throw new InvalidLogPathException("Niepoprawna nazwa pliku " + filename, e);
+			}
+		}
+		return location;
+	}
+
+	/**
+	 * Path of the given location relative to the root, with {@code /} as separator.
+	 */
+	public String relativize(Path path) {
+		return root.relativize(path.toAbsolutePath().normalize()).toString().replace('\\', '/');
+	}
+
+	private Path confine(Path path) {
+		Path normalized = path.toAbsolutePath().normalize();
+		if (!normalized.startsWith(root))
+			throw new InvalidLogPathException("Sciezka poza katalogiem logow: " + path);
+		if (Files.exists(normalized)) {
+			try {
+				if (!normalized.toRealPath().startsWith(root.toRealPath()))
+					throw new InvalidLogPathException("Sciezka poza katalogiem logow: " + path);
+			}
+			catch (IOException e) {
+				throw new InvalidLogPathException("Niepoprawna sciezka " + path, e);
+			}
+		}
+		return normalized;
+	}
+}
@@ -0,0 +1,185 @@
+package com.olszewski.michal.service;
+
+import java.io.IOException;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Searches uncompressed files by memory-mapping them and running a {@link ByteMatcher} over the
+ * mapped bytes. Only lines containing a match are decoded into Strings.
+ * <p>
+ * A mapping normally lives until the buffer is garbage collected, and on Windows a mapped file
+ * can be neither deleted nor renamed, which would block the rotation of the logs being searched.
+ * Every window is therefore unmapped as soon as it has been searched; nothing refers to its
+ * bytes afterwards, since matching lines are copied into Strings.
+ */
+@Slf4j
+public class MappedFileSearcher {
+
+	@FunctionalInterface
+	private interface Unmapper {
+		void unmap(ByteBuffer buffer) throws ReflectiveOperationException;
+	}
+
+	private static final Unmapper UNMAPPER = unmapper();
+
+	private static final long DEFAULT_WINDOW_SIZE = 256L * 1024 * 1024;
+	private static final long MAX_WINDOW_SIZE = Integer.MAX_VALUE;
+
+	private final Charset charset;
+	private final long windowSize;
+	private final int maxLineLength;
+
+	public MappedFileSearcher(Charset charset) {
+		this(charset, DEFAULT_WINDOW_SIZE, LineScanner.DEFAULT_MAX_LINE_LENGTH);
+	}
+
+	public MappedFileSearcher(Charset charset, long windowSize, int maxLineLength) {
+		this.charset = charset;
+		this.windowSize = windowSize;
+		this.maxLineLength = maxLineLength;
+	}
+
+	/**
+	 * Calls the handler for every line containing a match, in file order.
+	 */
+	public void search(Path file, ByteMatcher matcher, LineScanner.LineHandler handler) throws IOException {
+		try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+			long size = channel.size();
+			long windowStart = 0;
+			long lineNumber = 1;
+			while (windowStart < size) {
+				long length = Math.min(windowSize, size - windowStart);
+				MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, windowStart, length);
+				try {
+					int limit = (int) length;
+					while (windowStart + length < size) {
+						int lastNewLine = lastIndexOfNewLine(buffer, limit - 1, 0);
+						if (lastNewLine >= 0) {
+							limit = lastNewLine + 1;
+							break;
+						}
+						if (length >= MAX_WINDOW_SIZE)
+							break;
+						length = Math.min(Math.min(length * 2, MAX_WINDOW_SIZE), size - windowStart);
+						unmap(buffer);
+						buffer = null;
+						buffer = channel.map(FileChannel.MapMode.READ_ONLY, windowStart, length);
+						limit = (int) length;
+					}
+					int position = 0;
+					int counted = 0;
+					while (position < limit) {
+						int match = matcher.indexOf(buffer, position, limit);
+						if (match < 0)
+							break;
+						int previousNewLine = lastIndexOfNewLine(buffer, match - 1, position);
+						int lineStart = previousNewLine >= 0 ? previousNewLine + 1 : position;
+						int lineEnd = indexOfNewLine(buffer, match, limit);
+						lineNumber += countNewLines(buffer, counted, lineStart);
+						counted = lineStart;
+						if (!handler.onLine(lineNumber, windowStart + lineStart, decode(buffer, lineStart, lineEnd)))
+							return;
+						position = lineEnd + 1;
+					}
+					lineNumber += countNewLines(buffer, counted, limit);
+					windowStart += limit;
+				}
+				finally {
+					if (buffer != null)
+						unmap(buffer);
+				}
+			}
+		}
+	}
+
+	static boolean canUnmap() {
+		return UNMAPPER != null;
+	}
+
+	private static void unmap(MappedByteBuffer buffer) {
+		if (UNMAPPER == null)
+			return;
+		try {
+			UNMAPPER.unmap(buffer);
+		}
+		catch (ReflectiveOperationException | RuntimeException e) {
+			log.debug("Nie udalo sie zwolnic mapowania pliku", e);
+		}
+	}
+
+	/**
+	 * Finds the JDK's way to release a mapping right away: {@code Unsafe.invokeCleaner} since
+	 * Java 9, the buffer's {@code Cleaner} before. Without either, mappings are released by the
+	 * garbage collector as before.
+	 */
+	private static Unmapper unmapper() {
+		try {
+			Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+			Method invokeCleaner = unsafeClass.getMethod("invokeCleaner", ByteBuffer.class);
+			Field theUnsafe = unsafeClass.getDeclaredField("theUnsafe");
+			theUnsafe.setAccessible(true);
+			Object unsafe = theUnsafe.get(null);
+			return buffer -> invokeCleaner.invoke(unsafe, buffer);
+		}
+		catch (ReflectiveOperationException | RuntimeException e) {
+			// Java 8
+		}
+		try {
+			Method cleaner = Class.forName("sun.nio.ch.DirectBuffer").getMethod("cleaner");
+			Method clean = Class.forName("sun.misc.Cleaner").getMethod("clean");
+			return buffer -> {
+				Object bufferCleaner = cleaner.invoke(buffer);
+				if (bufferCleaner != null)
+					clean.invoke(bufferCleaner);
+			};
+		}
+		catch (ReflectiveOperationException | RuntimeException e) {
+			log.warn("Mapowane pliki beda zwalniane dopiero przez garbage collector", e);
+			return null;
+		}
+	}
+
+	private String decode(MappedByteBuffer buffer, int from, int to) {
+		if (to > from && buffer.get(to - 1) == '\r')
+			to--;
+		byte[] line = new byte[Math.min(to - from, maxLineLength)];
+		for (int i = 0; i < line.length; i++) {
+			line[i] = buffer.get(from + i);
+		}
+		return new String(line, charset);
+	}
+
+	private static int indexOfNewLine(MappedByteBuffer buffer, int from, int to) {
+		for (int i = from; i < to; i++) {
+			if (buffer.get(i) == '\n')
+				return i;
+		}
+		return to;
+	}
+
+	private static int lastIndexOfNewLine(MappedByteBuffer buffer, int from, int lowerBound) {
+		for (int i = from; i >= lowerBound; i--) {
+			if (buffer.get(i) == '\n')
+				return i;
+		}
+		return -1;
+	}
+
+	private static long countNewLines(MappedByteBuffer buffer, int from, int to) {
+		long count = 0;
+		for (int i = from; i < to; i++) {
+			if (buffer.get(i) == '\n')
+				count++;
+		}
+		return count;
+	}
+}
@@ -0,0 +1,227 @@
+package com.olszewski.michal.service;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.Locale;
+import java.util.Optional;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.zip.GZIPOutputStream;
+
+import com.olszewski.michal.domain.FileEntry;
+import com.olszewski.michal.domain.FileType;
+import com.olszewski.michal.exceptions.FileNotFoundException;
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.io.input.BoundedInputStream;
+import org.apache.commons.lang3.StringUtils;
+
+import org.springframework.http.HttpHeaders;
+import org.springframework.stereotype.Component;
+
+/**
+ * Sends the raw bytes of a file or archive entry, without decoding it into lines. Plain files are
+ * handed to the container's sendfile support when it has one and otherwise copied with
+ * {@link FileChannel#transferTo}; archive entries are streamed from the archive. A single
+ * {@code Range} is honoured, so downloads can be resumed, and text sent whole is gzip-encoded
+ * on the fly for clients accepting it.
+ */
+@Component
+public class RawContentService {
+
+	private static final String SENDFILE_SUPPORT = "org.apache.tomcat.sendfile.support";
+	private static final String SENDFILE_FILENAME = "org.apache.tomcat.sendfile.filename";
+	private static final String SENDFILE_START = "org.apache.tomcat.sendfile.start";
+	private static final String SENDFILE_END = "org.apache.tomcat.sendfile.end";
+	private static final Pattern RANGE = Pattern.compile("bytes=(\\d*)-(\\d*)");
+
+	private final FileService fileService;
+
+	public RawContentService(FileService fileService) {
+		this.fileService = fileService;
+	}
+
+	public void send(Path path, String filename, boolean download, HttpServletRequest request, HttpServletResponse response) throws IOException {
+		if (FileService.isArchive(path)) {
+			FileEntry entry = fileService.findArchiveEntry(path, filename)
+					.orElseThrow(() -> new FileNotFoundException("Nie znaleziono pliku " + filename + " w archiwum " + path));
+			Optional<long[]> range = prepare(entry.getFilename(), entry.getSize(), entry.getModified().toEpochMilli(),
+					fileService.getEntityTag(path, filename), download, request, response);
+			if (range == null)
+				return;
+			try (InputStream input = fileService.openArchiveEntry(path, entry.getFilename())) {
+				if (range.isPresent()) {
+					IOUtils.skipFully(input, range.get()[0]);
+					IOUtils.copyLarge(new BoundedInputStream(input, range.get()[1] - range.get()[0] + 1), response.getOutputStream());
+				}
+				else {
+					copy(input, response);
+				}
+			}
+			return;
+		}
+		Path file = FileService.getFileType(path).equals(FileType.DIRECTORY) ? path.resolve(filename) : path;
+		if (!Files.isRegularFile(file))
+			throw new FileNotFoundException("Nie znaleziono pliku " + file);
+		BasicFileAttributes attributes = Files.readAttributes(file, BasicFileAttributes.class);
+		String name = file.getFileName().toString();
+		long lastModified = attributes.lastModifiedTime().toMillis();
+		Optional<long[]> range = prepare(name, attributes.size(), lastModified, FileService.entityTag(attributes.size(), lastModified),
+				download, request, response);
+		if (range == null)
+			return;
+		long start = range.map(r -> r[0]).orElse(0L);
+		long end = range.map(r -> r[1] + 1).orElse(attributes.size());
+		if (!range.isPresent() && isEncoded(response)) {
+			try (InputStream input = Files.newInputStream(file)) {
+				copy(input, response);
+			}
+		}
+		else if (Boolean.TRUE.equals(request.getAttribute(SENDFILE_SUPPORT))) {
+			request.setAttribute(SENDFILE_FILENAME, file.toAbsolutePath().toString());
+			request.setAttribute(SENDFILE_START, start);
+			request.setAttribute(SENDFILE_END, end);
+		}
+		else {
+			transfer(file, start, end, response.getOutputStream());
+		}
+	}
+
+	/**
+	 * Sets the status and headers of the response.
+	 *
+	 * @return the requested byte range (inclusive), empty for the whole content, or null when the
+	 * client's copy is still current or the range cannot be satisfied, and the response is already
+	 * complete
+	 */
+	private Optional<long[]> prepare(String name, long size, long lastModified, String etag, boolean download,
+									 HttpServletRequest request, HttpServletResponse response) throws IOException {
+		response.setHeader(HttpHeaders.ACCEPT_RANGES, "bytes");
+		response.setDateHeader(HttpHeaders.LAST_MODIFIED, lastModified);
+		response.setHeader(HttpHeaders.ETAG, etag);
+		String gzipEtag = StringUtils.removeEnd(etag, "\"") + "-gzip\"";
+		String ifNoneMatch = request.getHeader(HttpHeaders.IF_NONE_MATCH);
+		if (ifNoneMatch != null && (ifNoneMatch.trim().equals("*") || ifNoneMatch.contains(etag) || ifNoneMatch.contains(gzipEtag))) {
+			response.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+			return null;
+		}
+		response.setContentType(isText(name) ? "text/plain;charset=" + Charset.defaultCharset().name() : "application/octet-stream");
+		response.setHeader(HttpHeaders.CONTENT_DISPOSITION, (download ? "attachment" : "inline")
+				+ "; filename=\"" + StringUtils.substringAfterLast("/" + name, "/").replace("\"", "") + "\"");
+		boolean current = isCurrent(request.getHeader(HttpHeaders.IF_RANGE), etag, lastModified);
+		Optional<long[]> range = size < 0 || !current ? Optional.empty() : parseRange(request.getHeader(HttpHeaders.RANGE), size);
+		if (range == null) {
+			response.setHeader(HttpHeaders.CONTENT_RANGE, "bytes */" + size);
+			response.sendError(HttpServletResponse.SC_REQUESTED_RANGE_NOT_SATISFIABLE);
+			return null;
+		}
+		if (range.isPresent()) {
+			response.setStatus(HttpServletResponse.SC_PARTIAL_CONTENT);
+			response.setHeader(HttpHeaders.CONTENT_RANGE, "bytes " + range.get()[0] + "-" + range.get()[1] + "/" + size);
+			response.setContentLengthLong(range.get()[1] - range.get()[0] + 1);
+		}
+		else if (isText(name) && StringUtils.contains(request.getHeader(HttpHeaders.ACCEPT_ENCODING), "gzip")) {
+			response.setHeader(HttpHeaders.CONTENT_ENCODING, "gzip");
+			response.setHeader(HttpHeaders.ETAG, gzipEtag);
+			response.setHeader(HttpHeaders.VARY, HttpHeaders.ACCEPT_ENCODING);
+		}
+		else if (size >= 0) {
+			response.setContentLengthLong(size);
+		}
+		return range;
+	}
+
+	/**
+	 * Parses a single {@code bytes=} range; several ranges or a malformed header mean the whole
+	 * content, as allowed by RFC 7233.
+	 *
+	 * @return null when the range starts beyond the content
+	 */
+	static Optional<long[]> parseRange(String header, long size) {
+		if (header == null)
+			return Optional.empty();
+		Matcher matcher = RANGE.matcher(header.trim());
+		if (!matcher.matches() || matcher.group(1).isEmpty() && matcher.group(2).isEmpty())
+			return Optional.empty();
+		try {
+			if (matcher.group(1).isEmpty()) {
+				long suffix = Long.parseLong(matcher.group(2));
+				if (suffix == 0 || size == 0)
+					return null;
+				return Optional.of(new long[]{Math.max(0, size - suffix), size - 1});
+			}
+			long start = Long.parseLong(matcher.group(1));
+			long last = matcher.group(2).isEmpty() ? size - 1 : Long.parseLong(matcher.group(2));
+			if (start >= size)
+				return null;
+			if (last < start)
+				return Optional.empty();
+			return Optional.of(new long[]{start, Math.min(last, size - 1)});
+		}
+		catch (NumberFormatException e) {
+			return Optional.empty();
+		}
+	}
+
+	/**
+	 * A range is only sent when the client's {@code If-Range} validator, an entity tag or a date,
+	 * still matches; otherwise the whole new content is sent.
+	 */
+	private static boolean isCurrent(String ifRange, String etag, long lastModified) {
+		if (ifRange == null)
+			return true;
+		if (ifRange.startsWith("\"") || ifRange.startsWith("W/"))
+			return ifRange.equals(etag);
+		try {
+			return ZonedDateTime.parse(ifRange, DateTimeFormatter.RFC_1123_DATE_TIME).toInstant().toEpochMilli() / 1000 == lastModified / 1000;
+		}
+		catch (DateTimeParseException e) {
+			return false;
+		}
+	}
+
+	private static boolean isText(String name) {
+		String lowerName = name.toLowerCase(Locale.ROOT);
+		return !FileService.isCompressedName(name) && !lowerName.endsWith(".zip") && !lowerName.endsWith(".7z");
+	}
+
+	private static boolean isEncoded(HttpServletResponse response) {
+		return "gzip".equals(response.getHeader(HttpHeaders.CONTENT_ENCODING));
+	}
+
+	private static void copy(InputStream input, HttpServletResponse response) throws IOException {
+		if (!isEncoded(response)) {
+			IOUtils.copyLarge(input, response.getOutputStream());
+			return;
+		}
+		GZIPOutputStream gzip = new GZIPOutputStream(response.getOutputStream(), LineScanner.DEFAULT_BUFFER_SIZE);
+		IOUtils.copyLarge(input, gzip);
+		gzip.finish();
+	}
+
+	private static void transfer(Path file, long start, long end, OutputStream output) throws IOException {
+		try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+			WritableByteChannel target = Channels.newChannel(output);
+			long position = start;
+			while (position < end) {
+				long transferred = channel.transferTo(position, end - position, target);
+				if (transferred <= 0)
+					break;
+				position += transferred;
+			}
+		}
+	}
+}
@@ -0,0 +1,250 @@
+package com.olszewski.michal.service;
+
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.Phaser;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+
+import com.olszewski.michal.domain.FileEntry;
+import com.olszewski.michal.exceptions.FileProcessingException;
+import lombok.extern.slf4j.Slf4j;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+/**
+ * Runs per-file search tasks on a bounded worker pool. Results are returned in the order of the
+ * input entries, and the total size of files being searched at the same time is capped, so one
+ * large search cannot take over the whole machine.
+ */
+@Component
+@Slf4j
+public class SearchExecutor {
+
+	@FunctionalInterface
+	public interface EntryTask<R> {
+		Optional<R> apply(FileEntry entry) throws IOException;
+	}
+
+	@FunctionalInterface
+	public interface EntryAction {
+		void apply(FileEntry entry) throws IOException;
+	}
+
+	/**
+	 * Finds the entries to search and passes them to the consumer, possibly from several threads.
+	 */
+	@FunctionalInterface
+	public interface EntryProducer {
+		void produce(Consumer<FileEntry> consumer) throws IOException;
+	}
+
+	@FunctionalInterface
+	public interface ResultSink<R> {
+		/**
+		 * @return false to stop the search
+		 */
+		boolean accept(R result) throws IOException;
+	}
+
+	private static final int KB = 1024;
+
+	private final int parallelism;
+	private final int maxInFlightKb;
+	private final Semaphore inFlightKb;
+	private final ExecutorService executor;
+
+	public SearchExecutor(@Value("${logviewer.search.threads:0}") int threads,
+						  @Value("${logviewer.search.max-in-flight-bytes:268435456}") long maxInFlightBytes) {
+		this.parallelism = threads > 0 ? threads : Runtime.getRuntime().availableProcessors();
+		this.maxInFlightKb = (int) Math.max(1, Math.min(Integer.MAX_VALUE, maxInFlightBytes / KB));
+		this.inFlightKb = new Semaphore(maxInFlightKb);
+		this.executor = parallelism > 1 ? createPool(parallelism) : null;
+	}
+
+	private static ExecutorService createPool(int threads) {
+		AtomicInteger counter = new AtomicInteger();
+		ThreadFactory threadFactory = runnable -> {
+			Thread thread = new Thread(runnable, "log-search-" + counter.incrementAndGet());
+			thread.setDaemon(true);
+			return thread;
+		};
+		return new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS,
+				new ArrayBlockingQueue<>(threads * 4), threadFactory, new ThreadPoolExecutor.CallerRunsPolicy());
+	}
+
+	public int getParallelism() {
+		return parallelism;
+	}
+
+	public <R> List<R> searchInOrder(List<FileEntry> entries, EntryTask<R> task) throws IOException {
+		List<R> results = new ArrayList<>();
+		searchInOrder(entries, task, result -> results.add(result));
+		return results;
+	}
+
+	/**
+	 * Passes results to the sink in the order of the input entries, each one as soon as it and all
+	 * the results before it are ready. The sink is always called on the calling thread; when it
+	 * returns false or throws, the remaining searches are cancelled. A file's share of the
+	 * in-flight budget is returned only once its result has been passed to the sink, so results
+	 * waiting behind a slow file count against the budget too; when the budget runs out, the
+	 * caller waits for the oldest result and delivers it before starting more files.
+	 */
+	public <R> void searchInOrder(List<FileEntry> entries, EntryTask<R> task, ResultSink<R> sink) throws IOException {
+		if (executor == null || entries.size() < 2) {
+			for (FileEntry entry : entries) {
+				Optional<R> result = task.apply(entry);
+				if (result.isPresent() && !sink.accept(result.get()))
+					return;
+			}
+			return;
+		}
+		List<Future<Optional<R>>> futures = new ArrayList<>(entries.size());
+		List<Integer> permits = new ArrayList<>(entries.size());
+		int delivered = 0;
+		try {
+			for (FileEntry entry : entries) {
+				int entryPermits = permitsFor(entry);
+				boolean acquired = false;
+				while (!acquired && delivered < futures.size()) {
+					acquired = inFlightKb.tryAcquire(entryPermits);
+					if (!acquired && !deliver(futures.get(delivered), permits.get(delivered++), sink))
+						return;
+				}
+				if (!acquired)
+					inFlightKb.acquire(entryPermits);
+				FutureTask<Optional<R>> future = new FutureTask<>(() -> task.apply(entry));
+				futures.add(future);
+				permits.add(entryPermits);
+				executor.execute(future);
+				while (delivered < futures.size() && futures.get(delivered).isDone()) {
+					if (!deliver(futures.get(delivered), permits.get(delivered++), sink))
+						return;
+				}
+			}
+			while (delivered < futures.size()) {
+				if (!deliver(futures.get(delivered), permits.get(delivered++), sink))
+					return;
+			}
+		}
+		catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new FileProcessingException("Przerwano wyszukiwanie", e);
+		}
+		catch (ExecutionException e) {
+			if (e.getCause() instanceof IOException)
+				throw (IOException) e.getCause();
+			if (e.getCause() instanceof RuntimeException)
+				throw (RuntimeException) e.getCause();
+			throw new FileProcessingException("Blad podczas wyszukiwania", e.getCause());
+		}
+		finally {
+			for (int i = delivered; i < futures.size(); i++) {
+				futures.get(i).cancel(true);
+				inFlightKb.release(permits.get(i));
+			}
+		}
+	}
+
+	private <R> boolean deliver(Future<Optional<R>> future, int permits, ResultSink<R> sink) throws InterruptedException, ExecutionException, IOException {
+		try {
+			Optional<R> result = future.get();
+			return !result.isPresent() || sink.accept(result.get());
+		}
+		finally {
+			inFlightKb.release(permits);
+		}
+	}
+
+	/**
+	 * Searches entries as the producer finds them, for searches whose outcome does not depend on
+	 * the order of files, so the search starts before the walk ends and the entries are never
+	 * collected. The producer's threads wait while the in-flight budget is used up. Returns once
+	 * every started search has finished; the first failure is rethrown and stops further
+	 * searches from starting.
+	 */
+	public void searchAsFound(EntryProducer producer, EntryAction action) throws IOException {
+		Phaser running = new Phaser(1);
+		AtomicReference<Throwable> failure = new AtomicReference<>();
+		try {
+			producer.produce(entry -> {
+				if (failure.get() != null)
+					return;
+				if (executor == null) {
+					run(action, entry, failure);
+					return;
+				}
+				int permits = permitsFor(entry);
+				try {
+					inFlightKb.acquire(permits);
+				}
+				catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					throw new FileProcessingException("Przerwano wyszukiwanie", e);
+				}
+				running.register();
+				try {
+					executor.execute(() -> {
+						try {
+							run(action, entry, failure);
+						}
+						finally {
+							inFlightKb.release(permits);
+							running.arriveAndDeregister();
+						}
+					});
+				}
+				catch (RuntimeException e) {
+					inFlightKb.release(permits);
+					running.arriveAndDeregister();
+					throw e;
+				}
+			});
+		}
+		finally {
+			running.arriveAndAwaitAdvance();
+		}
+		Throwable cause = failure.get();
+		if (cause instanceof IOException)
+			throw (IOException) cause;
+		if (cause instanceof RuntimeException)
+			throw (RuntimeException) cause;
+		if (cause != null)
+			throw new FileProcessingException("Blad podczas wyszukiwania", cause);
+	}
+
+	private static void run(EntryAction action, FileEntry entry, AtomicReference<Throwable> failure) {
+		try {
+			action.apply(entry);
+		}
+		catch (IOException | RuntimeException e) {
+			failure.compareAndSet(null, e);
+		}
+	}
+
+	private int permitsFor(FileEntry entry) {
+		long kb = Math.max(1, entry.getSize() / KB);
+		return (int) Math.min(maxInFlightKb, kb);
+	}
+
+	@PreDestroy
+	public void shutdown() {
+		if (executor != null)
+			executor.shutdownNow();
+	}
+}
@@ -0,0 +1,140 @@
+package com.olszewski.michal.service;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Predicate;
+
+import com.olszewski.michal.domain.SearchHit;
+import com.olszewski.michal.domain.SearchLine;
+
+/**
+ * Groups consecutive lines of a file into events and collects the events matching the query, in
+ * a single pass. Indented lines and {@code Caused by:} lines continue the event above them, so a
+ * match anywhere in a stack trace is reported once, at the line that started it. Up to
+ * {@code before} lines preceding a hit are kept in a ring buffer, and up to {@code after} lines
+ * following it are appended as they arrive; a line is reported at most once. Every hit is taken
+ * from the search's {@link HitBudget}; after the first refused one only the context of the last
+ * hit is completed. {@link HitExpander} feeds it only the parts of a file around the hits found
+ * through a fast path, with {@link #skip()} between them.
+ */
+class SearchHitCollector implements LineScanner.LineHandler {
+
+	static final int MAX_CONTINUATION_LINES = 200;
+
+	private final Predicate<String> query;
+	private final int after;
+	private final HitBudget budget;
+	private final SearchLine[] ring;
+	private int ringStart;
+	private int ringSize;
+	private final List<SearchHit> hits = new ArrayList<>();
+	private long linesTested;
+	private SearchLine eventLine;
+	private List<SearchLine> eventContinuation;
+	private boolean eventMatched;
+	private SearchHit open;
+	private boolean full;
+
+	SearchHitCollector(Predicate<String> query, int before, int after, HitBudget budget) {
+		this.query = query;
+		this.after = after;
+		this.budget = budget;
+		this.ring = new SearchLine[before];
+	}
+
+	static boolean isContinuation(String line) {
+		return line.startsWith("\t") || line.startsWith(" ") || line.startsWith("Caused by:");
+	}
+
+	@Override
+	public boolean onLine(long lineNumber, long offset, String line) {
+		SearchLine searchLine = new SearchLine(lineNumber, offset, line);
+		linesTested++;
+		boolean matches = query.test(line);
+		if (eventLine != null && isContinuation(line) && eventContinuation.size() < MAX_CONTINUATION_LINES) {
+			eventContinuation.add(searchLine);
+			eventMatched |= matches;
+			return true;
+		}
+		finishEvent();
+		eventLine = searchLine;
+		eventContinuation = new ArrayList<>();
+		eventMatched = matches;
+		return !full || open != null;
+	}
+
+	/**
+	 * Closes the last event; called once the whole range was scanned.
+	 */
+	List<SearchHit> finish() {
+		finishEvent();
+		open = null;
+		return hits;
+	}
+
+	long getLinesTested() {
+		return linesTested;
+	}
+
+	/**
+	 * @return true when the lines fed so far are complete: no hit waits for lines after it and the
+	 * event being read has not matched yet
+	 */
+	boolean isSettled() {
+		return open == null && !eventMatched;
+	}
+
+	/**
+	 * Forgets the lines fed so far because the following ones do not continue them. Only called
+	 * when {@link #isSettled() settled}, so no hit is lost.
+	 */
+	void skip() {
+		finishEvent();
+		open = null;
+		ringStart = 0;
+		ringSize = 0;
+	}
+
+	private void finishEvent() {
+		if (eventLine == null)
+			return;
+		if (eventMatched && !full && budget.take()) {
+			SearchHit hit = new SearchHit(eventLine.getLineNumber(), eventLine.getOffset(), eventLine.getLine());
+			hit.setContinuation(eventContinuation);
+			hit.setBefore(drainRing());
+			hits.add(hit);
+			open = after > 0 ? hit : null;
+		}
+		else {
+			full |= eventMatched;
+			addContext(eventLine);
+			eventContinuation.forEach(this::addContext);
+		}
+		eventLine = null;
+	}
+
+	private void addContext(SearchLine line) {
+		if (open != null) {
+			open.getAfter().add(line);
+			if (open.getAfter().size() == after)
+				open = null;
+		}
+		else if (ring.length > 0) {
+			ring[(ringStart + ringSize) % ring.length] = line;
+			if (ringSize < ring.length)
+				ringSize++;
+			else
+				ringStart = (ringStart + 1) % ring.length;
+		}
+	}
+
+	private List<SearchLine> drainRing() {
+		List<SearchLine> lines = new ArrayList<>(ringSize);
+		for (int i = 0; i < ringSize; i++) {
+			lines.add(ring[(ringStart + i) % ring.length]);
+		}
+		ringStart = 0;
+		ringSize = 0;
+		return lines;
+	}
+}
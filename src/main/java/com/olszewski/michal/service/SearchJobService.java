@@ -0,0 +1,381 @@
+package com.olszewski.michal.service;
+
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.Comparator;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+
+import com.olszewski.michal.domain.FileEntry;
+import com.olszewski.michal.domain.SearchJobPage;
+import com.olszewski.michal.domain.SearchJobState;
+import com.olszewski.michal.domain.SearchHit;
+import com.olszewski.michal.domain.SearchJobStatus;
+import com.olszewski.michal.domain.SearchLine;
+import com.olszewski.michal.domain.SearchResult;
+import com.olszewski.michal.domain.SearchSummary;
+import com.olszewski.michal.domain.search.SearchProperties;
+import com.olszewski.michal.exceptions.SearchJobNotFoundException;
+import com.olszewski.michal.exceptions.SearchJobRejectedException;
+import com.olszewski.michal.metrics.LogViewerMetrics;
+import com.olszewski.michal.query.Query;
+import lombok.Data;
+import lombok.extern.slf4j.Slf4j;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+/**
+ * Runs searches in the background on {@code logviewer.jobs.threads} threads, so that no request
+ * thread waits for a whole search. Clients poll the progress, fetch the results page by page and
+ * may cancel the job. Results of finished searches are cached under the query together with the
+ * path, size, modification time and file key of every searched entry, so a repeated search over
+ * unchanged files is answered without reading them, and any change to the files misses the cache.
+ * <p>
+ * Memory is bounded at every level: at most {@code logviewer.jobs.max-jobs} jobs are known at a
+ * time (queued, running or finished) and at most {@code logviewer.jobs.queue-size} of them wait
+ * for a thread, further submits are rejected. A job keeps at most
+ * {@code logviewer.jobs.max-result-bytes} of results and the cache at most
+ * {@code logviewer.jobs.cache-max-bytes}, both estimated from the lengths of the returned lines,
+ * since a single hit may carry hundreds of continuation and context lines. Finished jobs are
+ * forgotten after {@code logviewer.jobs.retention} milliseconds, or earlier, oldest first, when
+ * a new job needs the room.
+ */
+@Component
+@Slf4j
+public class SearchJobService {
+
+	private static final int MAX_PAGE_SIZE = 1000;
+
+	private final FileService fileService;
+	private final LogViewerMetrics metrics;
+	private final ThreadPoolExecutor executor;
+	private final int maxJobs;
+	private final long maxMatches;
+	private final long maxResultBytes;
+	private final long retention;
+	private final long cacheMaxBytes;
+	private final Map<String, SearchJob> jobs = new ConcurrentHashMap<>();
+	private final Map<JobKey, CachedResult> cache = new LinkedHashMap<>(16, 0.75f, true);
+	private long cachedBytes;
+
+	public SearchJobService(FileService fileService, LogViewerMetrics metrics,
+							@Value("${logviewer.jobs.threads:2}") int threads,
+							@Value("${logviewer.jobs.queue-size:16}") int queueSize,
+							@Value("${logviewer.jobs.max-jobs:64}") int maxJobs,
+							@Value("${logviewer.search.max-matches:100000}") long maxMatches,
+							@Value("${logviewer.jobs.max-result-bytes:67108864}") long maxResultBytes,
+							@Value("${logviewer.jobs.retention:600000}") long retention,
+							@Value("${logviewer.jobs.cache-max-bytes:268435456}") long cacheMaxBytes) {
+		this.fileService = fileService;
+		this.metrics = metrics;
+		AtomicInteger counter = new AtomicInteger();
+		this.executor = new ThreadPoolExecutor(Math.max(1, threads), Math.max(1, threads), 0, TimeUnit.MILLISECONDS,
+				new ArrayBlockingQueue<>(Math.max(1, queueSize)), runnable -> {
+					Thread thread = new Thread(runnable, "search-job-" + counter.incrementAndGet());
+					thread.setDaemon(true);
+					return thread;
+				});
+		this.maxJobs = Math.max(1, maxJobs);
+		this.maxMatches = maxMatches;
+		this.maxResultBytes = maxResultBytes;
+		this.retention = retention;
+		this.cacheMaxBytes = cacheMaxBytes;
+	}
+
+	/**
+	 * Starts a search of the given path. An invalid query is reported right away, everything else
+	 * through the job's state. When all {@code logviewer.jobs.max-jobs} jobs are still queued or
+	 * running, or no thread nor queue slot is free, the search is rejected.
+	 */
+	public SearchJobStatus submit(Path path, SearchProperties searchProperties) {
+		Query.compile(searchProperties.getFileContent(), Boolean.TRUE.equals(searchProperties.getIgnoreCase()));
+		SearchJob job = new SearchJob(UUID.randomUUID().toString());
+		synchronized (jobs) {
+			removeExpired();
+			makeRoom();
+			if (jobs.size() >= maxJobs)
+				throw new SearchJobRejectedException("Zbyt wiele wyszukiwan w toku, sprobuj ponownie pozniej");
+			jobs.put(job.id, job);
+		}
+		try {
+			job.future = executor.submit(() -> run(job, path, searchProperties));
+		}
+		catch (RejectedExecutionException e) {
+			jobs.remove(job.id);
+			metrics.increment("jobs.rejected", 1);
+			throw new SearchJobRejectedException("Kolejka wyszukiwan jest pelna, sprobuj ponownie pozniej");
+		}
+		return job.status();
+	}
+
+	public SearchJobStatus getStatus(String id) {
+		return job(id).status();
+	}
+
+	public SearchJobPage getPage(String id, int from, int size) {
+		SearchJob job = job(id);
+		SearchJobState state = job.state;
+		List<SearchResult> results = job.results;
+		SearchJobPage page = new SearchJobPage();
+		page.setId(id);
+		page.setState(state);
+		page.setFrom(Math.max(0, from));
+		synchronized (results) {
+			int to = (int) Math.min(results.size(), (long) page.getFrom() + Math.max(0, Math.min(size, MAX_PAGE_SIZE)));
+			if (page.getFrom() < to)
+				page.setResults(new ArrayList<>(results.subList(page.getFrom(), to)));
+			page.setNext(Math.max(page.getFrom(), to));
+			page.setLast(state != SearchJobState.QUEUED && state != SearchJobState.RUNNING && page.getNext() >= results.size());
+		}
+		return page;
+	}
+
+	/**
+	 * Cancels a job. A job still waiting in the queue is removed from it and cancelled right away;
+	 * a running one is only asked to stop and is marked cancelled by its own thread once it does,
+	 * so its state never says cancelled while it is still reading files.
+	 */
+	public SearchJobStatus cancel(String id) {
+		SearchJob job = job(id);
+		job.progress.cancel();
+		if (job.future instanceof Runnable && executor.remove((Runnable) job.future))
+			job.finish(SearchJobState.CANCELLED, null);
+		return job.status();
+	}
+
+	@PreDestroy
+	public void shutdown() {
+		jobs.values().forEach(job -> job.progress.cancel());
+		executor.shutdownNow();
+	}
+
+	private SearchJob job(String id) {
+		removeExpired();
+		SearchJob job = jobs.get(id);
+		if (job == null)
+			throw new SearchJobNotFoundException("Nie znaleziono wyszukiwania " + id);
+		return job;
+	}
+
+	private void run(SearchJob job, Path path, SearchProperties searchProperties) {
+		job.state = SearchJobState.RUNNING;
+		try {
+			List<FileEntry> entries = fileService.getAllFileEntries(path, searchProperties);
+			JobKey key = new JobKey(path.toAbsolutePath().normalize(), searchProperties.toString(), fingerprints(entries));
+			Optional<CachedResult> cached = cached(key);
+			if (cached.isPresent()) {
+				job.progress.plan(entries);
+				job.cached = true;
+				job.results = cached.get().results;
+				job.bytes.set(cached.get().bytes);
+				job.matches.set(cached.get().summary.getMatches());
+				job.finish(SearchJobState.DONE, cached.get().summary);
+				return;
+			}
+			SearchSummary summary = fileService.streamLinesFromEntries(entries, searchProperties, maxMatches, result -> {
+				long bytes = estimateBytes(result);
+				if (job.bytes.get() + bytes > maxResultBytes)
+					return false;
+				job.bytes.addAndGet(bytes);
+				job.results.add(result);
+				job.matches.addAndGet(result.getHits().size());
+				return true;
+			}, job.progress);
+			if (job.progress.isCancelled()) {
+				job.finish(SearchJobState.CANCELLED, summary);
+				return;
+			}
+			summary.setMatches(job.matches.get());
+			store(key, new CachedResult(Collections.unmodifiableList(new ArrayList<>(job.results)), summary, job.bytes.get()));
+			job.finish(SearchJobState.DONE, summary);
+		}
+		catch (Exception e) {
+			log.warn("Blad podczas wyszukiwania " + job.id, e);
+			job.error = e.getMessage();
+			job.finish(SearchJobState.FAILED, null);
+		}
+		finally {
+			if (job.progress.isCancelled())
+				job.finish(SearchJobState.CANCELLED, null);
+		}
+	}
+
+	/**
+	 * Reads the attributes of every entry's file again instead of trusting the listing, which may
+	 * come from the directory listing cache. The file key tells apart a file replaced by another one
+	 * of the same size and modification time; where the file system has no file keys the creation
+	 * time is used instead. Entries of an archive share the fingerprint of the archive.
+	 */
+	private static List<Fingerprint> fingerprints(List<FileEntry> entries) {
+		List<Fingerprint> fingerprints = new ArrayList<>(entries.size());
+		for (FileEntry entry : entries) {
+			Path file = Files.isDirectory(entry.getPath()) ? entry.getPath().resolve(entry.getFilename()) : entry.getPath();
+			try {
+				BasicFileAttributes attributes = Files.readAttributes(file, BasicFileAttributes.class);
+				Object identity = attributes.fileKey() != null ? attributes.fileKey() : attributes.creationTime();
+				fingerprints.add(new Fingerprint(entry.getPath(), entry.getFilename(), attributes.size(),
+						attributes.lastModifiedTime(), identity));
+			}
+			catch (IOException e) {
+				fingerprints.add(new Fingerprint(entry.getPath(), entry.getFilename(), -1, null, null));
+			}
+		}
+		return fingerprints;
+	}
+
+	private Optional<CachedResult> cached(JobKey key) {
+		synchronized (cache) {
+			CachedResult result = cache.get(key);
+			metrics.increment(result != null ? "jobs.cache-hits" : "jobs.cache-misses", 1);
+			return Optional.ofNullable(result);
+		}
+	}
+
+	private void store(JobKey key, CachedResult result) {
+		if (result.bytes > cacheMaxBytes)
+			return;
+		synchronized (cache) {
+			CachedResult previous = cache.put(key, result);
+			cachedBytes += result.bytes - (previous != null ? previous.bytes : 0);
+			Iterator<CachedResult> eldest = cache.values().iterator();
+			while (cachedBytes > cacheMaxBytes && eldest.hasNext()) {
+				cachedBytes -= eldest.next().bytes;
+				eldest.remove();
+			}
+		}
+	}
+
+	private void removeExpired() {
+		long now = System.currentTimeMillis();
+		jobs.values().removeIf(job -> job.finishedAt > 0 && now - job.finishedAt > retention);
+	}
+
+	private void makeRoom() {
+		int excess = jobs.size() - maxJobs + 1;
+		if (excess <= 0)
+			return;
+		jobs.values().stream()
+				.filter(job -> job.finishedAt > 0)
+				.sorted(Comparator.comparingLong(job -> job.finishedAt))
+				.limit(excess)
+				.collect(Collectors.toList())
+				.forEach(job -> jobs.remove(job.id));
+	}
+
+	/**
+	 * Approximates the heap taken by a result: the characters of every returned line (two bytes
+	 * each) plus a fixed overhead per object. Only used to bound the memory, not to report it.
+	 */
+	static long estimateBytes(SearchResult result) {
+		long bytes = 64;
+		for (SearchHit hit : result.getHits()) {
+			bytes += 64 + estimateBytes(hit.getLine())
+					+ estimateBytes(hit.getContinuation()) + estimateBytes(hit.getBefore()) + estimateBytes(hit.getAfter());
+		}
+		return bytes;
+	}
+
+	private static long estimateBytes(List<SearchLine> lines) {
+		long bytes = 0;
+		for (SearchLine line : lines) {
+			bytes += 32 + estimateBytes(line.getLine());
+		}
+		return bytes;
+	}
+
+	private static long estimateBytes(String line) {
+		return 40 + (line != null ? 2L * line.length() : 0);
+	}
+
+	@Data
+	private static class Fingerprint {
+		private final Path path;
+		private final String filename;
+		private final long size;
+		private final FileTime modified;
+		private final Object identity;
+	}
+
+	@Data
+	private static class JobKey {
+		private final Path root;
+		private final String searchProperties;
+		private final List<Fingerprint> fingerprints;
+	}
+
+	private static class CachedResult {
+		private final List<SearchResult> results;
+		private final SearchSummary summary;
+		private final long bytes;
+
+		CachedResult(List<SearchResult> results, SearchSummary summary, long bytes) {
+			this.results = results;
+			this.summary = summary;
+			this.bytes = bytes;
+		}
+	}
+
+	private static class SearchJob {
+		private final String id;
+		private final SearchProgress progress = new SearchProgress();
+		private final AtomicLong matches = new AtomicLong();
+		private final AtomicLong bytes = new AtomicLong();
+		private final long startedAt = System.currentTimeMillis();
+		private volatile List<SearchResult> results = Collections.synchronizedList(new ArrayList<>());
+		private volatile SearchJobState state = SearchJobState.QUEUED;
+		private volatile boolean cached;
+		private volatile boolean truncated;
+		private volatile String error;
+		private volatile long finishedAt;
+		private volatile Future<?> future;
+
+		SearchJob(String id) {
+			this.id = id;
+		}
+
+		synchronized void finish(SearchJobState finalState, SearchSummary summary) {
+			if (finishedAt > 0)
+				return;
+			truncated = summary != null && summary.isTruncated();
+			state = finalState;
+			finishedAt = System.currentTimeMillis();
+		}
+
+		SearchJobStatus status() {
+			SearchJobStatus status = new SearchJobStatus();
+			status.setId(id);
+			status.setState(state);
+			status.setCached(cached);
+			status.setFilesTotal(progress.getFilesTotal());
+			status.setFilesSearched(cached ? progress.getFilesTotal() : progress.getFilesSearched());
+			status.setBytesTotal(progress.getBytesTotal());
+			status.setBytesRead(progress.getBytesRead());
+			status.setResults(results.size());
+			status.setMatches(matches.get());
+			status.setTruncated(truncated);
+			status.setElapsedMs((finishedAt > 0 ? finishedAt : System.currentTimeMillis()) - startedAt);
+			status.setError(error);
+			return status;
+		}
+	}
+}
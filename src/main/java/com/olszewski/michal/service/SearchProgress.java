@@ -0,0 +1,68 @@
+package com.olszewski.michal.service;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.olszewski.michal.domain.FileEntry;
+import com.olszewski.michal.domain.FileType;
+import com.olszewski.michal.metrics.LogViewerMetrics;
+
+/**
+ * Statistics of one search request, updated by the tasks searching its files in parallel and
+ * readable while the search runs. Cancelling it makes the search skip the remaining files.
+ */
+public class SearchProgress {
+	private final AtomicLong filesTotal = new AtomicLong();
+	private final AtomicLong bytesTotal = new AtomicLong();
+	private final AtomicLong filesSearched = new AtomicLong();
+	private final AtomicLong bytesRead = new AtomicLong();
+	private final AtomicLong linesTested = new AtomicLong();
+	private volatile boolean cancelled;
+
+	void plan(List<FileEntry> entries) {
+		for (FileEntry entry : entries) {
+			if (entry.getFileType().equals(FileType.FILE) || entry.getFileType().equals(FileType.COMPRESSED)) {
+				filesTotal.incrementAndGet();
+				bytesTotal.addAndGet(entry.getSize());
+			}
+		}
+	}
+
+	void record(LogViewerMetrics metrics, long bytes, long lines, long matches) {
+		filesSearched.incrementAndGet();
+		bytesRead.addAndGet(bytes);
+		linesTested.addAndGet(lines);
+		metrics.increment("search.files", 1);
+		metrics.increment("search.bytes-read", bytes);
+		metrics.increment("search.lines-tested", lines);
+		metrics.increment("search.matches", matches);
+	}
+
+	public void cancel() {
+		cancelled = true;
+	}
+
+	public boolean isCancelled() {
+		return cancelled;
+	}
+
+	public long getFilesTotal() {
+		return filesTotal.get();
+	}
+
+	public long getBytesTotal() {
+		return bytesTotal.get();
+	}
+
+	public long getFilesSearched() {
+		return filesSearched.get();
+	}
+
+	public long getBytesRead() {
+		return bytesRead.get();
+	}
+
+	public long getLinesTested() {
+		return linesTested.get();
+	}
+}
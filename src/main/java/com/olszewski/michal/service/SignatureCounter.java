@@ -0,0 +1,131 @@
+package com.olszewski.michal.service;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+
+import com.olszewski.michal.domain.ErrorSignature;
+
+/**
+ * Counts signatures with the Space-Saving algorithm: at most {@code capacity} signatures are
+ * tracked, and a new one replaces the least frequent, inheriting its count as the possible
+ * overestimate. Every signature occurring more than {@code matches / capacity} times is
+ * guaranteed to be among the tracked ones, so memory stays bounded however many lines match.
+ */
+class SignatureCounter {
+
+	static final int DEFAULT_CAPACITY = 1000;
+
+	private final int capacity;
+	private final Map<String, Slot> slots = new HashMap<>();
+	private final TreeSet<Slot> byCount = new TreeSet<>(Comparator.<Slot>comparingLong(slot -> slot.signature.getCount())
+			.thenComparingLong(slot -> slot.sequence));
+	private long sequence;
+	private long matches;
+	private boolean evicted;
+
+	SignatureCounter(int capacity) {
+		this.capacity = capacity;
+	}
+
+	synchronized void add(String line, String file, long lineNumber, LocalDateTime timestamp) {
+		ErrorSignature occurrence = new ErrorSignature();
+		occurrence.setTemplate(SignatureNormalizer.normalize(line));
+		occurrence.setCount(1);
+		occurrence.setFirstSeen(timestamp);
+		occurrence.setLastSeen(timestamp);
+		occurrence.setSample(line);
+		occurrence.setSampleFile(file);
+		occurrence.setSampleLine(lineNumber);
+		add(occurrence);
+	}
+
+	/**
+	 * Adds the signatures counted by another counter, e.g. one used for a single file.
+	 */
+	synchronized void merge(SignatureCounter other) {
+		synchronized (other) {
+			other.slots.values().forEach(slot -> add(slot.signature));
+			evicted |= other.evicted;
+		}
+	}
+
+	synchronized List<ErrorSignature> top(int count) {
+		List<ErrorSignature> top = new ArrayList<>(Math.min(count, slots.size()));
+		for (Slot slot : byCount.descendingSet()) {
+			if (top.size() == count)
+				break;
+			top.add(slot.signature);
+		}
+		return top;
+	}
+
+	synchronized long getMatches() {
+		return matches;
+	}
+
+	synchronized boolean isApproximate() {
+		return evicted;
+	}
+
+	private void add(ErrorSignature occurrence) {
+		matches += occurrence.getCount();
+		Slot slot = slots.get(occurrence.getTemplate());
+		if (slot != null) {
+			byCount.remove(slot);
+			ErrorSignature signature = slot.signature;
+			signature.setCount(signature.getCount() + occurrence.getCount());
+			signature.setMaxOverestimate(signature.getMaxOverestimate() + occurrence.getMaxOverestimate());
+			signature.setFirstSeen(earliest(signature.getFirstSeen(), occurrence.getFirstSeen()));
+			signature.setLastSeen(latest(signature.getLastSeen(), occurrence.getLastSeen()));
+			byCount.add(slot);
+			return;
+		}
+		ErrorSignature signature = copy(occurrence);
+		if (slots.size() == capacity) {
+			Slot least = byCount.pollFirst();
+			slots.remove(least.signature.getTemplate());
+			signature.setCount(signature.getCount() + least.signature.getCount());
+			signature.setMaxOverestimate(signature.getMaxOverestimate() + least.signature.getCount());
+			evicted = true;
+		}
+		slot = new Slot(signature, sequence++);
+		slots.put(signature.getTemplate(), slot);
+		byCount.add(slot);
+	}
+
+	private static ErrorSignature copy(ErrorSignature source) {
+		ErrorSignature signature = new ErrorSignature();
+		signature.setTemplate(source.getTemplate());
+		signature.setCount(source.getCount());
+		signature.setMaxOverestimate(source.getMaxOverestimate());
+		signature.setFirstSeen(source.getFirstSeen());
+		signature.setLastSeen(source.getLastSeen());
+		signature.setSample(source.getSample());
+		signature.setSampleFile(source.getSampleFile());
+		signature.setSampleLine(source.getSampleLine());
+		return signature;
+	}
+
+	private static LocalDateTime earliest(LocalDateTime first, LocalDateTime second) {
+		return first == null || second != null && second.isBefore(first) ? second : first;
+	}
+
+	private static LocalDateTime latest(LocalDateTime first, LocalDateTime second) {
+		return first == null || second != null && second.isAfter(first) ? second : first;
+	}
+
+	private static class Slot {
+		private final ErrorSignature signature;
+		private final long sequence;
+
+		Slot(ErrorSignature signature, long sequence) {
+			this.signature = signature;
+			this.sequence = sequence;
+		}
+	}
+}
@@ -0,0 +1,86 @@
+package com.olszewski.michal.service;
+
+import java.util.regex.Pattern;
+
+/**
+ * Turns a log line into its template, so lines differing only in variable parts count as the same
+ * signature: UUIDs become {@code <uuid>}, hexadecimal values ({@code 0x...} or 8+ hex digits
+ * containing both a digit and a letter a-f) become {@code <hex>}, and every other run of digits,
+ * including those in timestamps, dates and long decimal ids, becomes {@code #}.
+ */
+final class SignatureNormalizer {
+
+	private static final Pattern UUID = Pattern.compile("[0-9a-fA-F]{8}-[0-9a-fA-F]{4}-[0-9a-fA-F]{4}-[0-9a-fA-F]{4}-[0-9a-fA-F]{12}");
+	private static final int MIN_HEX_LENGTH = 8;
+
+	private SignatureNormalizer() {
+	}
+
+	static String normalize(String line) {
+		String text = line.indexOf('-') >= 0 ? UUID.matcher(line).replaceAll("<uuid>") : line;
+		StringBuilder template = new StringBuilder(text.length());
+		int i = 0;
+		while (i < text.length()) {
+			char c = text.charAt(i);
+			if (!Character.isLetterOrDigit(c)) {
+				template.append(c);
+				i++;
+				continue;
+			}
+			int end = i;
+			boolean digits = false;
+			while (end < text.length() && Character.isLetterOrDigit(text.charAt(end))) {
+				digits |= Character.isDigit(text.charAt(end));
+				end++;
+			}
+			if (digits)
+				appendMasked(template, text, i, end);
+			else
+				template.append(text, i, end);
+			i = end;
+		}
+		return template.toString();
+	}
+
+	private static void appendMasked(StringBuilder template, String text, int start, int end) {
+		if (isHexValue(text, start, end)) {
+			template.append("<hex>");
+			return;
+		}
+		boolean inNumber = false;
+		for (int i = start; i < end; i++) {
+			char c = text.charAt(i);
+			if (Character.isDigit(c)) {
+				if (!inNumber)
+					template.append('#');
+				inNumber = true;
+			}
+			else {
+				template.append(c);
+				inNumber = false;
+			}
+		}
+	}
+
+	private static boolean isHexValue(String text, int start, int end) {
+		if (end - start > 2 && text.charAt(start) == '0' && (text.charAt(start + 1) == 'x' || text.charAt(start + 1) == 'X'))
+			return isHex(text, start + 2, end);
+		return end - start >= MIN_HEX_LENGTH && isHex(text, start, end) && hasHexLetter(text, start, end);
+	}
+
+	private static boolean hasHexLetter(String text, int start, int end) {
+		for (int i = start; i < end; i++) {
+			if (Character.digit(text.charAt(i), 16) >= 10)
+				return true;
+		}
+		return false;
+	}
+
+	private static boolean isHex(String text, int start, int end) {
+		for (int i = start; i < end; i++) {
+			if (Character.digit(text.charAt(i), 16) < 0)
+				return false;
+		}
+		return true;
+	}
+}
@@ -0,0 +1,287 @@
+package com.olszewski.michal.service;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Predicate;
+
+import com.olszewski.michal.metrics.LogViewerMetrics;
+import org.apache.commons.io.input.BoundedInputStream;
+import org.apache.commons.io.input.CloseShieldInputStream;
+
+/**
+ * Returns the last lines of plain files that pass a filter. The file is read backwards in blocks
+ * with positional reads until enough matching lines are found or {@code maxBytes} have been read.
+ * The most recent complete lines of every file are kept, so repeated tails of a growing log only
+ * read what was appended since the previous call. All files share one budget of
+ * {@code maxCachedChars}: when it is exceeded, the least recently tailed files are forgotten
+ * first, and a single file that does not fit keeps only its newest lines. A file rewritten or
+ * replaced under the same name is recognised by its {@link FileIdentity} and read again.
+ */
+class TailReader {
+
+	static final long DEFAULT_MAX_BYTES = 64L * 1024 * 1024;
+	static final long DEFAULT_MAX_CACHED_CHARS = 16L * 1024 * 1024;
+	private static final int MAX_FILES = 64;
+	private static final int MAX_CACHED_LINES = 10000;
+
+	private final long maxBytes;
+	private final long maxCachedChars;
+	private final LineScanner lineScanner;
+	private final LogViewerMetrics metrics;
+	private final BackwardLineReader backwardLineReader;
+	private final Map<Path, Window> windows = new LinkedHashMap<Path, Window>(16, 0.75f, true) {
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<Path, Window> eldest) {
+			if (size() <= MAX_FILES)
+				return false;
+			forget(eldest.getValue());
+			return true;
+		}
+	};
+	private long cachedChars;
+
+	TailReader(Charset charset, long maxBytes, long maxCachedChars, LogViewerMetrics metrics) {
+		this.maxBytes = maxBytes;
+		this.maxCachedChars = maxCachedChars;
+		this.lineScanner = new LineScanner(charset);
+		this.backwardLineReader = new BackwardLineReader(charset);
+		this.metrics = metrics;
+	}
+
+	/**
+	 * @return up to {@code count} last lines accepted by the filter, oldest first
+	 */
+	List<String> tail(Path file, int count, Predicate<String> filter) throws IOException {
+		Path key = file.toAbsolutePath().normalize();
+		try (FileChannel channel = FileChannel.open(key, StandardOpenOption.READ)) {
+			BasicFileAttributes attributes = Files.readAttributes(key, BasicFileAttributes.class);
+			long size = channel.size();
+			Window window;
+			synchronized (windows) {
+				window = windows.get(key);
+			}
+			if (window == null || !window.isValidFor(attributes, channel, size)) {
+				window = new Window(FileIdentity.of(attributes, channel));
+				synchronized (windows) {
+					Window previous = windows.put(key, window);
+					if (previous != null)
+						forget(previous);
+				}
+			}
+			synchronized (window) {
+				return window.tail(channel, size, count, filter);
+			}
+		}
+	}
+
+	long getCachedChars() {
+		synchronized (windows) {
+			return cachedChars;
+		}
+	}
+
+	/**
+	 * Accounts characters added to (or, when negative, removed from) the window. While the budget
+	 * is exceeded, the least recently tailed other windows are forgotten.
+	 *
+	 * @return false when the window alone does not fit in the budget and has to drop lines
+	 */
+	private boolean charge(Window window, long chars) {
+		synchronized (windows) {
+			if (window.forgotten)
+				return true;
+			window.chargedChars += chars;
+			cachedChars += chars;
+			Iterator<Window> eldest = windows.values().iterator();
+			while (cachedChars > maxCachedChars && eldest.hasNext()) {
+				Window other = eldest.next();
+				if (other != window) {
+					forget(other);
+					eldest.remove();
+				}
+			}
+			return cachedChars <= maxCachedChars;
+		}
+	}
+
+	/**
+	 * Called with the windows locked. A forgotten window may still be finishing a tail; it no
+	 * longer counts against the budget and is garbage once that tail returns.
+	 */
+	private void forget(Window window) {
+		window.forgotten = true;
+		cachedChars -= window.chargedChars;
+		window.chargedChars = 0;
+	}
+
+	/**
+	 * Complete lines of the file between {@code start} and {@code end}, newest last. The unfinished
+	 * line after {@code end}, if any, is read again on every call.
+	 */
+	private class Window {
+		private final FileIdentity identity;
+		private final Deque<String> lines = new ArrayDeque<>();
+		private final Deque<Long> offsets = new ArrayDeque<>();
+		private long start = -1;
+		private long end = -1;
+		private String partialLine;
+		// guarded by windows
+		private long chargedChars;
+		private boolean forgotten;
+
+		Window(FileIdentity identity) {
+			this.identity = identity;
+		}
+
+		boolean isValidFor(BasicFileAttributes attributes, FileChannel channel, long size) throws IOException {
+			synchronized (this) {
+				if (size < end)
+					return false;
+			}
+			return identity.matches(attributes, channel);
+		}
+
+		List<String> tail(FileChannel channel, long size, int count, Predicate<String> filter) throws IOException {
+			if (end < 0)
+				initialize(channel, size);
+			else if (size > end)
+				readAppended(channel, size);
+			List<String> result = new ArrayList<>();
+			if (count <= 0)
+				return result;
+			if (partialLine != null && filter.test(partialLine))
+				result.add(partialLine);
+			Iterator<String> cached = lines.descendingIterator();
+			while (result.size() < count && cached.hasNext()) {
+				String line = cached.next();
+				if (filter.test(line))
+					result.add(line);
+			}
+			if (result.size() < count && start > 0) {
+				boolean[] full = {false};
+				readBackward(channel, start, (offset, line) -> {
+					if (!full[0] && lines.size() < MAX_CACHED_LINES) {
+						lines.addFirst(line);
+						offsets.addFirst(offset);
+						start = offset;
+						full[0] = !charge(this, line.length());
+					}
+					if (filter.test(line))
+						result.add(line);
+					return result.size() < count;
+				});
+				shrink();
+			}
+			Collections.reverse(result);
+			return result;
+		}
+
+		private void initialize(FileChannel channel, long size) throws IOException {
+			start = size;
+			end = size;
+			if (size > 0 && !endsWithNewLine(channel, size)) {
+				readBackward(channel, size, (offset, line) -> {
+					partialLine = line;
+					start = offset;
+					end = offset;
+					return false;
+				});
+			}
+		}
+
+		/**
+		 * Adds the lines appended since the previous call, dropping the oldest ones as it goes. When
+		 * more was appended than the cache could hold anyway, the window starts over from the end
+		 * of the file instead, so a log that grew by gigabytes is not read forwards.
+		 */
+		private void readAppended(FileChannel channel, long size) throws IOException {
+			if (size - end > Math.min(maxBytes, maxCachedChars)) {
+				clear();
+				initialize(channel, size);
+				return;
+			}
+			String[] last = {null};
+			long[] lastOffset = {-1};
+			channel.position(end);
+			InputStream input = new BoundedInputStream(new CloseShieldInputStream(Channels.newInputStream(channel)), size - end);
+			lineScanner.scan(input, 1, end, (lineNumber, offset, line) -> {
+				if (last[0] != null)
+					append(lastOffset[0], last[0]);
+				last[0] = line;
+				lastOffset[0] = offset;
+				return true;
+			});
+			metrics.increment("tail.bytes-read", size - end);
+			partialLine = null;
+			end = size;
+			if (last[0] != null) {
+				if (endsWithNewLine(channel, size)) {
+					append(lastOffset[0], last[0]);
+				}
+				else {
+					partialLine = last[0];
+					end = lastOffset[0];
+				}
+			}
+			shrink();
+		}
+
+		private void append(long offset, String line) {
+			lines.addLast(line);
+			offsets.addLast(offset);
+			if (!charge(this, line.length()) || lines.size() > MAX_CACHED_LINES)
+				shrink();
+		}
+
+		private void clear() {
+			long chars = 0;
+			for (String line : lines) {
+				chars += line.length();
+			}
+			charge(this, -chars);
+			lines.clear();
+			offsets.clear();
+			partialLine = null;
+		}
+
+		/**
+		 * Drops the oldest lines while the window holds too many or the budget is still exceeded.
+		 */
+		private void shrink() {
+			while (!lines.isEmpty() && (lines.size() > MAX_CACHED_LINES || !charge(this, 0))) {
+				charge(this, -lines.removeFirst().length());
+				offsets.removeFirst();
+			}
+			start = offsets.isEmpty() ? end : offsets.getFirst();
+		}
+	}
+
+	/**
+	 * Passes the lines ending before {@code from} to the handler, newest first. {@code from} is
+	 * either the end of the file or the start of a line.
+	 */
+	private void readBackward(FileChannel channel, long from, BackwardLineReader.LineHandler handler) throws IOException {
+		metrics.increment("tail.bytes-read", backwardLineReader.read(channel, from, maxBytes, handler));
+	}
+
+	private static boolean endsWithNewLine(FileChannel channel, long size) throws IOException {
+		ByteBuffer last = ByteBuffer.allocate(1);
+		return size > 0 && channel.read(last, size - 1) == 1 && last.get(0) == '\n';
+	}
+}
@@ -0,0 +1,86 @@
+package com.olszewski.michal.service;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.Arrays;
+import java.util.Optional;
+
+import org.apache.commons.io.input.BoundedInputStream;
+import org.apache.commons.io.input.CloseShieldInputStream;
+
+/**
+ * Timestamps of the sample lines of a {@link LineOffsetIndex}: for every sample the first
+ * timestamp found at or after it. Log files are written in time order, so a binary search over
+ * the samples gives the place to start reading a time range from.
+ */
+class TimestampIndex {
+
+	private static final int MAX_PROBE_BYTES = 64 * 1024;
+	private static final long UNKNOWN = Long.MIN_VALUE;
+
+	private final LineOffsetIndex lines;
+	private final LineScanner lineScanner = new LineScanner(Charset.defaultCharset());
+	private long[] times = new long[16];
+	private int count;
+
+	TimestampIndex(LineOffsetIndex lines) {
+		this.lines = lines;
+	}
+
+	synchronized void update(FileChannel channel, TimestampParser parser) throws IOException {
+		int samples = lines.getSampleCount();
+		if (times.length < samples)
+			times = Arrays.copyOf(times, Math.max(samples, times.length * 2));
+		for (; count < samples; count++) {
+			long previous = count > 0 ? times[count - 1] : UNKNOWN;
+			times[count] = firstTimestamp(channel, lines.sample(count)[1], parser).map(TimestampIndex::toMillis).orElse(previous);
+		}
+	}
+
+	/**
+	 * Returns {line number, offset} of a sample line before any line stamped {@code from} or
+	 * later. One extra sample is skipped back, so slightly out of order lines are not missed.
+	 */
+	synchronized long[] locate(LocalDateTime from) {
+		long target = toMillis(from);
+		int low = 0;
+		int high = count - 1;
+		int found = 0;
+		while (low <= high) {
+			int middle = (low + high) >>> 1;
+			if (times[middle] < target) {
+				found = middle;
+				low = middle + 1;
+			}
+			else {
+				high = middle - 1;
+			}
+		}
+		return lines.sample(Math.max(0, found - 1));
+	}
+
+	private Optional<LocalDateTime> firstTimestamp(FileChannel channel, long offset, TimestampParser parser) throws IOException {
+		channel.position(offset);
+		InputStream input = new BoundedInputStream(new CloseShieldInputStream(Channels.newInputStream(channel)), MAX_PROBE_BYTES);
+		LocalDateTime[] found = new LocalDateTime[1];
+		lineScanner.scan(input, (lineNumber, lineOffset, line) -> {
+			found[0] = parser.parse(line).orElse(null);
+			return found[0] == null;
+		});
+		return Optional.ofNullable(found[0]);
+	}
+
+	private static long toMillis(LocalDateTime time) {
+		try {
+			return time.toInstant(ZoneOffset.UTC).toEpochMilli();
+		}
+		catch (ArithmeticException e) {
+			return time.getYear() < 0 ? UNKNOWN + 1 : Long.MAX_VALUE;
+		}
+	}
+}
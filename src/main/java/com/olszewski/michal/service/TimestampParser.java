@@ -0,0 +1,47 @@
+package com.olszewski.michal.service;
+
+import java.text.ParsePosition;
+import java.time.DateTimeException;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+/**
+ * Reads the timestamp at the beginning of a log line, optionally inside square brackets. The
+ * patterns from {@code logviewer.timestamp.patterns} (separated with ';') are tried in order;
+ * logback's default {@code %d} format comes first.
+ */
+@Component
+public class TimestampParser {
+
+	static final String DEFAULT_PATTERNS = "yyyy-MM-dd HH:mm:ss,SSS;yyyy-MM-dd HH:mm:ss.SSS;yyyy-MM-dd'T'HH:mm:ss.SSS;yyyy-MM-dd HH:mm:ss";
+
+	private final List<DateTimeFormatter> formatters = new ArrayList<>();
+
+	public TimestampParser(@Value("${logviewer.timestamp.patterns:" + DEFAULT_PATTERNS + "}") String patterns) {
+		for (String pattern : patterns.split(";")) {
+			if (!pattern.trim().isEmpty())
+				formatters.add(DateTimeFormatter.ofPattern(pattern.trim()));
+		}
+	}
+
+	public Optional<LocalDateTime> parse(String line) {
+		int start = !line.isEmpty() && line.charAt(0) == '[' ? 1 : 0;
+		if (line.length() < start + 10 || !Character.isDigit(line.charAt(start)))
+			return Optional.empty();
+		for (DateTimeFormatter formatter : formatters) {
+			try {
+				return Optional.of(LocalDateTime.from(formatter.parse(line, new ParsePosition(start))));
+			}
+			catch (DateTimeException e) {
+				// not this pattern, or it has no time of day; try the next one
+			}
+		}
+		return Optional.empty();
+	}
+}
@@ -0,0 +1,108 @@
+package com.olszewski.michal.tasks;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.HashMap;
+import java.util.Map;
+
+import lombok.Data;
+
+/**
+ * Positions up to which every log file has already been checked for errors, stored in a file so
+ * a restart neither misses nor repeats alarms. A position is only valid for the same file (the
+ * same file key, e.g. inode) and while the file has not shrunk.
+ */
+class AlarmCheckpoints {
+
+	private static final int MAGIC = 0x4c564143;
+
+	private final Path storage;
+	private final Map<Path, Checkpoint> checkpoints = new HashMap<>();
+	private boolean loaded;
+	private boolean changed;
+
+	AlarmCheckpoints(Path storage) {
+		this.storage = storage;
+	}
+
+	/**
+	 * @return false when nothing has been stored yet
+	 */
+	boolean load() throws IOException {
+		loaded = Files.exists(storage);
+		if (!loaded)
+			return false;
+		try (DataInputStream input = new DataInputStream(new BufferedInputStream(Files.newInputStream(storage)))) {
+			if (input.readInt() != MAGIC)
+				throw new IOException("Niepoprawny plik z pozycjami alarmow " + storage);
+			int count = input.readInt();
+			for (int i = 0; i < count; i++) {
+				Path file = Paths.get(input.readUTF());
+				checkpoints.put(file, new Checkpoint(input.readUTF(), input.readLong()));
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * @return the position to continue reading the file from
+	 */
+	long position(Path file, Object fileKey, long size) {
+		Checkpoint checkpoint = checkpoints.get(file);
+		if (checkpoint == null || !checkpoint.getFileKey().equals(String.valueOf(fileKey)) || checkpoint.getOffset() > size)
+			return 0;
+		return checkpoint.getOffset();
+	}
+
+	void update(Path file, Object fileKey, long offset) {
+		Checkpoint checkpoint = new Checkpoint(String.valueOf(fileKey), offset);
+		if (!checkpoint.equals(checkpoints.put(file, checkpoint)))
+			changed = true;
+	}
+
+	void retainAll(Iterable<Path> files) {
+		Map<Path, Checkpoint> retained = new HashMap<>();
+		for (Path file : files) {
+			Checkpoint checkpoint = checkpoints.get(file);
+			if (checkpoint != null)
+				retained.put(file, checkpoint);
+		}
+		if (retained.size() != checkpoints.size()) {
+			checkpoints.clear();
+			checkpoints.putAll(retained);
+			changed = true;
+		}
+	}
+
+	void save() throws IOException {
+		if (!changed && loaded)
+			return;
+		Files.createDirectories(storage.toAbsolutePath().getParent());
+		Path temp = storage.resolveSibling(storage.getFileName() + ".tmp");
+		try (DataOutputStream output = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temp)))) {
+			output.writeInt(MAGIC);
+			output.writeInt(checkpoints.size());
+			for (Map.Entry<Path, Checkpoint> entry : checkpoints.entrySet()) {
+				output.writeUTF(entry.getKey().toString());
+				output.writeUTF(entry.getValue().getFileKey());
+				output.writeLong(entry.getValue().getOffset());
+			}
+		}
+		Files.move(temp, storage, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		loaded = true;
+		changed = false;
+	}
+
+	@Data
+	private static class Checkpoint {
+		private final String fileKey;
+		private final long offset;
+	}
+}
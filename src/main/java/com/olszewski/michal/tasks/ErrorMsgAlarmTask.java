@@ -1,57 +1,166 @@
 package com.olszewski.michal.tasks;
 
-import static java.util.Date.from;
-import static java.util.Optional.of;
-
+import javax.annotation.PreDestroy;
 import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.Path;
 import java.nio.file.Paths;
-import java.time.LocalDate;
-import java.time.ZoneOffset;
-import java.util.List;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
 
-import com.olszewski.michal.domain.SearchResult;
-import com.olszewski.michal.domain.search.SearchModifiedDate;
-import com.olszewski.michal.domain.search.SearchProperties;
 import com.olszewski.michal.events.ErrorLogEventPublisher;
-import com.olszewski.michal.service.FileService;
+import com.olszewski.michal.service.AhoCorasickMatcher;
+import com.olszewski.michal.service.LineScanner;
 import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.io.input.BoundedInputStream;
 
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Component;
 
+/**
+ * Watches log files for lines containing any of {@code logviewer.alarm.patterns} (ignoring case)
+ * and publishes them as {@link com.olszewski.michal.events.ErrorLogEvent}s. Every run reads only
+ * the bytes appended since the previous one, up to the last complete line, and only of the files
+ * that {@link LogFileWatcher} reports as changed. Positions survive
+ * restarts; when none are stored yet, existing content is skipped instead of reported. The same
+ * error (digits ignored) is reported at most once per {@code logviewer.alarm.dedup-window} ms.
+ * Stack trace lines following an error are reported together with it as one message.
+ */
 @Component
 @Slf4j
 public class ErrorMsgAlarmTask {
 
-	private final FileService fileService;
+	private static final int MAX_RECENT_ALARMS = 10000;
+	private static final int MAX_TRACE_LINES = 200;
+
 	private final ErrorLogEventPublisher eventPublisher;
+	private final AhoCorasickMatcher matcher;
+	private final AlarmCheckpoints checkpoints;
+	private final long dedupWindow;
+	private final long rescanInterval;
+	private final LineScanner lineScanner = new LineScanner(Charset.defaultCharset());
+	private final Map<String, Long> recentAlarms = new LinkedHashMap<String, Long>(16, 0.75f, true) {
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<String, Long> eldest) {
+			return size() > MAX_RECENT_ALARMS;
+		}
+	};
+	private LogFileWatcher watcher;
+	private boolean started;
+	private boolean skipExisting;
+	private StringBuilder openAlarm;
+	private int openAlarmLines;
 
 	@Value("${logging.path}")
 	public String loggingPath;
 
-	public ErrorMsgAlarmTask(FileService fileService, ErrorLogEventPublisher eventPublisher) {
-		this.fileService = fileService;
+	public ErrorMsgAlarmTask(ErrorLogEventPublisher eventPublisher,
+							 @Value("${logviewer.alarm.patterns:FileNotFoundException,FileProcessingException,NullPointerException}") String[] patterns,
+							 @Value("${logviewer.alarm.checkpoints:${java.io.tmpdir}/logviewer-alarm.checkpoints}") String checkpointFile,
+							 @Value("${logviewer.alarm.dedup-window:3600000}") long dedupWindow,
+							 @Value("${logviewer.alarm.rescan-interval:60000}") long rescanInterval) {
 		this.eventPublisher = eventPublisher;
+		this.matcher = new AhoCorasickMatcher(Arrays.asList(patterns), true);
+		this.checkpoints = new AlarmCheckpoints(Paths.get(checkpointFile));
+		this.dedupWindow = dedupWindow;
+		this.rescanInterval = rescanInterval;
+	}
+
+	@Scheduled(fixedDelayString = "${logviewer.alarm.interval:5000}")
+	public synchronized void searchExceptions() throws IOException {
+		if (!started) {
+			skipExisting = !checkpoints.load();
+			watcher = new LogFileWatcher(Paths.get(loggingPath), rescanInterval);
+			started = true;
+		}
+		Map<Path, BasicFileAttributes> files = watcher.changed();
+		for (Map.Entry<Path, BasicFileAttributes> file : files.entrySet()) {
+			try {
+				scanAppended(file.getKey(), file.getValue());
+			}
+			catch (IOException e) {
+				log.warn("Blad podczas szukania wyjatkow w pliku " + file.getKey(), e);
+				watcher.retry(file.getKey());
+			}
+		}
+		skipExisting = false;
+		checkpoints.retainAll(watcher.files());
+		checkpoints.save();
+	}
+
+	@PreDestroy
+	public synchronized void shutdown() throws IOException {
+		if (watcher != null)
+			watcher.close();
 	}
 
-	@Scheduled(cron = "0 30 7 * * *")
-	public void searchExceptions() throws IOException {
-		log.info("Szukam w logach jakis wyjatków");
-		SearchProperties searchProperties = new SearchProperties();
-		searchProperties.setRecursive(true);
-		SearchModifiedDate modifiedDate = new SearchModifiedDate();
-		modifiedDate.setDateFrom(of(from(LocalDate.now().minusDays(1).atStartOfDay().toInstant(ZoneOffset.UTC))));
-		modifiedDate.setDateTo(of(from(LocalDate.now().plusDays(1).atStartOfDay().toInstant(ZoneOffset.UTC))));
-		searchProperties.setSearchModifiedDate(modifiedDate);
-		searchProperties.setFileContent("");
-		List<SearchResult> linesFromFiles = fileService.getLinesFromFiles(Paths.get(loggingPath), searchProperties);
-		linesFromFiles.forEach(v -> v.getResult().stream().filter(line ->
-				line.toLowerCase().contains("FileNotFoundException".toLowerCase()) ||
-						line.toLowerCase().contains("FileProcessingException".toLowerCase()) ||
-						line.toLowerCase().contains("NullPointerException".toLowerCase())
-		).forEach(eventPublisher::doStuffAndPublish));
+	private void scanAppended(Path file, BasicFileAttributes attributes) throws IOException {
+		long size = attributes.size();
+		long position = skipExisting ? size : checkpoints.position(file, attributes.fileKey(), size);
+		if (position == size) {
+			checkpoints.update(file, attributes.fileKey(), size);
+			return;
+		}
+		try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+			ByteBuffer last = ByteBuffer.allocate(1);
+			boolean endsWithNewLine = channel.read(last, size - 1) == 1 && last.get(0) == '\n';
+			String[] pending = new String[1];
+			long[] pendingOffset = {size};
+			channel.position(position);
+			InputStream input = new BoundedInputStream(Channels.newInputStream(channel), size - position);
+			lineScanner.scan(input, 1, position, (lineNumber, offset, line) -> {
+				if (pending[0] != null)
+					check(file, pending[0]);
+				pending[0] = line;
+				pendingOffset[0] = offset;
+				return true;
+			});
+			long end = size;
+			if (pending[0] != null && endsWithNewLine)
+				check(file, pending[0]);
+			else if (pending[0] != null)
+				end = pendingOffset[0];
+			checkpoints.update(file, attributes.fileKey(), end);
+		}
+		finally {
+			publishOpenAlarm();
+		}
+	}
 
+	private void check(Path file, String line) {
+		if (openAlarm != null && isStackTraceLine(line)) {
+			if (openAlarmLines++ < MAX_TRACE_LINES)
+				openAlarm.append('\n').append(line);
+			return;
+		}
+		publishOpenAlarm();
+		matcher.find(line).ifPresent(pattern -> {
+			String key = pattern + " " + line.replaceAll("\\d+", "#");
+			long now = System.currentTimeMillis();
+			Long reported = recentAlarms.get(key);
+			if (reported != null && now - reported < dedupWindow)
+				return;
+			recentAlarms.put(key, now);
+			openAlarm = new StringBuilder().append(file).append(": ").append(line);
+			openAlarmLines = 0;
+		});
 	}
 
+	private void publishOpenAlarm() {
+		if (openAlarm != null)
+			eventPublisher.doStuffAndPublish(openAlarm.toString());
+		openAlarm = null;
+	}
+
+	private static boolean isStackTraceLine(String line) {
+		return !line.isEmpty() && Character.isWhitespace(line.charAt(0)) || line.startsWith("Caused by:");
+	}
 }
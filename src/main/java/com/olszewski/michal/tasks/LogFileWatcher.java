@@ -0,0 +1,180 @@
+package com.olszewski.michal.tasks;
+
+import java.io.IOException;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+
+import com.olszewski.michal.domain.FileType;
+import com.olszewski.michal.service.FileService;
+import lombok.Data;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Finds the log files under a directory that changed since the previous call, without walking
+ * the whole tree every time. Directories are registered with a {@link WatchService} and only the
+ * files it reports as created or modified have their attributes read again; a file counts as
+ * changed when its size, modification time or file key differ from the last ones seen. The tree
+ * is walked again only on the first call, when events were lost, and every
+ * {@code rescanInterval} milliseconds for filesystems (e.g. NFS) that do not report changes.
+ */
+@Slf4j
+class LogFileWatcher implements AutoCloseable {
+
+	private final Path root;
+	private final long rescanInterval;
+	private final Map<Path, FileState> files = new HashMap<>();
+	private final Set<Path> dirty = new LinkedHashSet<>();
+	private WatchService watchService;
+	private long rescannedAt;
+	private boolean scanned;
+
+	LogFileWatcher(Path root, long rescanInterval) {
+		this.root = root.toAbsolutePath().normalize();
+		this.rescanInterval = rescanInterval;
+		try {
+			watchService = this.root.getFileSystem().newWatchService();
+		}
+		catch (IOException | UnsupportedOperationException e) {
+			log.warn("Brak powiadomien o zmianach w katalogu " + this.root + ", bedzie przegladany co " + rescanInterval + " ms", e);
+		}
+	}
+
+	/**
+	 * @return the files created or changed since the previous call, with their current attributes
+	 */
+	Map<Path, BasicFileAttributes> changed() throws IOException {
+		if (!scanned || System.currentTimeMillis() - rescannedAt >= rescanInterval || !poll())
+			rescan();
+		Map<Path, BasicFileAttributes> changed = new LinkedHashMap<>();
+		for (Path file : dirty) {
+			BasicFileAttributes attributes;
+			try {
+				attributes = Files.readAttributes(file, BasicFileAttributes.class);
+			}
+			catch (IOException e) {
+				files.remove(file);
+				continue;
+			}
+			if (!attributes.isRegularFile() || FileService.getFileType(file) != FileType.FILE)
+				continue;
+			FileState state = new FileState(attributes.size(), attributes.lastModifiedTime(), attributes.fileKey());
+			if (!state.equals(files.put(file, state)))
+				changed.put(file, attributes);
+		}
+		dirty.clear();
+		return changed;
+	}
+
+	/**
+	 * @return all log files seen under the directory
+	 */
+	Set<Path> files() {
+		return files.keySet();
+	}
+
+	/**
+	 * Reports the file as changed again on the next call, e.g. after it could not be read.
+	 */
+	void retry(Path file) {
+		files.remove(file);
+		dirty.add(file);
+	}
+
+	@Override
+	public void close() throws IOException {
+		if (watchService != null)
+			watchService.close();
+	}
+
+	/**
+	 * Takes the pending events.
+	 *
+	 * @return false when events were lost and the tree has to be walked again
+	 */
+	private boolean poll() throws IOException {
+		if (watchService == null)
+			return true;
+		boolean complete = true;
+		WatchKey key;
+		while ((key = watchService.poll()) != null) {
+			Path directory = (Path) key.watchable();
+			for (WatchEvent<?> event : key.pollEvents()) {
+				if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+					complete = false;
+					continue;
+				}
+				Path child = directory.resolve((Path) event.context());
+				if (event.kind() == StandardWatchEventKinds.ENTRY_DELETE)
+					files.keySet().removeIf(file -> file.startsWith(child));
+				else if (event.kind() == StandardWatchEventKinds.ENTRY_CREATE && Files.isDirectory(child))
+					walk(child);
+				else
+					dirty.add(child);
+			}
+			key.reset();
+		}
+		return complete;
+	}
+
+	private void rescan() throws IOException {
+		dirty.clear();
+		walk(root);
+		files.keySet().retainAll(dirty);
+		rescannedAt = System.currentTimeMillis();
+		scanned = true;
+	}
+
+	private void walk(Path start) throws IOException {
+		Files.walkFileTree(start, new SimpleFileVisitor<Path>() {
+			@Override
+			public FileVisitResult preVisitDirectory(Path directory, BasicFileAttributes attrs) {
+				register(directory);
+				return FileVisitResult.CONTINUE;
+			}
+
+			@Override
+			public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+				if (attrs.isRegularFile())
+					dirty.add(file);
+				return FileVisitResult.CONTINUE;
+			}
+
+			@Override
+			public FileVisitResult visitFileFailed(Path file, IOException exc) {
+				return FileVisitResult.CONTINUE;
+			}
+		});
+	}
+
+	private void register(Path directory) {
+		if (watchService == null)
+			return;
+		try {
+			directory.register(watchService, StandardWatchEventKinds.ENTRY_CREATE,
+					StandardWatchEventKinds.ENTRY_DELETE, StandardWatchEventKinds.ENTRY_MODIFY);
+		}
+		catch (IOException e) {
+			log.debug("Brak powiadomien o zmianach w katalogu " + directory, e);
+		}
+	}
+
+	@Data
+	private static class FileState {
+		private final long size;
+		private final FileTime modified;
+		private final Object fileKey;
+	}
+}
@@ -0,0 +1,53 @@
+package com.olszewski.michal.events;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.atLeastOnce;
+import static org.mockito.Mockito.verify;
+import static org.mockito.MockitoAnnotations.initMocks;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.platform.runner.JUnitPlatform;
+import org.junit.runner.RunWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+
+import org.springframework.context.ApplicationEventPublisher;
+
+@RunWith(JUnitPlatform.class)
+public class ErrorLogEventPublisherTest {
+
+	@Mock
+	private ApplicationEventPublisher applicationEventPublisher;
+
+	@BeforeEach
+	public void setUp() {
+		initMocks(this);
+	}
+
+	@org.junit.jupiter.api.Test
+	public void shouldDeliverMessagesInBatchesAndFlushOnShutdown() throws InterruptedException {
+		//given
+		ErrorLogEventPublisher publisher = new ErrorLogEventPublisher(applicationEventPublisher, 100, 3, 10000,
+				ErrorLogEventPublisher.OverflowPolicy.DROP);
+		//when
+		for (int i = 0; i < 7; i++) {
+			publisher.doStuffAndPublish("error " + i);
+		}
+		publisher.shutdown();
+		publisher.doStuffAndPublish("too late");
+		//then
+		ArgumentCaptor<ErrorLogEvent> events = ArgumentCaptor.forClass(ErrorLogEvent.class);
+		verify(applicationEventPublisher, atLeastOnce()).publishEvent(events.capture());
+		List<String> delivered = new ArrayList<>();
+		events.getAllValues().forEach(event -> {
+			assertThat(event.getMessages().size()).isLessThanOrEqualTo(3);
+			delivered.addAll(event.getMessages());
+		});
+		assertThat(delivered).containsExactly("error 0", "error 1", "error 2", "error 3", "error 4", "error 5", "error 6");
+		assertThat(publisher.getPublished()).isEqualTo(7);
+		assertThat(publisher.getDropped()).isEqualTo(1);
+	}
+}
@@ -0,0 +1,114 @@
+package com.olszewski.michal.index;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import com.olszewski.michal.service.TestFixtures;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.platform.runner.JUnitPlatform;
+import org.junit.runner.RunWith;
+
+@RunWith(JUnitPlatform.class)
+public class ContentIndexServiceTest {
+
+	private ContentIndexService indexService;
+	private Path logFile;
+	private final TestFixtures fixtures = new TestFixtures();
+
+	@BeforeEach
+	public void setUp() throws IOException {
+		indexService = new ContentIndexService(true, fixtures.directory().toString());
+		logFile = fixtures.file("spring.log");
+		Files.write(logFile, Arrays.asList("INFO SpringApplication started", "ERROR NullPointerException at 42", "INFO done"), Charset.defaultCharset());
+	}
+
+	@AfterEach
+	public void tearDown() {
+		fixtures.close();
+	}
+
+	@org.junit.jupiter.api.Test
+	public void shouldAnswerSubstringQueriesFromIndex() throws IOException {
+		//given
+		indexService.update(logFile);
+		//when
+		List<String> result = search("Pointer");
+		//then
+		assertThat(result).containsExactly("2:ERROR NullPointerException at 42");
+	}
+
+	@org.junit.jupiter.api.Test
+	public void shouldScanLinesAppendedAfterIndexing() throws IOException {
+		//given
+		indexService.update(logFile);
+		Files.write(logFile, Arrays.asList("ERROR another NullPointerException"), Charset.defaultCharset(), StandardOpenOption.APPEND);
+		//when
+		List<String> beforeUpdate = search("NullPointer");
+		indexService.update(logFile);
+		List<String> afterUpdate = search("NullPointer");
+		//then
+		assertThat(beforeUpdate).containsExactly("2:ERROR NullPointerException at 42", "4:ERROR another NullPointerException");
+		assertThat(afterUpdate).isEqualTo(beforeUpdate);
+	}
+
+	@org.junit.jupiter.api.Test
+	public void shouldFallBackToScanWhenFileWasRotated() throws IOException {
+		//given
+		indexService.update(logFile);
+		Files.write(logFile, Arrays.asList("WARN rotated"), Charset.defaultCharset());
+		//when
+		boolean answered = indexService.search(logFile, "rotated", (lineNumber, offset, line) -> true);
+		//then
+		assertThat(answered).isFalse();
+	}
+
+	@org.junit.jupiter.api.Test
+	public void shouldFallBackToScanForTermsWithoutLetters() throws IOException {
+		indexService.update(logFile);
+		assertThat(indexService.search(logFile, "42", (lineNumber, offset, line) -> true)).isFalse();
+	}
+
+	@org.junit.jupiter.api.Test
+	public void shouldLookUpWholeTokensPrefixesAndSuffixesLikeSubstringSearch() throws IOException {
+		//given
+		List<String> lines = Arrays.asList("INFO SpringApplication started", "ERROR NullPointerException at 42",
+				"INFO done", "WARN Exception: restarted at startup", "DEBUG Pointer atom", "INFO stat started-at", "WARN Null");
+		Files.write(logFile, lines, Charset.defaultCharset());
+		indexService.update(logFile);
+		for (String term : Arrays.asList("Pointer", "Exception at", " started", "Exception:", "NullPointer", " at ",
+				"Null", " Null", "at", "start", "ed-at", " Exception", "Application st", "WARN Null")) {
+			//when
+			List<String> result = search(term);
+			//then
+			List<String> expected = new ArrayList<>();
+			for (int i = 0; i < lines.size(); i++) {
+				if (lines.get(i).contains(term))
+					expected.add((i + 1) + ":" + lines.get(i));
+			}
+			assertThat(result).as(term).isEqualTo(expected);
+		}
+	}
+
+	@org.junit.jupiter.api.Test
+	public void shouldMarkQueryPiecesBoundedBySeparators() {
+		assertThat(Tokenizer.queryPieces("Pointer")).containsExactly(new Tokenizer.Piece("pointer", false, false));
+		assertThat(Tokenizer.queryPieces("Null Pointer:x")).containsExactly(
+				new Tokenizer.Piece("null", false, true), new Tokenizer.Piece("pointer", true, true));
+		assertThat(Tokenizer.queryPieces(" at")).containsExactly(new Tokenizer.Piece("at", true, false));
+	}
+
+	private List<String> search(String term) throws IOException {
+		List<String> result = new ArrayList<>();
+		assertThat(indexService.search(logFile, term, (lineNumber, offset, line) -> result.add(lineNumber + ":" + line))).isTrue();
+		return result;
+	}
+}
@@ -0,0 +1,106 @@
+package com.olszewski.michal.query;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.util.Optional;
+
+import com.olszewski.michal.exceptions.InvalidQueryException;
+import org.junit.platform.runner.JUnitPlatform;
+import org.junit.runner.RunWith;
+
+@RunWith(JUnitPlatform.class)
+public class QueryTest {
+
+	@org.junit.jupiter.api.Test
+	public void shouldCombineTermsWithBooleanOperators() {
+		//given
+		Query query = Query.compile("ERROR (timeout OR \"connection reset\") NOT retry", false);
+		//then
+		assertThat(query.matches("ERROR timeout while reading")).isTrue();
+		assertThat(query.matches("ERROR connection reset by peer")).isTrue();
+		assertThat(query.matches("ERROR connection closed")).isFalse();
+		assertThat(query.matches("ERROR timeout, retry 1")).isFalse();
+		assertThat(query.matches("WARN timeout")).isFalse();
+		assertThat(query.getRequiredLiteral()).isEqualTo(Optional.of("ERROR"));
+	}
+
+	@org.junit.jupiter.api.Test
+	public void shouldSearchPlainTextAsOneSubstring() {
+		//given
+		Query words = Query.compile("connection reset", false);
+		Query parenthesis = Query.compile("init(", false);
+		Query path = Query.compile("/var/log", false);
+		Query operatorsInLowerCase = Query.compile("error and retry", false);
+		//then
+		assertThat(words.matches("ERROR connection reset by peer")).isTrue();
+		assertThat(words.matches("reset of connection")).isFalse();
+		assertThat(words.getRequiredLiteral()).isEqualTo(Optional.of("connection reset"));
+		assertThat(parenthesis.matches("at Foo.init(Foo.java:12)")).isTrue();
+		assertThat(path.matches("reading /var/log/app.log")).isTrue();
+		assertThat(path.matches("var log")).isFalse();
+		assertThat(operatorsInLowerCase.matches("error and retry 1")).isTrue();
+		assertThat(operatorsInLowerCase.matches("error, retry 1")).isFalse();
+	}
+
+	@org.junit.jupiter.api.Test
+	public void shouldUseQueryLanguageOnlyWithExplicitSyntax() {
+		//given
+		Query and = Query.compile("connection AND reset", false);
+		Query phrase = Query.compile("\"connection reset\"", false);
+		Query regex = Query.compile("/var.log/", false);
+		//then
+		assertThat(and.matches("reset of connection")).isTrue();
+		assertThat(phrase.matches("reset of connection")).isFalse();
+		assertThat(phrase.matches("connection reset by peer")).isTrue();
+		assertThat(regex.matches("var log")).isTrue();
+	}
+
+	@org.junit.jupiter.api.Test
+	public void shouldMatchRegexGatedByItsLiteral() {
+		//given
+		Query query = Query.compile("/took \\d{4,} ms/", false);
+		//then
+		assertThat(query.matches("request took 12345 ms")).isTrue();
+		assertThat(query.matches("request took 12 ms")).isFalse();
+		assertThat(query.getRequiredLiteral()).isEqualTo(Optional.of("took "));
+	}
+
+	@org.junit.jupiter.api.Test
+	public void shouldIgnoreCase() {
+		//given
+		Query query = Query.compile("error AND /USER=\\w+/", true);
+		//then
+		assertThat(query.matches("Error for user=admin")).isTrue();
+		assertThat(query.getRequiredLiteral()).isEqualTo(Optional.of("error"));
+	}
+
+	@org.junit.jupiter.api.Test
+	public void shouldExtractOnlyRequiredRegexLiterals() {
+		assertThat(QueryParser.requiredLiteral("colou?r")).isEqualTo(Optional.of("colo"));
+		assertThat(QueryParser.requiredLiteral("(abcdef)?xy")).isEqualTo(Optional.of("xy"));
+		assertThat(QueryParser.requiredLiteral("a\\.b[0-9]+cd")).isEqualTo(Optional.of("a.b"));
+		assertThat(QueryParser.requiredLiteral("foo|bar")).isEqualTo(Optional.empty());
+	}
+
+	@org.junit.jupiter.api.Test
+	public void shouldNotTakeEscapeOperandsForLiterals() {
+		assertThat(QueryParser.requiredLiteral("\\x41BC")).isEqualTo(Optional.of("BC"));
+		assertThat(QueryParser.requiredLiteral("\\x{41}BC")).isEqualTo(Optional.of("BC"));
+		assertThat(QueryParser.requiredLiteral("\\u0041BC")).isEqualTo(Optional.of("BC"));
+		assertThat(QueryParser.requiredLiteral("\\0101BC")).isEqualTo(Optional.of("BC"));
+		assertThat(QueryParser.requiredLiteral("\\cABC")).isEqualTo(Optional.of("BC"));
+		assertThat(QueryParser.requiredLiteral("x\\k<name>cdef")).isEqualTo(Optional.of("cdef"));
+		assertThat(QueryParser.requiredLiteral("\\p{Lu}ERROR")).isEqualTo(Optional.of("ERROR"));
+		assertThat(QueryParser.requiredLiteral("\\pLERROR")).isEqualTo(Optional.of("ERROR"));
+		assertThat(QueryParser.requiredLiteral("\\x4")).isEqualTo(Optional.empty());
+		assertThat(Query.compile("/\\x41BC/", false).matches("id=ABC")).isTrue();
+	}
+
+	@org.junit.jupiter.api.Test
+	public void shouldRejectMalformedQueries() {
+		assertThrows(InvalidQueryException.class, () -> Query.compile("(ERROR OR WARN", false));
+		assertThrows(InvalidQueryException.class, () -> Query.compile("ERROR AND", false));
+		assertThrows(InvalidQueryException.class, () -> Query.compile("/[a-/", false));
+	}
+}
@@ -0,0 +1,23 @@
+package com.olszewski.michal.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.Arrays;
+import java.util.Optional;
+
+import org.junit.platform.runner.JUnitPlatform;
+import org.junit.runner.RunWith;
+
+@RunWith(JUnitPlatform.class)
+public class AhoCorasickMatcherTest {
+
+	@org.junit.jupiter.api.Test
+	public void shouldFindOverlappingPatternsInOnePass() {
+		//given
+		AhoCorasickMatcher matcher = new AhoCorasickMatcher(Arrays.asList("he", "she", "hers", "Exception"), true);
+		//then
+		assertThat(matcher.find("ushers")).isEqualTo(Optional.of("she"));
+		assertThat(matcher.find("java.lang.NullPointerEXCEPTION")).isEqualTo(Optional.of("Exception"));
+		assertThat(matcher.find("nothing to see")).isEqualTo(Optional.empty());
+	}
+}
@@ -0,0 +1,65 @@
+package com.olszewski.michal.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import com.olszewski.michal.domain.FileEntry;
+import com.olszewski.michal.metrics.LogViewerMetrics;
+import org.apache.commons.io.IOUtils;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.platform.runner.JUnitPlatform;
+import org.junit.runner.RunWith;
+
+@RunWith(JUnitPlatform.class)
+public class ArchiveCatalogTest {
+
+	private final TestFixtures fixtures = new TestFixtures();
+
+	@AfterEach
+	public void tearDown() {
+		fixtures.close();
+	}
+
+	@org.junit.jupiter.api.Test
+	public void shouldReplaceCachedEntriesOfRewrittenArchive() throws IOException {
+		//given
+		LogViewerMetrics metrics = new LogViewerMetrics();
+		ArchiveCatalog catalog = new ArchiveCatalog(metrics);
+		Path archive = fixtures.directory().resolve("logs.zip");
+		writeZip(archive, "old.log", "old");
+		catalog.listEntries(archive);
+		InputStream open = catalog.openEntry(archive, "old.log");
+		//when
+		writeZip(archive, "new.log", "rotated content");
+		Files.setLastModifiedTime(archive, FileTime.fromMillis(System.currentTimeMillis() + 10000));
+		String content;
+		try (InputStream input = catalog.openEntry(archive, "new.log")) {
+			content = IOUtils.toString(input, "UTF-8");
+		}
+		catalog.listEntries(archive);
+		//then
+		assertThat(catalog.listEntries(archive)).extracting(FileEntry::getFilename).containsExactly("new.log");
+		assertThat(content).isEqualTo("rotated content");
+		assertThat(IOUtils.toString(open, "UTF-8")).isEqualTo("old");
+		assertThat(metrics.snapshot().get("archive.cache-misses")).isEqualTo(2L);
+		open.close();
+	}
+
+	private static void writeZip(Path archive, String entry, String content) throws IOException {
+		Path written = Files.createTempFile(archive.getParent(), "logs", ".tmp");
+		try (ZipOutputStream zip = new ZipOutputStream(Files.newOutputStream(written))) {
+			zip.putNextEntry(new ZipEntry(entry));
+			zip.write(content.getBytes("UTF-8"));
+			zip.closeEntry();
+		}
+		Files.move(written, archive, StandardCopyOption.REPLACE_EXISTING);
+	}
+}
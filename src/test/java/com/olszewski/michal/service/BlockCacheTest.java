@@ -0,0 +1,154 @@
+package com.olszewski.michal.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.commons.io.IOUtils;
+import org.junit.platform.runner.JUnitPlatform;
+import org.junit.runner.RunWith;
+
+@RunWith(JUnitPlatform.class)
+public class BlockCacheTest {
+
+	private final byte[] content = new byte[5 * BlockCache.BLOCK_SIZE / 2];
+	private final AtomicInteger opened = new AtomicInteger();
+
+	private final BlockCache.Source source = offset -> {
+		opened.incrementAndGet();
+		InputStream input = new ByteArrayInputStream(content);
+		IOUtils.skip(input, offset);
+		return input;
+	};
+
+	@org.junit.jupiter.api.Test
+	public void shouldServeRepeatedReadsFromCache() throws IOException {
+		//given
+		new Random(1).nextBytes(content);
+		BlockCache cache = new BlockCache(4 * BlockCache.BLOCK_SIZE);
+		//when
+		byte[] first = read(cache, 1, 0);
+		byte[] second = read(cache, 1, 0);
+		byte[] fromOffset = read(cache, 1, 100000);
+		byte[] modified = read(cache, 2, 0);
+		//then
+		assertThat(first).isEqualTo(content);
+		assertThat(second).isEqualTo(content);
+		assertThat(fromOffset).isEqualTo(Arrays.copyOfRange(content, 100000, content.length));
+		assertThat(modified).isEqualTo(content);
+		assertThat(opened.get()).isEqualTo(2);
+		assertThat(cache.getHits()).isEqualTo(5);
+		assertThat(cache.getMisses()).isEqualTo(6);
+	}
+
+	@org.junit.jupiter.api.Test
+	public void shouldEvictLeastRecentlyUsedBlocksAndReuseTheirArrays() throws IOException {
+		//given
+		new Random(2).nextBytes(content);
+		BlockCache cache = new BlockCache(2 * BlockCache.BLOCK_SIZE);
+		//when
+		byte[] first = read(cache, 1, 0);
+		byte[] second = read(cache, 1, 0);
+		//then
+		assertThat(first).isEqualTo(content);
+		assertThat(second).isEqualTo(content);
+		assertThat(cache.getBlocks()).isEqualTo(2);
+		assertThat(cache.getEvictions()).isGreaterThan(0);
+	}
+
+	@org.junit.jupiter.api.Test
+	public void shouldNeverReturnBytesOfAnotherFileWhileBlocksAreEvicted() throws Exception {
+		//given
+		BlockCache cache = new BlockCache(2 * BlockCache.BLOCK_SIZE);
+		int files = 4;
+		byte[][] contents = new byte[files][5 * BlockCache.BLOCK_SIZE / 2];
+		for (int i = 0; i < files; i++) {
+			Arrays.fill(contents[i], (byte) i);
+		}
+		ExecutorService executor = Executors.newFixedThreadPool(files * 2);
+		List<Future<Boolean>> results = new ArrayList<>();
+		//when
+		for (int t = 0; t < files * 2; t++) {
+			int file = t % files;
+			results.add(executor.submit(() -> {
+				for (int i = 0; i < 200; i++) {
+					try (InputStream input = cache.open(Paths.get("app" + file + ".log"), "", 1, contents[file].length, 0, offset -> {
+						InputStream stream = new ByteArrayInputStream(contents[file]);
+						IOUtils.skip(stream, offset);
+						return stream;
+					})) {
+						if (!Arrays.equals(IOUtils.toByteArray(input), contents[file]))
+							return false;
+					}
+				}
+				return true;
+			}));
+		}
+		executor.shutdown();
+		//then
+		for (Future<Boolean> result : results) {
+			assertThat(result.get(60, TimeUnit.SECONDS)).isTrue();
+		}
+		assertThat(cache.getEvictions()).isGreaterThan(0);
+	}
+
+	@org.junit.jupiter.api.Test
+	public void shouldNotServeShortLastBlockOfFileThatGrewWithinSameModificationTime() throws IOException {
+		//given
+		byte[] grown = new byte[content.length + 1000];
+		new Random(3).nextBytes(grown);
+		System.arraycopy(grown, 0, content, 0, content.length);
+		BlockCache cache = new BlockCache(4 * BlockCache.BLOCK_SIZE);
+		byte[] before = read(cache, 1, 0);
+		//when
+		byte[] after;
+		try (InputStream input = cache.open(Paths.get("app.log"), "", 1, grown.length, 0, offset -> {
+			InputStream stream = new ByteArrayInputStream(grown);
+			IOUtils.skip(stream, offset);
+			return stream;
+		})) {
+			after = IOUtils.toByteArray(input);
+		}
+		//then
+		assertThat(before).isEqualTo(content);
+		assertThat(after).isEqualTo(grown);
+	}
+
+	@org.junit.jupiter.api.Test
+	public void shouldSkipOpenSourceForwardOverCachedBlocks() throws IOException {
+		//given
+		new Random(4).nextBytes(content);
+		BlockCache cache = new BlockCache(4 * BlockCache.BLOCK_SIZE);
+		readBlock(cache, BlockCache.BLOCK_SIZE);
+		opened.set(0);
+		//when
+		byte[] whole = read(cache, 1, 0);
+		//then
+		assertThat(whole).isEqualTo(content);
+		assertThat(opened.get()).isEqualTo(1);
+	}
+
+	private void readBlock(BlockCache cache, long offset) throws IOException {
+		try (InputStream input = cache.open(Paths.get("app.log"), "", 1, content.length, offset, source)) {
+			IOUtils.readFully(input, new byte[BlockCache.BLOCK_SIZE / 2]);
+		}
+	}
+
+	private byte[] read(BlockCache cache, long lastModified, long offset) throws IOException {
+		try (InputStream input = cache.open(Paths.get("app.log"), "", lastModified, content.length, offset, source)) {
+			return IOUtils.toByteArray(input);
+		}
+	}
+}
@@ -0,0 +1,148 @@
+package com.olszewski.michal.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.olszewski.michal.builders.FileEntryBuilder;
+import com.olszewski.michal.domain.FileEntry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.platform.runner.JUnitPlatform;
+import org.junit.runner.RunWith;
+
+@RunWith(JUnitPlatform.class)
+public class DirectoryListingCacheTest {
+
+	private final TestFixtures fixtures = new TestFixtures();
+
+	@AfterEach
+	public void tearDown() {
+		fixtures.close();
+	}
+
+	@org.junit.jupiter.api.Test
+	public void shouldServeRepeatedListingsFromMemoryUntilInvalidated() throws IOException {
+		//given
+		DirectoryListingCache cache = new DirectoryListingCache(60000);
+		Path directory = fixtures.directory();
+		AtomicInteger loads = new AtomicInteger();
+		DirectoryListingCache.Loader loader = path -> {
+			loads.incrementAndGet();
+			return Collections.singletonList(new FileEntryBuilder().withName("a.log").build());
+		};
+		//when
+		cache.list(directory, loader);
+		cache.list(directory, loader);
+		cache.invalidate(directory);
+		cache.list(directory, loader);
+		//then
+		assertThat(loads.get()).isEqualTo(2);
+		cache.shutdown();
+	}
+
+	@org.junit.jupiter.api.Test
+	public void shouldKeepListingOfDirectoryLoadedWhileAnotherOneIsInvalidated() throws IOException {
+		//given
+		DirectoryListingCache cache = new DirectoryListingCache(60000);
+		Path changed = fixtures.directory();
+		Path loaded = fixtures.directory();
+		AtomicInteger loads = new AtomicInteger();
+		DirectoryListingCache.Loader loader = path -> {
+			loads.incrementAndGet();
+			cache.invalidate(changed);
+			return Collections.singletonList(new FileEntryBuilder().withName("a.log").build());
+		};
+		//when
+		cache.list(loaded, loader);
+		cache.list(loaded, loader);
+		//then
+		assertThat(loads.get()).isEqualTo(1);
+		cache.shutdown();
+	}
+
+	@org.junit.jupiter.api.Test
+	public void shouldNotCacheListingInvalidatedWhileLoading() throws IOException {
+		//given
+		DirectoryListingCache cache = new DirectoryListingCache(60000);
+		Path directory = fixtures.directory();
+		AtomicInteger loads = new AtomicInteger();
+		DirectoryListingCache.Loader loader = path -> {
+			if (loads.incrementAndGet() == 1)
+				cache.invalidate(directory);
+			return Collections.singletonList(new FileEntryBuilder().withName("a.log").build());
+		};
+		//when
+		cache.list(directory, loader);
+		cache.list(directory, loader);
+		cache.list(directory, loader);
+		//then
+		assertThat(loads.get()).isEqualTo(2);
+		cache.shutdown();
+	}
+
+	@org.junit.jupiter.api.Test
+	public void shouldRefreshModifiedFileWithoutReloadingListing() throws Exception {
+		//given
+		DirectoryListingCache cache = new DirectoryListingCache(60000);
+		Path directory = fixtures.directory();
+		Path file = Files.write(directory.resolve("app.log"), Arrays.asList("INFO start"));
+		AtomicInteger loads = new AtomicInteger();
+		DirectoryListingCache.Loader loader = path -> {
+			loads.incrementAndGet();
+			return listDirectory(path);
+		};
+		cache.list(directory, loader);
+		//when
+		Files.write(file, Arrays.asList("ERROR failure"), StandardOpenOption.APPEND);
+		long size = Files.size(file);
+		List<FileEntry> listed = cache.list(directory, loader);
+		for (int i = 0; i < 500 && listed.get(0).getSize() != size; i++) {
+			Thread.sleep(10);
+			listed = cache.list(directory, loader);
+		}
+		//then
+		assertThat(listed.get(0).getSize()).isEqualTo(size);
+		assertThat(loads.get()).isEqualTo(1);
+		cache.shutdown();
+	}
+
+	@org.junit.jupiter.api.Test
+	public void shouldReloadListingWhenFileIsCreated() throws Exception {
+		//given
+		DirectoryListingCache cache = new DirectoryListingCache(60000);
+		Path directory = fixtures.directory();
+		Files.write(directory.resolve("app.log"), Arrays.asList("INFO start"));
+		DirectoryListingCache.Loader loader = DirectoryListingCacheTest::listDirectory;
+		cache.list(directory, loader);
+		//when
+		Files.write(directory.resolve("app.1.log"), Arrays.asList("INFO rotated"));
+		List<FileEntry> listed = cache.list(directory, loader);
+		for (int i = 0; i < 500 && listed.size() != 2; i++) {
+			Thread.sleep(10);
+			listed = cache.list(directory, loader);
+		}
+		//then
+		assertThat(listed).hasSize(2);
+		cache.shutdown();
+	}
+
+	private static List<FileEntry> listDirectory(Path directory) throws IOException {
+		List<FileEntry> entries = new ArrayList<>();
+		try (DirectoryStream<Path> paths = Files.newDirectoryStream(directory)) {
+			for (Path path : paths) {
+				entries.add(FileService.createFileEntry(path, Files.readAttributes(path, BasicFileAttributes.class)));
+			}
+		}
+		return entries;
+	}
+}
@@ -5,45 +5,63 @@ import static java.util.Date.from;
 import static java.util.Optional.of;
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.junit.jupiter.api.Assertions.assertTrue;
-import static org.mockito.MockitoAnnotations.initMocks;
 
-import javax.servlet.http.HttpSession;
 import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
 import java.time.Instant;
 import java.time.LocalDate;
+import java.time.LocalDateTime;
 import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Date;
 import java.util.List;
 import java.util.Optional;
+import java.util.zip.GZIPOutputStream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
 
 import com.olszewski.michal.builders.FileEntryBuilder;
 import com.olszewski.michal.domain.FileEntry;
+import com.olszewski.michal.domain.FilePage;
 import com.olszewski.michal.domain.FileType;
+import com.olszewski.michal.domain.SearchHit;
+import com.olszewski.michal.domain.SearchLine;
 import com.olszewski.michal.domain.SearchResult;
+import com.olszewski.michal.domain.SearchSummary;
 import com.olszewski.michal.domain.SortMethod;
 import com.olszewski.michal.domain.search.SearchFileName;
 import com.olszewski.michal.domain.search.SearchModifiedDate;
 import com.olszewski.michal.domain.search.SearchProperties;
+import com.olszewski.michal.domain.search.SearchTimeRange;
 import org.apache.commons.compress.archivers.ArchiveException;
+import org.apache.commons.compress.archivers.sevenz.SevenZArchiveEntry;
+import org.apache.commons.compress.archivers.sevenz.SevenZOutputFile;
+import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.DisplayName;
 import org.junit.platform.runner.JUnitPlatform;
 import org.junit.runner.RunWith;
-import org.mockito.Mock;
 
 @RunWith(JUnitPlatform.class)
 public class FileServiceTest {
 
-	@Mock
-	private HttpSession httpSession;
-
 	FileService fileService;
+	private final TestFixtures fixtures = new TestFixtures();
 
 	@BeforeEach
 	public void setUp() throws Exception {
-		initMocks(this);
-		fileService = new FileService(httpSession);
+		fileService = TestFixtures.fileService(2, 1024 * 1024);
+	}
+
+	@AfterEach
+	public void tearDown() {
+		fixtures.close();
 	}
 
 	@org.junit.jupiter.api.Test
@@ -198,6 +216,220 @@ public class FileServiceTest {
 		System.out.println(linesFromFiles);
 	}
 
+	@org.junit.jupiter.api.Test
+	public void shouldReturnParallelSearchResultsInFileOrder() throws IOException {
+		Path directory = fixtures.directory();
+		for (int i = 0; i < 20; i++) {
+			Files.write(directory.resolve("file" + i + ".log"), Arrays.asList("INFO start", "ERROR " + i, "INFO stop"));
+		}
+		SearchProperties searchProperties = new SearchProperties();
+		searchProperties.setFileContent("ERROR");
+		List<FileEntry> entries = fileService.getAllFileEntries(directory, searchProperties);
+		List<SearchResult> linesFromFiles = fileService.getLinesFromFiles(directory, searchProperties);
+		assertThat(linesFromFiles).extracting(SearchResult::getEntry).containsExactlyElementsOf(entries);
+		assertThat(linesFromFiles.get(0).getHits()).extracting(SearchHit::getLine).containsExactly("ERROR " + entries.get(0).getFilename().replaceAll("\\D", ""));
+		assertThat(linesFromFiles.get(0).getHits()).extracting(SearchHit::getLineNumber).containsExactly(2L);
+	}
+
+	@org.junit.jupiter.api.Test
+	public void shouldStreamSearchResultsUntilMatchLimit() throws IOException {
+		//given
+		Path directory = fixtures.directory();
+		for (int i = 0; i < 10; i++) {
+			Files.write(directory.resolve("file" + i + ".log"), Arrays.asList("ERROR a", "INFO b", "ERROR c"));
+		}
+		SearchProperties searchProperties = new SearchProperties();
+		searchProperties.setFileContent("ERROR");
+		List<SearchResult> streamed = new ArrayList<>();
+		//when
+		SearchSummary summary = fileService.streamLinesFromFiles(directory, searchProperties, 5, streamed::add);
+		//then
+		List<FileEntry> entries = fileService.getAllFileEntries(directory, searchProperties);
+		assertThat(entries).containsSubsequence(streamed.stream().map(SearchResult::getEntry).toArray(FileEntry[]::new));
+		assertThat(streamed.stream().mapToInt(result -> result.getHits().size()).sum()).isEqualTo(5);
+		assertThat(summary.getMatches()).isEqualTo(5);
+		assertThat(summary.isTruncated()).isTrue();
+		assertThat(summary.getFilesSearched()).isGreaterThanOrEqualTo(3);
+		assertThat(summary.getLinesTested()).isGreaterThanOrEqualTo(5);
+	}
+
+	@org.junit.jupiter.api.Test
+	public void shouldNotMarkSearchTruncatedWhenLimitIsReachedExactly() throws IOException {
+		//given
+		Path directory = fixtures.directory();
+		for (int i = 0; i < 3; i++) {
+			Files.write(directory.resolve("file" + i + ".log"), Arrays.asList("ERROR a", "INFO b", "ERROR c"));
+		}
+		SearchProperties searchProperties = new SearchProperties();
+		searchProperties.setFileContent("ERROR");
+		List<SearchResult> streamed = new ArrayList<>();
+		//when
+		SearchSummary summary = fileService.streamLinesFromFiles(directory, searchProperties, 6, streamed::add);
+		//then
+		assertThat(streamed).hasSize(3);
+		assertThat(summary.getMatches()).isEqualTo(6);
+		assertThat(summary.isTruncated()).isFalse();
+	}
+
+	@org.junit.jupiter.api.Test
+	public void shouldSearchOnlyLinesWithinTimeRange() throws IOException {
+		//given
+		Path directory = fixtures.directory();
+		List<String> lines = new ArrayList<>();
+		LocalDateTime start = LocalDateTime.of(2017, 3, 25, 14, 0);
+		for (int i = 0; i < 5000; i++) {
+			lines.add(start.plusSeconds(i).format(DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss,SSS")) + " ERROR " + i);
+			if (i % 100 == 0)
+				lines.add("\tat com.example.Error");
+		}
+		Files.write(directory.resolve("app.log"), lines);
+		SearchTimeRange timeRange = new SearchTimeRange();
+		timeRange.setTimeFrom(of(start.plusSeconds(3000)));
+		timeRange.setTimeTo(of(start.plusSeconds(3100)));
+		SearchProperties searchProperties = new SearchProperties();
+		searchProperties.setFileContent("Error");
+		searchProperties.setSearchTimeRange(timeRange);
+		//when
+		List<SearchResult> linesFromFiles = fileService.getLinesFromFiles(directory, searchProperties);
+		//then
+		List<SearchHit> hits = linesFromFiles.get(0).getHits();
+		assertThat(hits).extracting(SearchHit::getLineNumber).containsExactly(3031L, 3132L);
+		assertThat(hits.get(0).getContinuation()).extracting(SearchLine::getLine).containsExactly("\tat com.example.Error");
+	}
+
+	@org.junit.jupiter.api.Test
+	public void shouldFoldStackTracesAndCollectContextLines() throws IOException {
+		//given
+		Path directory = fixtures.directory();
+		Files.write(directory.resolve("app.log"), Arrays.asList(
+				"INFO one", "INFO two", "ERROR request failed", "java.lang.IllegalStateException: boom",
+				"\tat com.example.Service.run(Service.java:10)", "Caused by: java.lang.NullPointerException",
+				"\tat com.example.Dao.load(Dao.java:20)", "INFO three", "INFO four", "INFO five"));
+		SearchProperties searchProperties = new SearchProperties();
+		searchProperties.setFileContent("NullPointerException");
+		searchProperties.setLinesBefore(2);
+		searchProperties.setLinesAfter(1);
+		//when
+		List<SearchResult> linesFromFiles = fileService.getLinesFromFiles(directory, searchProperties);
+		//then
+		SearchHit hit = linesFromFiles.get(0).getHits().get(0);
+		assertThat(linesFromFiles.get(0).getHits()).hasSize(1);
+		assertThat(hit.getLineNumber()).isEqualTo(4);
+		assertThat(hit.getOffset()).isEqualTo("INFO one\nINFO two\nERROR request failed\n".length());
+		assertThat(hit.getContinuation()).extracting(SearchLine::getLineNumber).containsExactly(5L, 6L, 7L);
+		assertThat(hit.getBefore()).extracting(SearchLine::getLine).containsExactly("INFO two", "ERROR request failed");
+		assertThat(hit.getAfter()).extracting(SearchLine::getLine).containsExactly("INFO three");
+	}
+
+	@org.junit.jupiter.api.Test
+	public void shouldFoldStackTracesTheSameWayForPlainAndCompressedFiles() throws IOException {
+		//given
+		Path directory = fixtures.directory();
+		List<String> lines = Arrays.asList("INFO one", "java.lang.IllegalStateException: boom",
+				"\tat com.example.Service.run(Service.java:10)", "Caused by: java.lang.NullPointerException", "INFO two");
+		Files.write(directory.resolve("app.log"), lines);
+		try (OutputStream output = new GZIPOutputStream(Files.newOutputStream(directory.resolve("app.log.gz")))) {
+			output.write((String.join("\n", lines) + "\n").getBytes());
+		}
+		SearchProperties searchProperties = new SearchProperties();
+		searchProperties.setFileContent("NullPointerException");
+		//when
+		List<SearchResult> linesFromFiles = fileService.getLinesFromFiles(directory, searchProperties);
+		//then
+		assertThat(linesFromFiles).hasSize(2);
+		for (SearchResult result : linesFromFiles) {
+			assertThat(result.getHits()).extracting(SearchHit::getLine).containsExactly("java.lang.IllegalStateException: boom");
+			assertThat(result.getHits().get(0).getContinuation()).extracting(SearchLine::getLineNumber).containsExactly(3L, 4L);
+		}
+	}
+
+	@org.junit.jupiter.api.Test
+	public void shouldTailMatchingLinesAndReadOnlyAppendedPart() throws IOException {
+		//given
+		Path directory = fixtures.directory();
+		StringBuilder content = new StringBuilder();
+		for (int i = 1; i <= 50000; i++) {
+			content.append(i % 1000 == 0 ? "ERROR " : "INFO ").append(i).append('\n');
+		}
+		Path file = directory.resolve("app.log");
+		Files.write(file, (content + "INFO unfinished").getBytes());
+		//when
+		List<String> errors = fileService.tailContent(directory, "app.log", of("error"), 3);
+		Files.write(file, " line\nERROR 50001\n".getBytes(), StandardOpenOption.APPEND);
+		List<String> afterAppend = fileService.tailContent(directory, "app.log", of("error"), 3);
+		List<String> lastLines = fileService.tailContent(directory, "app.log", Optional.empty(), 2);
+		//then
+		assertThat(errors).containsExactly("ERROR 48000", "ERROR 49000", "ERROR 50000");
+		assertThat(afterAppend).containsExactly("ERROR 49000", "ERROR 50000", "ERROR 50001");
+		assertThat(lastLines).containsExactly("INFO unfinished line", "ERROR 50001");
+	}
+
+	@org.junit.jupiter.api.Test
+	public void shouldReturnPageOfPlainFile() throws IOException {
+		Path directory = fixtures.directory();
+		List<String> lines = new ArrayList<>();
+		for (int i = 1; i <= 2500; i++) {
+			lines.add("line " + i);
+		}
+		Files.write(directory.resolve("big.log"), lines);
+		FilePage page = fileService.getFilePage(directory, "big.log", 1999, 3);
+		assertThat(page.getLines()).containsExactly("line 1999", "line 2000", "line 2001");
+		assertThat(page.getNextLine()).isEqualTo(2002);
+		assertThat(page.isLast()).isFalse();
+		FilePage lastPage = fileService.getFilePage(directory, "big.log", 2499, 3);
+		assertThat(lastPage.getLines()).containsExactly("line 2499", "line 2500");
+		assertThat(lastPage.isLast()).isTrue();
+	}
+
+	@org.junit.jupiter.api.Test
+	public void shouldListAndReadZipEntriesThroughCentralDirectory() throws IOException {
+		Path archive = fixtures.directory().resolve("logs.zip");
+		try (ZipOutputStream zip = new ZipOutputStream(Files.newOutputStream(archive))) {
+			for (String name : Arrays.asList("first.log", "second.log")) {
+				zip.putNextEntry(new ZipEntry(name));
+				zip.write(("content of " + name + "\n").getBytes());
+				zip.closeEntry();
+			}
+		}
+		assertThat(fileService.getFilesEntryFromPath(archive)).extracting(FileEntry::getFilename).containsExactly("first.log", "second.log");
+		assertThat(fileService.getFileContent(archive, "SECOND.log", Optional.empty())).containsExactly("content of second.log");
+		assertThat(fileService.getFileContent(archive, "missing.log", Optional.empty())).isEmpty();
+	}
+
+	@org.junit.jupiter.api.Test
+	public void shouldStreamWholeSevenZipEntry() throws IOException {
+		Path archive = fixtures.directory().resolve("logs.7z");
+		try (SevenZOutputFile sevenZ = new SevenZOutputFile(archive.toFile())) {
+			SevenZArchiveEntry entry = new SevenZArchiveEntry();
+			entry.setName("big.log");
+			entry.setLastModifiedDate(new Date());
+			sevenZ.putArchiveEntry(entry);
+			for (int i = 1; i <= 100000; i++) {
+				sevenZ.write(("INFO line " + i + "\n").getBytes());
+			}
+			sevenZ.closeArchiveEntry();
+		}
+		List<String> content = fileService.getFileContent(archive, "big.log", Optional.empty());
+		assertThat(content).hasSize(100000);
+		assertThat(content.get(99999)).isEqualTo("INFO line 100000");
+	}
+
+	@org.junit.jupiter.api.Test
+	public void shouldReadSearchAndTailGzipFiles() throws IOException {
+		Path directory = fixtures.directory();
+		try (OutputStream gzip = new GZIPOutputStream(Files.newOutputStream(directory.resolve("app.log.gz")))) {
+			gzip.write("INFO start\nERROR failure\nINFO stop\n".getBytes());
+		}
+		assertThat(fileService.createFileEntry(directory.resolve("app.log.gz")).getFileType()).isEqualTo(FileType.COMPRESSED);
+		assertThat(fileService.getFileContent(directory, "app.log.gz", Optional.empty())).containsExactly("INFO start", "ERROR failure", "INFO stop");
+		assertThat(fileService.tailContent(directory, "app.log.gz", Optional.empty(), 2)).containsExactly("ERROR failure", "INFO stop");
+		SearchProperties searchProperties = new SearchProperties();
+		searchProperties.setFileContent("ERROR");
+		List<SearchResult> linesFromFiles = fileService.getLinesFromFiles(directory, searchProperties);
+		assertThat(linesFromFiles).hasSize(1);
+		assertThat(linesFromFiles.get(0).getHits()).extracting(SearchHit::getLine).containsExactly("ERROR failure");
+	}
+
 	@org.junit.jupiter.api.Test
 	@DisplayName("dupaTest")
 	void lambdaExpressions() {
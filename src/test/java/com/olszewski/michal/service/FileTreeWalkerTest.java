@@ -0,0 +1,110 @@
+package com.olszewski.michal.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.FileTime;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.Optional;
+
+import com.olszewski.michal.domain.FileEntry;
+import com.olszewski.michal.domain.FileType;
+import com.olszewski.michal.domain.SignatureReport;
+import com.olszewski.michal.domain.search.SearchFileName;
+import com.olszewski.michal.domain.search.SearchModifiedDate;
+import com.olszewski.michal.domain.search.SearchProperties;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.platform.runner.JUnitPlatform;
+import org.junit.runner.RunWith;
+
+@RunWith(JUnitPlatform.class)
+public class FileTreeWalkerTest {
+
+	private final FileTreeWalker walker = new FileTreeWalker(2, 1);
+
+	/**
+	 * Every directory "dN" holds a file "fileN.log" and the next directory "dN+1", without end.
+	 */
+	private final FileTreeWalker.Tree chain = new FileTreeWalker.Tree() {
+		@Override
+		public List<FileEntry> children(Path parent) {
+			int level = parent.getFileName().toString().startsWith("d") ? Integer.parseInt(parent.getFileName().toString().substring(1)) : 0;
+			return Arrays.asList(entry(parent, "file" + level + ".log", FileType.FILE), entry(parent, "d" + (level + 1), FileType.DIRECTORY));
+		}
+
+		@Override
+		public Optional<Path> subtree(Path parent, FileEntry child) {
+			return child.getFileType() == FileType.DIRECTORY ? Optional.of(parent.resolve(child.getFilename())) : Optional.empty();
+		}
+	};
+	private final TestFixtures fixtures = new TestFixtures();
+
+	@AfterEach
+	public void tearDown() {
+		walker.shutdown();
+		fixtures.close();
+	}
+
+	@org.junit.jupiter.api.Test
+	public void shouldStopAtMaximumDepth() throws IOException {
+		//given
+		Path root = Paths.get("root");
+		List<FileEntry> streamed = Collections.synchronizedList(new ArrayList<>());
+		//when
+		List<FileEntry> recursive = walker.walk(root, chain, true);
+		List<FileEntry> flat = walker.walk(root, chain, false);
+		walker.walk(root, chain, true, streamed::add);
+		//then
+		assertThat(recursive).extracting(FileEntry::getFilename).containsExactly("file0.log", "d1", "file1.log", "d2");
+		assertThat(flat).extracting(FileEntry::getFilename).containsExactly("file0.log", "d1");
+		assertThat(streamed).extracting(FileEntry::getFilename).containsOnly("file0.log", "d1", "file1.log", "d2").hasSize(4);
+	}
+
+	@org.junit.jupiter.api.Test
+	public void shouldApplyNameAndDateFiltersDuringWalk() throws IOException {
+		//given
+		Path root = fixtures.directory();
+		Files.createDirectories(root.resolve("app-archive"));
+		Files.createDirectories(root.resolve("misc"));
+		Files.write(root.resolve("app.log"), Collections.singletonList("ERROR 1"));
+		Files.write(root.resolve("other.txt"), Collections.singletonList("ERROR 2"));
+		Files.write(root.resolve("app-archive/app-old.log"), Collections.singletonList("ERROR 3"));
+		Files.write(root.resolve("app-archive/app-ancient.log"), Collections.singletonList("ERROR 4"));
+		Files.write(root.resolve("misc/app-hidden.log"), Collections.singletonList("ERROR 5"));
+		Files.setLastModifiedTime(root.resolve("app-archive/app-ancient.log"), FileTime.from(Instant.now().minus(30, ChronoUnit.DAYS)));
+		FileService fileService = TestFixtures.fileService(2, 0);
+		SearchProperties searchProperties = new SearchProperties();
+		searchProperties.setRecursive(true);
+		searchProperties.setFileContent("ERROR");
+		SearchFileName searchFileName = new SearchFileName();
+		searchFileName.setContent("app");
+		searchProperties.setSearchFileName(searchFileName);
+		SearchModifiedDate searchModifiedDate = new SearchModifiedDate();
+		searchModifiedDate.setDateFrom(Optional.of(Date.from(Instant.now().minus(1, ChronoUnit.DAYS))));
+		searchProperties.setSearchModifiedDate(searchModifiedDate);
+		//when
+		List<FileEntry> entries = fileService.getAllFileEntries(root, searchProperties);
+		SignatureReport report = fileService.clusterLinesFromFiles(root, searchProperties, 10);
+		//then
+		assertThat(entries).extracting(FileEntry::getFilename).containsOnly("app.log", "app-archive", "app-old.log");
+		assertThat(report.getFilesSearched()).isEqualTo(2);
+		assertThat(report.getMatches()).isEqualTo(2);
+	}
+
+	private static FileEntry entry(Path parent, String name, FileType type) {
+		FileEntry entry = new FileEntry();
+		entry.setFilename(name);
+		entry.setFilePath(parent.resolve(name));
+		entry.setFileType(type);
+		return entry;
+	}
+}
@@ -0,0 +1,86 @@
+package com.olszewski.michal.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.function.Predicate;
+
+import com.olszewski.michal.domain.SearchHit;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.platform.runner.JUnitPlatform;
+import org.junit.runner.RunWith;
+
+@RunWith(JUnitPlatform.class)
+public class HitExpanderTest {
+
+	private final LineScanner lineScanner = new LineScanner(StandardCharsets.UTF_8);
+	private final BackwardLineReader backwardLineReader = new BackwardLineReader(StandardCharsets.UTF_8);
+	private final TestFixtures fixtures = new TestFixtures();
+
+	@AfterEach
+	public void tearDown() {
+		fixtures.close();
+	}
+
+	@org.junit.jupiter.api.Test
+	public void shouldGiveSameHitsAsFullScan() throws IOException {
+		//given
+		Random random = new Random(42);
+		ByteMatcher matcher = ByteMatcher.forTerm("ERROR", StandardCharsets.UTF_8, false).get();
+		Predicate<String> query = line -> line.contains("ERROR") && !line.contains("ignored");
+		for (int round = 0; round < 40; round++) {
+			Path file = createLog(random, 50 + random.nextInt(600));
+			int before = random.nextInt(4) == 0 ? 0 : random.nextInt(8);
+			int after = random.nextInt(4) == 0 ? 0 : random.nextInt(8);
+			long limit = random.nextBoolean() ? Long.MAX_VALUE : 1 + random.nextInt(10);
+			//when
+			List<SearchHit> scanned = scan(file, query, before, after, limit);
+			List<SearchHit> expanded = expand(file, matcher, query, before, after, limit);
+			//then
+			assertThat(expanded).as("round %s, before %s, after %s, limit %s", round, before, after, limit).isEqualTo(scanned);
+		}
+	}
+
+	private List<SearchHit> scan(Path file, Predicate<String> query, int before, int after, long limit) throws IOException {
+		SearchHitCollector collector = new SearchHitCollector(query, before, after, new HitBudget(limit));
+		try (InputStream input = Files.newInputStream(file)) {
+			lineScanner.scan(input, collector);
+		}
+		return collector.finish();
+	}
+
+	private List<SearchHit> expand(Path file, ByteMatcher matcher, Predicate<String> query, int before, int after, long limit) throws IOException {
+		try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+			HitExpander expander = new HitExpander(channel, query, before, after, new HitBudget(limit), lineScanner, backwardLineReader);
+			new MappedFileSearcher(StandardCharsets.UTF_8).search(file, matcher, expander);
+			return expander.finish();
+		}
+	}
+
+	private Path createLog(Random random, int events) throws IOException {
+		List<String> lines = new ArrayList<>();
+		for (int i = 0; i < events; i++) {
+			int kind = random.nextInt(10);
+			lines.add((kind < 2 ? "ERROR " : kind == 2 ? "ERROR ignored " : "INFO ") + "event " + i);
+			int continuation = random.nextInt(12) == 0 ? 150 + random.nextInt(300) : random.nextInt(3) == 0 ? random.nextInt(6) : 0;
+			for (int j = 0; j < continuation; j++) {
+				int detail = random.nextInt(40);
+				lines.add(detail == 0 ? "Caused by: ERROR nested " + j : detail == 1 ? "\tat ERROR frame " + j : "\tat frame " + j);
+			}
+		}
+		if (random.nextBoolean())
+			lines.add(0, "\tat orphan frame");
+		Path file = fixtures.file("logviewer.log");
+		Files.write(file, lines);
+		return file;
+	}
+}
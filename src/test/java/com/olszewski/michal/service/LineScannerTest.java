@@ -0,0 +1,63 @@
+package com.olszewski.michal.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.platform.runner.JUnitPlatform;
+import org.junit.runner.RunWith;
+
+@RunWith(JUnitPlatform.class)
+public class LineScannerTest {
+
+	@org.junit.jupiter.api.Test
+	public void shouldSplitLinesAcrossBufferBoundaries() throws IOException {
+		//given
+		LineScanner scanner = new LineScanner(StandardCharsets.UTF_8, 4, 1024);
+		List<String> lines = new ArrayList<>();
+		List<Long> offsets = new ArrayList<>();
+		//when
+		long count = scanner.scan(stream("first line\r\nsecond\n\nlast"), (lineNumber, offset, line) -> {
+			lines.add(line);
+			offsets.add(offset);
+			return true;
+		});
+		//then
+		assertThat(count).isEqualTo(4);
+		assertThat(lines).containsExactly("first line", "second", "", "last");
+		assertThat(offsets).containsExactly(0L, 12L, 19L, 20L);
+	}
+
+	@org.junit.jupiter.api.Test
+	public void shouldTruncateTooLongLines() throws IOException {
+		//given
+		LineScanner scanner = new LineScanner(StandardCharsets.UTF_8, 3, 5);
+		List<String> lines = new ArrayList<>();
+		//when
+		scanner.scan(stream("0123456789\nabc\n"), (lineNumber, offset, line) -> lines.add(line));
+		//then
+		assertThat(lines).containsExactly("01234", "abc");
+	}
+
+	@org.junit.jupiter.api.Test
+	public void shouldStopWhenHandlerReturnsFalse() throws IOException {
+		//given
+		LineScanner scanner = new LineScanner(StandardCharsets.UTF_8);
+		List<Long> numbers = new ArrayList<>();
+		//when
+		scanner.scan(stream("a\nb\nc\n"), (lineNumber, offset, line) -> {
+			numbers.add(lineNumber);
+			return lineNumber < 2;
+		});
+		//then
+		assertThat(numbers).containsExactly(1L, 2L);
+	}
+
+	private static ByteArrayInputStream stream(String content) {
+		return new ByteArrayInputStream(content.getBytes(StandardCharsets.UTF_8));
+	}
+}
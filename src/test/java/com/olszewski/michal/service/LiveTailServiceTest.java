@@ -0,0 +1,98 @@
+package com.olszewski.michal.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.platform.runner.JUnitPlatform;
+import org.junit.runner.RunWith;
+
+import org.springframework.web.servlet.mvc.method.annotation.ResponseBodyEmitter;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+@RunWith(JUnitPlatform.class)
+public class LiveTailServiceTest {
+
+	private final List<RecordingEmitter> emitters = Collections.synchronizedList(new ArrayList<>());
+	private final CountDownLatch slowClient = new CountDownLatch(1);
+	private LiveTailService liveTailService;
+	private Path directory;
+	private final TestFixtures fixtures = new TestFixtures();
+
+	@BeforeEach
+	public void setUp() throws IOException {
+		directory = fixtures.directory();
+		liveTailService = new LiveTailService(60000) {
+			@Override
+			SseEmitter createEmitter(long timeout) {
+				RecordingEmitter emitter = new RecordingEmitter(emitters.isEmpty() ? slowClient : null);
+				emitters.add(emitter);
+				return emitter;
+			}
+		};
+	}
+
+	@AfterEach
+	public void tearDown() throws IOException {
+		slowClient.countDown();
+		liveTailService.shutdown();
+		fixtures.close();
+	}
+
+	@org.junit.jupiter.api.Test
+	public void shouldPushAppendedLinesWhileAnotherClientIsStalled() throws Exception {
+		//given
+		Path slow = Files.write(directory.resolve("slow.log"), "start\n".getBytes());
+		Path fast = Files.write(directory.resolve("fast.log"), "start\n".getBytes());
+		liveTailService.subscribe(slow, Optional.empty());
+		liveTailService.subscribe(fast, Optional.of("error"));
+		//when
+		Files.write(slow, "ERROR slow\n".getBytes(), StandardOpenOption.APPEND);
+		Files.write(fast, "INFO fast\nERROR fast\npartial".getBytes(), StandardOpenOption.APPEND);
+		//then
+		RecordingEmitter fastEmitter = emitters.get(1);
+		assertThat(fastEmitter.received.await(10, TimeUnit.SECONDS)).isTrue();
+		assertThat(fastEmitter.lines).containsExactly("ERROR fast");
+		slowClient.countDown();
+		assertThat(emitters.get(0).received.await(10, TimeUnit.SECONDS)).isTrue();
+		assertThat(emitters.get(0).lines).containsExactly("ERROR slow");
+	}
+
+	private static class RecordingEmitter extends SseEmitter {
+		private final CountDownLatch blocked;
+		private final CountDownLatch received = new CountDownLatch(1);
+		private final List<String> lines = Collections.synchronizedList(new ArrayList<>());
+
+		RecordingEmitter(CountDownLatch blocked) {
+			this.blocked = blocked;
+		}
+
+		@Override
+		public void send(SseEventBuilder builder) throws IOException {
+			try {
+				if (blocked != null)
+					blocked.await();
+			}
+			catch (InterruptedException e) {
+				throw new IOException(e);
+			}
+			for (ResponseBodyEmitter.DataWithMediaType data : builder.build()) {
+				if (data.getData() instanceof List) {
+					((List<?>) data.getData()).forEach(line -> lines.add(line.toString()));
+					received.countDown();
+				}
+			}
+		}
+	}
+}
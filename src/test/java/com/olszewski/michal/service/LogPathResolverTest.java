@@ -0,0 +1,58 @@
+package com.olszewski.michal.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import com.olszewski.michal.exceptions.InvalidLogPathException;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.platform.runner.JUnitPlatform;
+import org.junit.runner.RunWith;
+
+@RunWith(JUnitPlatform.class)
+public class LogPathResolverTest {
+
+	private LogPathResolver logPathResolver;
+	private Path root;
+	private final TestFixtures fixtures = new TestFixtures();
+
+	@BeforeEach
+	public void setUp() throws IOException {
+		root = fixtures.directory();
+		Files.createDirectories(root.resolve("app/2017"));
+		Files.write(root.resolve("app/server.log"), "line".getBytes());
+		logPathResolver = new LogPathResolver(root.toString());
+	}
+
+	@AfterEach
+	public void tearDown() {
+		fixtures.close();
+	}
+
+	@org.junit.jupiter.api.Test
+	public void shouldResolvePathsRelativeToLoggingPath() {
+		//when
+		Path location = logPathResolver.resolve("app/2017");
+		//then
+		assertThat(logPathResolver.resolve(null)).isEqualTo(root);
+		assertThat(logPathResolver.resolve("")).isEqualTo(root);
+		assertThat(location).isEqualTo(root.resolve("app/2017"));
+		assertThat(logPathResolver.resolve("/app/./2017/..")).isEqualTo(root.resolve("app"));
+		assertThat(logPathResolver.relativize(location)).isEqualTo("app/2017");
+		assertThat(logPathResolver.relativize(root)).isEmpty();
+		assertThat(logPathResolver.resolve("app", "server.log")).isEqualTo(root.resolve("app"));
+	}
+
+	@org.junit.jupiter.api.Test
+	public void shouldRejectPathsLeavingLoggingPath() {
+		//then
+		assertThrows(InvalidLogPathException.class, () -> logPathResolver.resolve(".."));
+		assertThrows(InvalidLogPathException.class, () -> logPathResolver.resolve("app/../../etc"));
+		assertThrows(InvalidLogPathException.class, () -> logPathResolver.resolve("app", "../../passwd"));
+		assertThrows(InvalidLogPathException.class, () -> logPathResolver.resolve("app", root.getParent().resolve("passwd").toString()));
+	}
+}
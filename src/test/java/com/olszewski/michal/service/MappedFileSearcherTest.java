@@ -0,0 +1,79 @@
+package com.olszewski.michal.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.platform.runner.JUnitPlatform;
+import org.junit.runner.RunWith;
+
+@RunWith(JUnitPlatform.class)
+public class MappedFileSearcherTest {
+
+	private final TestFixtures fixtures = new TestFixtures();
+
+	@AfterEach
+	public void tearDown() {
+		fixtures.close();
+	}
+
+	@org.junit.jupiter.api.Test
+	public void shouldFindMatchingLinesWithLineNumbers() throws IOException {
+		//given
+		Path file = createFile("INFO start", "ERROR first", "INFO middle", "", "error second\r", "ERROR ERROR third");
+		ByteMatcher matcher = ByteMatcher.forTerm("ERROR", StandardCharsets.UTF_8, false).get();
+		List<String> result = new ArrayList<>();
+		//when
+		new MappedFileSearcher(StandardCharsets.UTF_8).search(file, matcher,
+				(lineNumber, offset, line) -> result.add(lineNumber + ":" + offset + ":" + line));
+		//then
+		assertThat(result).containsExactly("2:11:ERROR first", "6:50:ERROR ERROR third");
+	}
+
+	@org.junit.jupiter.api.Test
+	public void shouldIgnoreAsciiCaseAndCrossWindowBoundaries() throws IOException {
+		//given
+		Path file = createFile("aaa", "bbb Error", "ccc", "ERROR ddd", "eee");
+		ByteMatcher matcher = ByteMatcher.forTerm("error", StandardCharsets.UTF_8, true).get();
+		List<String> result = new ArrayList<>();
+		//when
+		new MappedFileSearcher(StandardCharsets.UTF_8, 7, 1024).search(file, matcher,
+				(lineNumber, offset, line) -> result.add(lineNumber + ":" + line));
+		//then
+		assertThat(result).containsExactly("2:bbb Error", "4:ERROR ddd");
+	}
+
+	@org.junit.jupiter.api.Test
+	public void shouldReleaseMappingsWhenSearchStopsEarly() throws IOException {
+		//given
+		Path file = createFile("ERROR first", "INFO middle", "ERROR second", "INFO last");
+		ByteMatcher matcher = ByteMatcher.forTerm("ERROR", StandardCharsets.UTF_8, false).get();
+		List<String> result = new ArrayList<>();
+		//when
+		new MappedFileSearcher(StandardCharsets.UTF_8, 4, 1024).search(file, matcher, (lineNumber, offset, line) -> !result.add(line));
+		Files.delete(file);
+		//then
+		assertThat(MappedFileSearcher.canUnmap()).isTrue();
+		assertThat(result).containsExactly("ERROR first");
+		assertThat(Files.exists(file)).isFalse();
+	}
+
+	@org.junit.jupiter.api.Test
+	public void shouldNotCreateCaseInsensitiveMatcherForNonAsciiTerm() {
+		assertThat(ByteMatcher.forTerm("błąd", StandardCharsets.UTF_8, true).isPresent()).isFalse();
+		assertThat(ByteMatcher.forTerm("błąd", StandardCharsets.UTF_8, false).isPresent()).isTrue();
+	}
+
+	private Path createFile(String... lines) throws IOException {
+		Path file = fixtures.file("logviewer.log");
+		Files.write(file, Arrays.asList(lines), StandardCharsets.UTF_8);
+		return file;
+	}
+}
@@ -0,0 +1,109 @@
+package com.olszewski.michal.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import org.apache.commons.io.IOUtils;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.platform.runner.JUnitPlatform;
+import org.junit.runner.RunWith;
+
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+@RunWith(JUnitPlatform.class)
+public class RawContentServiceTest {
+
+	private RawContentService rawContentService;
+	private Path directory;
+	private final TestFixtures fixtures = new TestFixtures();
+
+	@BeforeEach
+	public void setUp() throws IOException {
+		FileService fileService = TestFixtures.fileService(1, 0);
+		rawContentService = new RawContentService(fileService);
+		directory = fixtures.directory();
+		Files.write(directory.resolve("app.log"), "0123456789".getBytes());
+	}
+
+	@AfterEach
+	public void tearDown() {
+		fixtures.close();
+	}
+
+	@org.junit.jupiter.api.Test
+	public void shouldSendRequestedRangesOfFilesAndArchiveEntries() throws IOException {
+		//given
+		Path archive = directory.resolve("logs.zip");
+		try (ZipOutputStream zip = new ZipOutputStream(Files.newOutputStream(archive))) {
+			zip.putNextEntry(new ZipEntry("inner.log"));
+			zip.write("abcdefghij".getBytes());
+			zip.closeEntry();
+		}
+		//when
+		MockHttpServletResponse plain = send(directory, "app.log", "bytes=2-4");
+		MockHttpServletResponse suffix = send(directory, "app.log", "bytes=-3");
+		MockHttpServletResponse beyond = send(directory, "app.log", "bytes=20-");
+		MockHttpServletResponse entry = send(archive, "INNER.log", "bytes=5-");
+		//then
+		assertThat(plain.getStatus()).isEqualTo(206);
+		assertThat(plain.getHeader("Content-Range")).isEqualTo("bytes 2-4/10");
+		assertThat(plain.getContentAsString()).isEqualTo("234");
+		assertThat(suffix.getContentAsString()).isEqualTo("789");
+		assertThat(beyond.getStatus()).isEqualTo(416);
+		assertThat(beyond.getHeader("Content-Range")).isEqualTo("bytes */10");
+		assertThat(entry.getStatus()).isEqualTo(206);
+		assertThat(entry.getContentAsString()).isEqualTo("fghij");
+	}
+
+	@org.junit.jupiter.api.Test
+	public void shouldCompressWholeTextForClientsAcceptingGzip() throws IOException {
+		//given
+		MockHttpServletRequest request = new MockHttpServletRequest();
+		request.addHeader("Accept-Encoding", "gzip, deflate");
+		MockHttpServletResponse response = new MockHttpServletResponse();
+		//when
+		rawContentService.send(directory, "app.log", true, request, response);
+		//then
+		assertThat(response.getStatus()).isEqualTo(200);
+		assertThat(response.getHeader("Content-Encoding")).isEqualTo("gzip");
+		assertThat(response.getHeader("Content-Disposition")).isEqualTo("attachment; filename=\"app.log\"");
+		assertThat(IOUtils.toString(new GZIPInputStream(new ByteArrayInputStream(response.getContentAsByteArray())), "UTF-8")).isEqualTo("0123456789");
+	}
+
+	@org.junit.jupiter.api.Test
+	public void shouldAnswerNotModifiedWhileFileIsUnchanged() throws IOException {
+		//given
+		String etag = send(directory, "app.log", "bytes=0-").getHeader("ETag");
+		MockHttpServletRequest request = new MockHttpServletRequest();
+		request.addHeader("If-None-Match", etag);
+		MockHttpServletResponse response = new MockHttpServletResponse();
+		//when
+		rawContentService.send(directory, "app.log", false, request, response);
+		Files.write(directory.resolve("app.log"), "0123456789abc".getBytes());
+		MockHttpServletResponse changed = new MockHttpServletResponse();
+		rawContentService.send(directory, "app.log", false, request, changed);
+		//then
+		assertThat(etag).isNotEmpty();
+		assertThat(response.getStatus()).isEqualTo(304);
+		assertThat(response.getContentLength()).isZero();
+		assertThat(changed.getStatus()).isEqualTo(200);
+		assertThat(changed.getContentAsString()).isEqualTo("0123456789abc");
+	}
+
+	private MockHttpServletResponse send(Path path, String file, String range) throws IOException {
+		MockHttpServletRequest request = new MockHttpServletRequest();
+		request.addHeader("Range", range);
+		MockHttpServletResponse response = new MockHttpServletResponse();
+		rawContentService.send(path, file, false, request, response);
+		return response;
+	}
+}
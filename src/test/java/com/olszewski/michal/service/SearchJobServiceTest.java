@@ -0,0 +1,208 @@
+package com.olszewski.michal.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.FileTime;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+
+import com.olszewski.michal.domain.FileEntry;
+import com.olszewski.michal.domain.SearchJobPage;
+import com.olszewski.michal.domain.SearchJobState;
+import com.olszewski.michal.domain.SearchJobStatus;
+import com.olszewski.michal.domain.search.SearchProperties;
+import com.olszewski.michal.exceptions.SearchJobNotFoundException;
+import com.olszewski.michal.exceptions.SearchJobRejectedException;
+import com.olszewski.michal.metrics.LogViewerMetrics;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.platform.runner.JUnitPlatform;
+import org.junit.runner.RunWith;
+
+@RunWith(JUnitPlatform.class)
+public class SearchJobServiceTest {
+
+	private final CountDownLatch started = new CountDownLatch(1);
+	private final CountDownLatch released = new CountDownLatch(1);
+	private FileService fileService;
+	private SearchJobService searchJobService;
+	private final TestFixtures fixtures = new TestFixtures();
+
+	@BeforeEach
+	public void setUp() {
+		fileService = new TestFixtures.TestFileService(2, 0) {
+			@Override
+			public List<FileEntry> getAllFileEntries(Path path, SearchProperties searchProperties) throws IOException {
+				if (path.endsWith("blocked")) {
+					started.countDown();
+					try {
+						released.await();
+					}
+					catch (InterruptedException e) {
+						Thread.currentThread().interrupt();
+					}
+				}
+				return super.getAllFileEntries(path, searchProperties);
+			}
+		};
+		searchJobService = new SearchJobService(fileService, new LogViewerMetrics(), 1, 4, 16, 1000, 1024 * 1024, 60000, 1024 * 1024);
+	}
+
+	@AfterEach
+	public void tearDown() {
+		searchJobService.shutdown();
+		fixtures.close();
+	}
+
+	@org.junit.jupiter.api.Test
+	public void shouldPageResultsAndServeUnchangedFilesFromCache() throws Exception {
+		//given
+		Path directory = fixtures.directory();
+		for (int i = 0; i < 5; i++) {
+			Files.write(directory.resolve("file" + i + ".log"), Arrays.asList("INFO start", "ERROR " + i));
+		}
+		SearchProperties searchProperties = new SearchProperties();
+		searchProperties.setFileContent("ERROR");
+		//when
+		SearchJobStatus first = await(searchJobService.submit(directory, searchProperties));
+		SearchJobPage page = searchJobService.getPage(first.getId(), 3, 10);
+		SearchJobStatus repeated = await(searchJobService.submit(directory, searchProperties));
+		Files.write(directory.resolve("file4.log"), Arrays.asList("ERROR again"), StandardOpenOption.APPEND);
+		SearchJobStatus afterChange = await(searchJobService.submit(directory, searchProperties));
+		//then
+		assertThat(first.getState()).isEqualTo(SearchJobState.DONE);
+		assertThat(first.getFilesSearched()).isEqualTo(5);
+		assertThat(first.getMatches()).isEqualTo(5);
+		assertThat(first.isCached()).isFalse();
+		assertThat(page.getResults()).hasSize(2);
+		assertThat(page.getNext()).isEqualTo(5);
+		assertThat(page.isLast()).isTrue();
+		assertThat(repeated.isCached()).isTrue();
+		assertThat(repeated.getMatches()).isEqualTo(5);
+		assertThat(afterChange.isCached()).isFalse();
+		assertThat(afterChange.getMatches()).isEqualTo(6);
+	}
+
+	@org.junit.jupiter.api.Test
+	public void shouldRejectSearchesWhenQueueIsFull() throws Exception {
+		//given
+		searchJobService.shutdown();
+		searchJobService = new SearchJobService(fileService, new LogViewerMetrics(), 1, 1, 16, 1000, 1024 * 1024, 60000, 1024 * 1024);
+		Path blocked = Files.createDirectories(fixtures.directory().resolve("blocked"));
+		SearchProperties searchProperties = new SearchProperties();
+		searchProperties.setFileContent("ERROR");
+		//when
+		SearchJobStatus running = searchJobService.submit(blocked, searchProperties);
+		started.await();
+		SearchJobStatus queued = searchJobService.submit(blocked, searchProperties);
+		//then
+		assertThrows(SearchJobRejectedException.class, () -> searchJobService.submit(blocked, searchProperties));
+		released.countDown();
+		assertThat(await(running).getState()).isEqualTo(SearchJobState.DONE);
+		assertThat(await(queued).getState()).isEqualTo(SearchJobState.DONE);
+		assertThat(await(searchJobService.submit(blocked, searchProperties)).getState()).isEqualTo(SearchJobState.DONE);
+	}
+
+	@org.junit.jupiter.api.Test
+	public void shouldRejectSearchesWhenAllJobsAreActiveAndForgetFinishedOnesFirst() throws Exception {
+		//given
+		searchJobService.shutdown();
+		searchJobService = new SearchJobService(fileService, new LogViewerMetrics(), 1, 16, 2, 1000, 1024 * 1024, 60000, 1024 * 1024);
+		Path directory = fixtures.directory();
+		Files.write(directory.resolve("file.log"), Arrays.asList("ERROR 1"));
+		Path blocked = Files.createDirectories(directory.resolve("blocked"));
+		SearchProperties searchProperties = new SearchProperties();
+		searchProperties.setFileContent("ERROR");
+		//when
+		SearchJobStatus finished = await(searchJobService.submit(directory, searchProperties));
+		SearchJobStatus running = searchJobService.submit(blocked, searchProperties);
+		started.await();
+		SearchJobStatus queued = searchJobService.submit(blocked, searchProperties);
+		//then
+		assertThrows(SearchJobNotFoundException.class, () -> searchJobService.getStatus(finished.getId()));
+		assertThrows(SearchJobRejectedException.class, () -> searchJobService.submit(directory, searchProperties));
+		released.countDown();
+		assertThat(await(running).getState()).isEqualTo(SearchJobState.DONE);
+		assertThat(await(queued).getState()).isEqualTo(SearchJobState.DONE);
+	}
+
+	@org.junit.jupiter.api.Test
+	public void shouldTruncateResultsExceedingByteLimit() throws Exception {
+		//given
+		searchJobService.shutdown();
+		searchJobService = new SearchJobService(fileService, new LogViewerMetrics(), 1, 4, 16, 1000, 4096, 60000, 1024 * 1024);
+		Path directory = fixtures.directory();
+		char[] longLine = new char[1000];
+		Arrays.fill(longLine, 'x');
+		for (int i = 0; i < 5; i++) {
+			Files.write(directory.resolve("file" + i + ".log"), Arrays.asList("ERROR " + new String(longLine)));
+		}
+		SearchProperties searchProperties = new SearchProperties();
+		searchProperties.setFileContent("ERROR");
+		//when
+		SearchJobStatus status = await(searchJobService.submit(directory, searchProperties));
+		SearchJobPage page = searchJobService.getPage(status.getId(), 0, 10);
+		//then
+		assertThat(status.getState()).isEqualTo(SearchJobState.DONE);
+		assertThat(status.isTruncated()).isTrue();
+		assertThat(status.getMatches()).isEqualTo(1);
+		assertThat(page.getResults()).hasSize(1);
+	}
+
+	@org.junit.jupiter.api.Test
+	public void shouldMissCacheWhenFileIsReplacedBySameSizedFileWithSameModificationTime() throws Exception {
+		//given
+		Path directory = fixtures.directory();
+		Path file = directory.resolve("file.log");
+		Files.write(file, Arrays.asList("ERROR 1"));
+		FileTime modified = Files.getLastModifiedTime(file);
+		SearchProperties searchProperties = new SearchProperties();
+		searchProperties.setFileContent("ERROR");
+		//when
+		SearchJobStatus first = await(searchJobService.submit(directory, searchProperties));
+		Path replacement = Files.write(directory.resolve("file.tmp"), Arrays.asList("ERROR 2"));
+		Files.setLastModifiedTime(replacement, modified);
+		Files.move(replacement, file, StandardCopyOption.REPLACE_EXISTING);
+		SearchJobStatus second = await(searchJobService.submit(directory, searchProperties));
+		//then
+		assertThat(first.isCached()).isFalse();
+		assertThat(second.isCached()).isFalse();
+		assertThat(searchJobService.getPage(second.getId(), 0, 10).getResults().get(0).getHits().get(0).getLine())
+				.isEqualTo("ERROR 2");
+	}
+
+	@org.junit.jupiter.api.Test
+	public void shouldMarkRunningJobCancelledOnlyAfterItStops() throws Exception {
+		//given
+		Path blocked = Files.createDirectories(fixtures.directory().resolve("blocked"));
+		SearchProperties searchProperties = new SearchProperties();
+		searchProperties.setFileContent("ERROR");
+		SearchJobStatus running = searchJobService.submit(blocked, searchProperties);
+		started.await();
+		SearchJobStatus queued = searchJobService.submit(blocked, searchProperties);
+		//when
+		SearchJobStatus runningAfterCancel = searchJobService.cancel(running.getId());
+		SearchJobStatus queuedAfterCancel = searchJobService.cancel(queued.getId());
+		released.countDown();
+		//then
+		assertThat(runningAfterCancel.getState()).isEqualTo(SearchJobState.RUNNING);
+		assertThat(queuedAfterCancel.getState()).isEqualTo(SearchJobState.CANCELLED);
+		assertThat(await(running).getState()).isEqualTo(SearchJobState.CANCELLED);
+	}
+
+	private SearchJobStatus await(SearchJobStatus submitted) throws InterruptedException, IOException {
+		SearchJobStatus status = submitted;
+		for (int i = 0; i < 500 && (status.getState() == SearchJobState.QUEUED || status.getState() == SearchJobState.RUNNING); i++) {
+			Thread.sleep(10);
+			status = searchJobService.getStatus(submitted.getId());
+		}
+		return status;
+	}
+}
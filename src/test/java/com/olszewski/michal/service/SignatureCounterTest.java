@@ -0,0 +1,49 @@
+package com.olszewski.michal.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+import com.olszewski.michal.domain.ErrorSignature;
+import org.junit.platform.runner.JUnitPlatform;
+import org.junit.runner.RunWith;
+
+@RunWith(JUnitPlatform.class)
+public class SignatureCounterTest {
+
+	@org.junit.jupiter.api.Test
+	public void shouldMaskVariablePartsOfLines() {
+		//then
+		assertThat(SignatureNormalizer.normalize("2017-03-25 14:00:01,123 ERROR Request 42 failed for user 7 (id=550e8400-e29b-41d4-a716-446655440000, ptr 0x7f3a, hash deadbeef42)"))
+				.isEqualTo("#-#-# #:#:#,# ERROR Request # failed for user # (id=<uuid>, ptr <hex>, hash <hex>)");
+		assertThat(SignatureNormalizer.normalize("java.lang.NullPointerException at Log4j2Appender"))
+				.isEqualTo("java.lang.NullPointerException at Log#j#Appender");
+		assertThat(SignatureNormalizer.normalize("Order 12345678 of 20170325140001 took 123456789ms, trace 00000000a1b2c3d4"))
+				.isEqualTo("Order # of # took #ms, trace <hex>");
+	}
+
+	@org.junit.jupiter.api.Test
+	public void shouldKeepFrequentSignaturesWithinCapacity() {
+		//given
+		SignatureCounter counter = new SignatureCounter(10);
+		LocalDateTime start = LocalDateTime.of(2017, 3, 25, 14, 0);
+		//when
+		for (int i = 0; i < 100; i++) {
+			counter.add("ERROR timeout after " + i + " ms", "app.log", i + 1, start.plusMinutes(i));
+			counter.add("WARN rare event " + i + (char) ('a' + i % 26), "app.log", i + 1, null);
+			if (i % 2 == 0)
+				counter.add("ERROR connection " + i + " refused", "app.log", i + 1, start.plusMinutes(i));
+		}
+		List<ErrorSignature> top = counter.top(2);
+		//then
+		assertThat(counter.getMatches()).isEqualTo(250);
+		assertThat(counter.isApproximate()).isTrue();
+		assertThat(top).extracting(ErrorSignature::getTemplate).containsExactly("ERROR timeout after # ms", "ERROR connection # refused");
+		assertThat(top.get(0).getCount() - top.get(0).getMaxOverestimate()).isLessThanOrEqualTo(100);
+		assertThat(top.get(0).getCount()).isGreaterThanOrEqualTo(100);
+		assertThat(top.get(0).getFirstSeen()).isEqualTo(start);
+		assertThat(top.get(0).getLastSeen()).isEqualTo(start.plusMinutes(99));
+		assertThat(top.get(0).getSample()).isEqualTo("ERROR timeout after 0 ms");
+	}
+}
@@ -0,0 +1,86 @@
+package com.olszewski.michal.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import com.olszewski.michal.metrics.LogViewerMetrics;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.platform.runner.JUnitPlatform;
+import org.junit.runner.RunWith;
+
+@RunWith(JUnitPlatform.class)
+public class TailReaderTest {
+
+	private final TestFixtures fixtures = new TestFixtures();
+
+	@AfterEach
+	public void tearDown() {
+		fixtures.close();
+	}
+
+	@org.junit.jupiter.api.Test
+	public void shouldKeepCachedLinesOfAllFilesWithinOneBudget() throws IOException {
+		//given
+		TailReader tailReader = new TailReader(StandardCharsets.UTF_8, TailReader.DEFAULT_MAX_BYTES, 100, new LogViewerMetrics());
+		Path directory = fixtures.directory();
+		Path[] files = new Path[5];
+		for (int i = 0; i < files.length; i++) {
+			files[i] = Files.write(directory.resolve("file" + i + ".log"),
+					Arrays.asList("line " + i + " aaaaaaaaaa", "line " + i + " bbbbbbbbbb", "line " + i + " cccccccccc"));
+		}
+		//when
+		for (Path file : files) {
+			tailReader.tail(file, 3, line -> true);
+		}
+		Files.write(files[4], Arrays.asList("line 4 dddddddddd"), StandardOpenOption.APPEND);
+		//then
+		assertThat(tailReader.getCachedChars()).isBetween(1L, 100L);
+		assertThat(tailReader.tail(files[0], 3, line -> true))
+				.containsExactly("line 0 aaaaaaaaaa", "line 0 bbbbbbbbbb", "line 0 cccccccccc");
+		assertThat(tailReader.tail(files[4], 4, line -> true))
+				.containsExactly("line 4 aaaaaaaaaa", "line 4 bbbbbbbbbb", "line 4 cccccccccc", "line 4 dddddddddd");
+		assertThat(tailReader.getCachedChars()).isBetween(1L, 100L);
+	}
+
+	@org.junit.jupiter.api.Test
+	public void shouldReadAgainFileRewrittenInPlace() throws IOException {
+		//given
+		TailReader tailReader = new TailReader(StandardCharsets.UTF_8, TailReader.DEFAULT_MAX_BYTES, TailReader.DEFAULT_MAX_CACHED_CHARS,
+				new LogViewerMetrics());
+		Path file = Files.write(fixtures.directory().resolve("app.log"), Arrays.asList("old 1", "old 2"));
+		tailReader.tail(file, 2, line -> true);
+		//when
+		Files.write(file, Arrays.asList("new 1", "new 2", "new 3"), StandardOpenOption.TRUNCATE_EXISTING);
+		//then
+		assertThat(tailReader.tail(file, 3, line -> true)).containsExactly("new 1", "new 2", "new 3");
+	}
+
+	@org.junit.jupiter.api.Test
+	public void shouldStartOverFromEndWhenMoreWasAppendedThanCacheHolds() throws IOException {
+		//given
+		LogViewerMetrics metrics = new LogViewerMetrics();
+		TailReader tailReader = new TailReader(StandardCharsets.UTF_8, TailReader.DEFAULT_MAX_BYTES, 1000, metrics);
+		Path file = Files.write(fixtures.directory().resolve("app.log"), Arrays.asList("first"));
+		tailReader.tail(file, 1, line -> true);
+		List<String> appended = new ArrayList<>();
+		for (int i = 0; i < 100000; i++) {
+			appended.add("line " + i);
+		}
+		Files.write(file, appended, StandardOpenOption.APPEND);
+		long readBefore = metrics.snapshot().getOrDefault("tail.bytes-read", 0L);
+		//when
+		List<String> tail = tailReader.tail(file, 2, line -> true);
+		//then
+		assertThat(tail).containsExactly("line 99998", "line 99999");
+		assertThat(metrics.snapshot().get("tail.bytes-read") - readBefore).isLessThan(Files.size(file) / 2);
+		assertThat(tailReader.getCachedChars()).isBetween(1L, 1000L);
+	}
+}
@@ -0,0 +1,52 @@
+package com.olszewski.michal.service;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import com.olszewski.michal.index.ContentIndexService;
+import com.olszewski.michal.metrics.LogViewerMetrics;
+import org.apache.commons.io.FileUtils;
+
+/**
+ * Setup shared by the tests: temporary directories, deleted again by {@link #close()} in the
+ * test's {@code @AfterEach}, and a {@link FileService} wired without Spring.
+ */
+public class TestFixtures implements AutoCloseable {
+
+	private final List<Path> directories = new ArrayList<>();
+
+	public Path directory() throws IOException {
+		Path directory = Files.createTempDirectory("logviewer").toAbsolutePath().normalize();
+		directories.add(directory);
+		return directory;
+	}
+
+	public Path file(String name) throws IOException {
+		return directory().resolve(name);
+	}
+
+	@Override
+	public void close() {
+		directories.forEach(directory -> FileUtils.deleteQuietly(directory.toFile()));
+		directories.clear();
+	}
+
+	public static FileService fileService(int threads, long blockCacheBytes) {
+		return new TestFileService(threads, blockCacheBytes);
+	}
+
+	/**
+	 * {@link FileService} with the index and the listing cache off, for tests overriding parts of it.
+	 */
+	public static class TestFileService extends FileService {
+
+		public TestFileService(int threads, long blockCacheBytes) {
+			super(new SearchExecutor(threads, 1024 * 1024), new ContentIndexService(false, "target/index"),
+					new DirectoryListingCache(0), new FileTreeWalker(threads, 8), new TimestampParser(TimestampParser.DEFAULT_PATTERNS),
+					new LogViewerMetrics(), new BlockCache(blockCacheBytes));
+		}
+	}
+}
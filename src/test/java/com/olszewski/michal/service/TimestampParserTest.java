@@ -0,0 +1,25 @@
+package com.olszewski.michal.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.time.LocalDateTime;
+import java.util.Optional;
+
+import org.junit.platform.runner.JUnitPlatform;
+import org.junit.runner.RunWith;
+
+@RunWith(JUnitPlatform.class)
+public class TimestampParserTest {
+
+	@org.junit.jupiter.api.Test
+	public void shouldSkipPatternsThatCannotGiveDateAndTime() {
+		//given
+		TimestampParser parser = new TimestampParser("yyyy-MM-dd;" + TimestampParser.DEFAULT_PATTERNS);
+		//when
+		Optional<LocalDateTime> stamped = parser.parse("[2017-03-05 10:15:30,123] ERROR failure");
+		Optional<LocalDateTime> plain = parser.parse("2017-03-05 failure");
+		//then
+		assertThat(stamped).isEqualTo(Optional.of(LocalDateTime.of(2017, 3, 5, 10, 15, 30, 123000000)));
+		assertThat(plain).isEqualTo(Optional.empty());
+	}
+}
@@ -0,0 +1,89 @@
+package com.olszewski.michal.tasks;
+
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.MockitoAnnotations.initMocks;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+import com.olszewski.michal.service.TestFixtures;
+import com.olszewski.michal.events.ErrorLogEventPublisher;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.platform.runner.JUnitPlatform;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+
+@RunWith(JUnitPlatform.class)
+public class ErrorMsgAlarmTaskTest {
+
+	private static final String[] PATTERNS = {"FileNotFoundException", "NullPointerException"};
+	private final TestFixtures fixtures = new TestFixtures();
+
+	@Mock
+	private ErrorLogEventPublisher eventPublisher;
+
+	private Path directory;
+	private Path checkpoints;
+
+	@BeforeEach
+	public void setUp() throws IOException {
+		initMocks(this);
+		directory = fixtures.directory();
+		checkpoints = fixtures.directory().resolve("checkpoints");
+	}
+
+	@AfterEach
+	public void tearDown() {
+		fixtures.close();
+	}
+
+	@org.junit.jupiter.api.Test
+	public void shouldReportOnlyNewCompleteLinesOnce() throws IOException {
+		//given
+		Path log = directory.resolve("app.log");
+		append(log, "old java.lang.NullPointerException\n");
+		ErrorMsgAlarmTask task = task();
+		task.searchExceptions();
+		//when
+		append(log, "java.lang.NullPointerException at 1\nINFO ok\nERROR filenotfoundexception");
+		task.searchExceptions();
+		append(log, " in progress\njava.lang.NullPointerException at 2\n");
+		task.searchExceptions();
+		task().searchExceptions();
+		//then
+		verify(eventPublisher).doStuffAndPublish(log.toAbsolutePath() + ": java.lang.NullPointerException at 1");
+		verify(eventPublisher).doStuffAndPublish(log.toAbsolutePath() + ": ERROR filenotfoundexception in progress");
+		verify(eventPublisher, times(2)).doStuffAndPublish(anyString());
+	}
+
+	@org.junit.jupiter.api.Test
+	public void shouldReportStackTraceAsOneMessage() throws IOException {
+		//given
+		Path log = directory.resolve("app.log");
+		ErrorMsgAlarmTask task = task();
+		task.searchExceptions();
+		//when
+		append(log, "ERROR java.lang.NullPointerException\n\tat a.B.c(B.java:1)\nCaused by: x\n\t... 2 more\nINFO ok\n");
+		task.searchExceptions();
+		//then
+		verify(eventPublisher).doStuffAndPublish(log.toAbsolutePath()
+				+ ": ERROR java.lang.NullPointerException\n\tat a.B.c(B.java:1)\nCaused by: x\n\t... 2 more");
+		verify(eventPublisher, times(1)).doStuffAndPublish(anyString());
+	}
+
+	private ErrorMsgAlarmTask task() {
+		ErrorMsgAlarmTask task = new ErrorMsgAlarmTask(eventPublisher, PATTERNS, checkpoints.toString(), 3600000, 0);
+		task.loggingPath = directory.toString();
+		return task;
+	}
+
+	private static void append(Path file, String content) throws IOException {
+		Files.write(file, content.getBytes(StandardCharsets.UTF_8), StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+	}
+}
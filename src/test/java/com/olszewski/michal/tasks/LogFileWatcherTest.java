@@ -0,0 +1,85 @@
+package com.olszewski.michal.tasks;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.HashSet;
+import java.util.Set;
+
+import com.olszewski.michal.service.TestFixtures;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.platform.runner.JUnitPlatform;
+import org.junit.runner.RunWith;
+
+@RunWith(JUnitPlatform.class)
+public class LogFileWatcherTest {
+
+	private Path directory;
+	private LogFileWatcher watcher;
+	private final TestFixtures fixtures = new TestFixtures();
+
+	@BeforeEach
+	public void setUp() throws IOException {
+		directory = fixtures.directory();
+		watcher = new LogFileWatcher(directory, Long.MAX_VALUE);
+	}
+
+	@AfterEach
+	public void tearDown() throws IOException {
+		watcher.close();
+		fixtures.close();
+	}
+
+	@org.junit.jupiter.api.Test
+	public void shouldReportOnlyFilesChangedSinceLastCall() throws Exception {
+		//given
+		Path first = append(directory.resolve("first.log"), "INFO 1\n");
+		Path second = append(Files.createDirectories(directory.resolve("sub")).resolve("second.log"), "INFO 2\n");
+		Set<Path> initial = watcher.changed().keySet();
+		//when
+		append(second, "INFO 3\n");
+		Set<Path> appended = awaitChanged();
+		Path third = append(Files.createDirectories(directory.resolve("new")).resolve("third.log"), "INFO 4\n");
+		Set<Path> created = awaitChanged();
+		Files.delete(first);
+		for (int i = 0; i < 500 && watcher.files().contains(first); i++) {
+			Thread.sleep(10);
+			watcher.changed();
+		}
+		//then
+		assertThat(initial).containsOnly(first, second);
+		assertThat(appended).containsOnly(second);
+		assertThat(created).containsOnly(third);
+		assertThat(watcher.files()).containsOnly(second, third);
+	}
+
+	@org.junit.jupiter.api.Test
+	public void shouldReportFileAgainWhenRetried() throws Exception {
+		//given
+		Path file = append(directory.resolve("app.log"), "INFO 1\n");
+		watcher.changed();
+		//when
+		watcher.retry(file);
+		//then
+		assertThat(watcher.changed().keySet()).containsOnly(file);
+		assertThat(watcher.changed()).isEmpty();
+	}
+
+	private Set<Path> awaitChanged() throws Exception {
+		Set<Path> changed = new HashSet<>();
+		for (int i = 0; i < 500 && changed.isEmpty(); i++) {
+			Thread.sleep(10);
+			changed.addAll(watcher.changed().keySet());
+		}
+		return changed;
+	}
+
+	private static Path append(Path file, String content) throws IOException {
+		return Files.write(file, content.getBytes(StandardCharsets.UTF_8), StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+	}
+}